@@ -30,6 +30,7 @@ import com.android.settings.R;
 
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settings.search.Indexable;
+import com.android.settings.search.NonIndexableKeysCache;
 import com.android.settings.search.SearchIndexableRaw;
 
 import java.util.ArrayList;
@@ -114,6 +115,13 @@ public class BackupSettingsActivity extends Activity implements Indexable {
                     return result;
                 }
 
+                @Override
+                public NonIndexableKeysCache.Inputs getNonIndexableKeysInputs(
+                        Context context) {
+                    // Only depends on the user of this process.
+                    return new NonIndexableKeysCache.Inputs();
+                }
+
                 @Override
                 public List<String> getNonIndexableKeys(Context context) {
                     final List<String> keys = super.getNonIndexableKeys(context);
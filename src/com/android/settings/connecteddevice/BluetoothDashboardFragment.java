@@ -31,6 +31,7 @@ import com.android.settings.core.TogglePreferenceController;
 import com.android.settings.dashboard.DashboardFragment;
 import com.android.settings.location.ScanningSettings;
 import com.android.settings.search.BaseSearchIndexProvider;
+import com.android.settings.search.NonIndexableKeysCache;
 import com.android.settings.search.SearchIndexableRaw;
 import com.android.settings.widget.SwitchBar;
 import com.android.settings.widget.SwitchBarController;
@@ -119,6 +120,12 @@ public class BluetoothDashboardFragment extends DashboardFragment {
                     return result;
                 }
 
+                @Override
+                public NonIndexableKeysCache.Inputs getNonIndexableKeysInputs(Context context) {
+                    // Only depends on whether the device has a Bluetooth adapter.
+                    return new NonIndexableKeysCache.Inputs();
+                }
+
                 @Override
                 public List<String> getNonIndexableKeys(Context context) {
                     final List<String> keys = super.getNonIndexableKeys(context);
@@ -16,6 +16,7 @@ package com.android.settings.core;
 import android.annotation.IntDef;
 import android.content.Context;
 import android.content.IntentFilter;
+import android.support.annotation.WorkerThread;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -107,10 +108,16 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     /**
      * Instantiate a controller as specified controller type and user-defined key.
      * <p/>
-     * This is done through reflection. Do not use this method unless you know what you are doing.
+     * This is done through the factory in {@link PreferenceControllerRegistry}, or through
+     * reflection when there is none. Do not use this method unless you know what you are doing.
      */
     public static BasePreferenceController createInstance(Context context,
             String controllerName, String key) {
+        final BasePreferenceController controller =
+                PreferenceControllerRegistry.getInstance().create(context, controllerName, key);
+        if (controller != null) {
+            return controller;
+        }
         try {
             final Class<?> clazz = Class.forName(controllerName);
             final Constructor<?> preferenceConstructor =
@@ -127,9 +134,15 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
     /**
      * Instantiate a controller as specified controller type.
      * <p/>
-     * This is done through reflection. Do not use this method unless you know what you are doing.
+     * This is done through the factory in {@link PreferenceControllerRegistry}, or through
+     * reflection when there is none. Do not use this method unless you know what you are doing.
      */
     public static BasePreferenceController createInstance(Context context, String controllerName) {
+        final BasePreferenceController controller =
+                PreferenceControllerRegistry.getInstance().create(context, controllerName);
+        if (controller != null) {
+            return controller;
+        }
         try {
             final Class<?> clazz = Class.forName(controllerName);
             final Constructor<?> preferenceConstructor = clazz.getConstructor(Context.class);
@@ -256,6 +269,50 @@ public abstract class BasePreferenceController extends AbstractPreferenceControl
         return false;
     }
 
+    /**
+     * @return {@code true} if the state of the setting is slow to compute, and should be computed
+     * off the main thread.
+     * <p>
+     * Such controllers implement {@link #computeState()} and {@link #applyState} instead of
+     * {@link #updateState}. {@code DashboardFragment} then calls {@link #isAvailable()} and
+     * {@link #computeState()} on a background thread, in parallel with other controllers, and
+     * applies the states of all of them in one pass on the main thread.
+     */
+    public boolean hasAsyncState() {
+        return false;
+    }
+
+    /**
+     * Computes the state of the setting, without touching any view. Called on a background
+     * thread when {@link #hasAsyncState()}, possibly while a previous call is still running, so
+     * it must not modify the controller.
+     *
+     * @return the state to pass to {@link #applyState}.
+     */
+    @WorkerThread
+    public Object computeState() {
+        return null;
+    }
+
+    /**
+     * Applies {@param state} computed by {@link #computeState()} to {@param preference}.
+     */
+    public void applyState(Preference preference, Object state) {
+    }
+
+    /**
+     * Updates the state of {@param preference}, computing it on the calling thread for
+     * controllers which {@link #hasAsyncState()}.
+     */
+    @Override
+    public void updateState(Preference preference) {
+        if (hasAsyncState()) {
+            applyState(preference, computeState());
+        } else {
+            super.updateState(preference);
+        }
+    }
+
     /**
      * Updates non-indexable keys for search provider.
      *
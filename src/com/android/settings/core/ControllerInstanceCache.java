@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.core;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.VisibleForTesting;
+import android.util.LruCache;
+
+/**
+ * Shares the controllers declared in preference xml between the search indexing paths, such as
+ * non-indexable keys and result payloads.
+ * <p/>
+ * Controllers are keyed by class, preference key, user and thread. An instance is only reused for
+ * the context it was created with, and for {@link #MAX_AGE_MS} after its creation: long enough to
+ * serve a whole indexing pass, short enough that state read in a constructor does not go stale.
+ * Controllers are not thread-safe, and indexing queries run concurrently on pool and binder
+ * threads, so an instance is only ever handed to the thread which created it.
+ * <p/>
+ * The instances must only be used for stateless queries: availability, non-indexable keys and
+ * payloads. They must never be bound to a {@code PreferenceScreen}, observe a lifecycle or change
+ * a setting; fragments and slices create their own controllers.
+ */
+public class ControllerInstanceCache {
+
+    @VisibleForTesting
+    static final int MAX_ENTRIES = 256;
+
+    @VisibleForTesting
+    static final long MAX_AGE_MS = 60 * 1000;
+
+    private static ControllerInstanceCache sInstance;
+
+    private final LruCache<String, Entry> mEntries = new LruCache<>(MAX_ENTRIES);
+    private final long mMaxAgeMs;
+
+    public static synchronized ControllerInstanceCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new ControllerInstanceCache(MAX_AGE_MS);
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    ControllerInstanceCache(long maxAgeMs) {
+        mMaxAgeMs = maxAgeMs;
+    }
+
+    /**
+     * @return the instance of {@param controllerName} for {@param key} shared with earlier calls
+     * on this thread, creating it if there is none, or null if it cannot be instantiated.
+     */
+    public BasePreferenceController get(Context context, String controllerName, String key) {
+        final String cacheKey = controllerName + "|" + key + "|" + context.getUserId() + "|"
+                + Thread.currentThread().getId();
+        final long now = SystemClock.elapsedRealtime();
+        final Entry entry = mEntries.get(cacheKey);
+        if (entry != null && entry.context == context && now - entry.createdAt < mMaxAgeMs) {
+            return entry.controller;
+        }
+
+        final BasePreferenceController controller =
+                PreferenceControllerListHelper.createController(context, controllerName, key);
+        if (controller != null) {
+            mEntries.put(cacheKey, new Entry(context, controller, now));
+        } else {
+            mEntries.remove(cacheKey);
+        }
+        return controller;
+    }
+
+    /**
+     * Drops every shared controller.
+     */
+    public void clear() {
+        mEntries.evictAll();
+    }
+
+    private static class Entry {
+        final Context context;
+        final BasePreferenceController controller;
+        final long createdAt;
+
+        Entry(Context context, BasePreferenceController controller, long createdAt) {
+            this.context = context;
+            this.controller = controller;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -50,6 +50,16 @@ public class PreferenceControllerListHelper {
     @NonNull
     public static List<BasePreferenceController> getPreferenceControllersFromXml(Context context,
             @XmlRes int xmlResId) {
+        return getPreferenceControllersFromXml(context, xmlResId, null /* instanceCache */);
+    }
+
+    /**
+     * Instantiates a list of controller based on xml definition, reusing the controllers of
+     * {@param instanceCache} when it is not null.
+     */
+    @NonNull
+    public static List<BasePreferenceController> getPreferenceControllersFromXml(Context context,
+            @XmlRes int xmlResId, ControllerInstanceCache instanceCache) {
         final List<BasePreferenceController> controllers = new ArrayList<>();
         List<Bundle> preferenceMetadata;
         try {
@@ -65,30 +75,72 @@ public class PreferenceControllerListHelper {
             if (TextUtils.isEmpty(controllerName)) {
                 continue;
             }
-            BasePreferenceController controller;
-            try {
-                controller = BasePreferenceController.createInstance(context, controllerName);
-            } catch (IllegalStateException e) {
-                Log.d(TAG, "Could not find Context-only controller for pref: " + controllerName);
-                final String key = metadata.getString(METADATA_KEY);
-                if (TextUtils.isEmpty(key)) {
-                    Log.w(TAG, "Controller requires key but it's not defined in xml: "
-                            + controllerName);
-                    continue;
-                }
-                try {
-                    controller = BasePreferenceController.createInstance(context, controllerName,
-                            key);
-                } catch (IllegalStateException e2) {
-                    Log.w(TAG, "Cannot instantiate controller from reflection: " + controllerName);
-                    continue;
-                }
+            final String key = metadata.getString(METADATA_KEY);
+            final BasePreferenceController controller = instanceCache != null
+                    ? instanceCache.get(context, controllerName, key)
+                    : createController(context, controllerName, key);
+            if (controller != null) {
+                controllers.add(controller);
             }
-            controllers.add(controller);
         }
         return controllers;
     }
 
+    /**
+     * Instantiates {@param controllerName}, with its Context-only constructor if it has one and
+     * with its Context and {@param key} constructor otherwise.
+     *
+     * @return the controller, or null if it cannot be instantiated.
+     */
+    public static BasePreferenceController createController(Context context,
+            String controllerName, String key) {
+        BasePreferenceController controller;
+        try {
+            controller = createFromRegistry(PreferenceControllerRegistry.getInstance(), context,
+                    controllerName, key);
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "Cannot instantiate controller from factory: " + controllerName);
+            return null;
+        }
+        if (controller != null) {
+            return controller;
+        }
+        try {
+            controller = BasePreferenceController.createInstance(context, controllerName);
+        } catch (IllegalStateException e) {
+            Log.d(TAG, "Could not find Context-only controller for pref: " + controllerName);
+            if (TextUtils.isEmpty(key)) {
+                Log.w(TAG, "Controller requires key but it's not defined in xml: "
+                        + controllerName);
+                return null;
+            }
+            try {
+                controller = BasePreferenceController.createInstance(context, controllerName,
+                        key);
+            } catch (IllegalStateException e2) {
+                Log.w(TAG, "Cannot instantiate controller from reflection: " + controllerName);
+                return null;
+            }
+        }
+        return controller;
+    }
+
+    /**
+     * Creates {@param controllerName} through its registered factory, preferring the
+     * Context-only constructor like the reflective path does.
+     *
+     * @return the controller, or null if it has no factory usable with {@param key}.
+     */
+    private static BasePreferenceController createFromRegistry(
+            PreferenceControllerRegistry registry, Context context, String controllerName,
+            String key) {
+        final BasePreferenceController controller = registry.create(context, controllerName);
+        if (controller != null || TextUtils.isEmpty(key)) {
+            return controller;
+        }
+        return registry.create(context, controllerName, key);
+    }
+
     /**
      * Return a sub list of {@link AbstractPreferenceController} to only contain controller that
      * doesn't exist in filter.
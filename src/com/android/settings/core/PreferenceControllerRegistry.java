@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package com.android.settings.core;
+
+import android.content.Context;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+
+import com.android.settings.accessibility.MagnificationGesturesPreferenceController;
+import com.android.settings.accessibility.MagnificationNavbarPreferenceController;
+import com.android.settings.applications.AppPermissionsPreferenceController;
+import com.android.settings.applications.appinfo.AdvancedAppInfoPreferenceCategoryController;
+import com.android.settings.applications.appinfo.AppDataUsagePreferenceController;
+import com.android.settings.applications.appinfo.AppInstallerInfoPreferenceController;
+import com.android.settings.applications.appinfo.AppInstallerPreferenceCategoryController;
+import com.android.settings.applications.appinfo.AppNotificationPreferenceController;
+import com.android.settings.applications.appinfo.AppOpenByDefaultPreferenceController;
+import com.android.settings.applications.appinfo.AppPackageNamePreferenceController;
+import com.android.settings.applications.appinfo.AppPermissionPreferenceController;
+import com.android.settings.applications.appinfo.AppSettingPreferenceController;
+import com.android.settings.applications.appinfo.AppStoragePreferenceController;
+import com.android.settings.applications.appinfo.AppVersionPreferenceController;
+import com.android.settings.applications.appinfo.DrawOverlayDetailPreferenceController;
+import com.android.settings.applications.appinfo.ExternalSourceDetailPreferenceController;
+import com.android.settings.applications.appinfo.InstantAppDomainsPreferenceController;
+import com.android.settings.applications.appinfo.PictureInPictureDetailPreferenceController;
+import com.android.settings.applications.appinfo.TimeSpentInAppPreferenceController;
+import com.android.settings.applications.appinfo.WriteSystemSettingsPreferenceController;
+import com.android.settings.backup.BackupSettingsActivityPreferenceController;
+import com.android.settings.bluetooth.BluetoothDeviceRenamePreferenceController;
+import com.android.settings.connecteddevice.AddDevicePreferenceController;
+import com.android.settings.connecteddevice.AdvancedConnectedDeviceController;
+import com.android.settings.connecteddevice.AvailableMediaDeviceGroupController;
+import com.android.settings.connecteddevice.BluetoothOnWhileDrivingPreferenceController;
+import com.android.settings.connecteddevice.ConnectedDeviceGroupController;
+import com.android.settings.connecteddevice.PreviouslyConnectedDevicePreferenceController;
+import com.android.settings.connecteddevice.SavedDeviceGroupController;
+import com.android.settings.datetime.timezone.TimeZoneInfoPreferenceController;
+import com.android.settings.display.AmbientDisplayAlwaysOnPreferenceController;
+import com.android.settings.display.AmbientDisplayNotificationsPreferenceController;
+import com.android.settings.display.AutoBrightnessPreferenceController;
+import com.android.settings.display.AutoRotatePreferenceController;
+import com.android.settings.display.FontSizePreferenceController;
+import com.android.settings.display.NightDisplayActivationPreferenceController;
+import com.android.settings.display.NightDisplayAutoModePreferenceController;
+import com.android.settings.display.NightDisplayCustomEndTimePreferenceController;
+import com.android.settings.display.NightDisplayCustomStartTimePreferenceController;
+import com.android.settings.display.NightDisplayIntensityPreferenceController;
+import com.android.settings.display.SystemUiThemePreferenceController;
+import com.android.settings.fuelgauge.AutoRestrictionPreferenceController;
+import com.android.settings.fuelgauge.BatterySaverController;
+import com.android.settings.fuelgauge.SmartBatteryPreferenceController;
+import com.android.settings.fuelgauge.batterysaver.AutoBatterySaverPreferenceController;
+import com.android.settings.fuelgauge.batterysaver.BatterySaverButtonPreferenceController;
+import com.android.settings.fuelgauge.batterytip.BatteryManagerPreferenceController;
+import com.android.settings.gestures.AssistGestureSettingsPreferenceController;
+import com.android.settings.gestures.DoubleTapPowerPreferenceController;
+import com.android.settings.gestures.DoubleTapScreenPreferenceController;
+import com.android.settings.gestures.DoubleTwistPreferenceController;
+import com.android.settings.gestures.GesturesSettingPreferenceController;
+import com.android.settings.gestures.PickupGesturePreferenceController;
+import com.android.settings.gestures.PreventRingingPreferenceController;
+import com.android.settings.gestures.SwipeToNotificationPreferenceController;
+import com.android.settings.gestures.SwipeUpPreferenceController;
+import com.android.settings.inputmethod.GameControllerPreferenceController;
+import com.android.settings.network.AirplaneModePreferenceController;
+import com.android.settings.network.NetworkScorerPickerPreferenceController;
+import com.android.settings.nfc.AndroidBeamPreferenceController;
+import com.android.settings.nfc.NfcPreferenceController;
+import com.android.settings.notification.AlarmVolumePreferenceController;
+import com.android.settings.notification.BadgingNotificationPreferenceController;
+import com.android.settings.notification.CallVolumePreferenceController;
+import com.android.settings.notification.IncreasingRingPreferenceController;
+import com.android.settings.notification.IncreasingRingVolumePreferenceController;
+import com.android.settings.notification.MediaVolumePreferenceController;
+import com.android.settings.notification.NotificationVolumePreferenceController;
+import com.android.settings.notification.RingVolumePreferenceController;
+import com.android.settings.notification.VibrateWhenRingPreferenceController;
+import com.android.settings.security.LockdownButtonPreferenceController;
+import com.android.settings.security.ShowPasswordPreferenceController;
+import com.android.settings.security.VisiblePatternProfilePreferenceController;
+import com.android.settings.sound.HandsFreeProfileOutputPreferenceController;
+import com.android.settings.sound.MediaOutputPreferenceController;
+import com.android.settings.system.AdditionalSystemUpdatePreferenceController;
+import com.android.settings.system.ResetPreferenceController;
+import com.android.settings.system.SystemUpdatePreferenceController;
+
+import java.util.Map;
+
+/**
+ * Factories of the controllers declared with {@code settings:controller} in preference xml.
+ * <p/>
+ * Creating a controller through its factory avoids looking up its class and constructor by
+ * reflection, which {@link BasePreferenceController#createInstance} falls back to for
+ * controllers missing here. Every controller added in xml should be registered here, with the
+ * constructors it declares.
+ */
+public class PreferenceControllerRegistry {
+
+    /**
+     * Creates a controller through its {@code ClassName(Context)} constructor.
+     */
+    public interface Factory {
+        BasePreferenceController create(Context context);
+    }
+
+    /**
+     * Creates a controller through its {@code ClassName(Context, String)} constructor.
+     */
+    public interface KeyedFactory {
+        BasePreferenceController create(Context context, String key);
+    }
+
+    private static PreferenceControllerRegistry sInstance;
+
+    private final Map<String, Factory> mFactories = new ArrayMap<>();
+    private final Map<String, KeyedFactory> mKeyedFactories = new ArrayMap<>();
+
+    public static synchronized PreferenceControllerRegistry getInstance() {
+        if (sInstance == null) {
+            sInstance = new PreferenceControllerRegistry();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    PreferenceControllerRegistry() {
+        register(AdditionalSystemUpdatePreferenceController.class,
+                AdditionalSystemUpdatePreferenceController::new);
+        register(AlarmVolumePreferenceController.class, AlarmVolumePreferenceController::new);
+        register(AppPermissionsPreferenceController.class, AppPermissionsPreferenceController::new);
+        register(AutoBatterySaverPreferenceController.class,
+                AutoBatterySaverPreferenceController::new);
+        register(AutoRestrictionPreferenceController.class,
+                AutoRestrictionPreferenceController::new);
+        register(AvailableMediaDeviceGroupController.class,
+                AvailableMediaDeviceGroupController::new);
+        register(BackupSettingsActivityPreferenceController.class,
+                BackupSettingsActivityPreferenceController::new);
+        register(BatteryManagerPreferenceController.class, BatteryManagerPreferenceController::new);
+        register(BatterySaverController.class, BatterySaverController::new);
+        register(BluetoothOnWhileDrivingPreferenceController.class,
+                BluetoothOnWhileDrivingPreferenceController::new);
+        register(ConnectedDeviceGroupController.class, ConnectedDeviceGroupController::new);
+        register(GesturesSettingPreferenceController.class,
+                GesturesSettingPreferenceController::new);
+        register(IncreasingRingPreferenceController.class, IncreasingRingPreferenceController::new);
+        register(IncreasingRingVolumePreferenceController.class,
+                IncreasingRingVolumePreferenceController::new);
+        register(LockdownButtonPreferenceController.class, LockdownButtonPreferenceController::new);
+        register(MediaVolumePreferenceController.class, MediaVolumePreferenceController::new);
+        register(NotificationVolumePreferenceController.class,
+                NotificationVolumePreferenceController::new);
+        register(RingVolumePreferenceController.class, RingVolumePreferenceController::new);
+        register(SavedDeviceGroupController.class, SavedDeviceGroupController::new);
+        register(ShowPasswordPreferenceController.class, ShowPasswordPreferenceController::new);
+        register(SmartBatteryPreferenceController.class, SmartBatteryPreferenceController::new);
+        register(SystemUpdatePreferenceController.class, SystemUpdatePreferenceController::new);
+        register(TimeZoneInfoPreferenceController.class, TimeZoneInfoPreferenceController::new);
+        register(VisiblePatternProfilePreferenceController.class,
+                VisiblePatternProfilePreferenceController::new);
+
+        registerWithKey(AddDevicePreferenceController.class, AddDevicePreferenceController::new);
+        registerWithKey(AdvancedAppInfoPreferenceCategoryController.class,
+                AdvancedAppInfoPreferenceCategoryController::new);
+        registerWithKey(AdvancedConnectedDeviceController.class,
+                AdvancedConnectedDeviceController::new);
+        registerWithKey(AirplaneModePreferenceController.class,
+                AirplaneModePreferenceController::new);
+        registerWithKey(AmbientDisplayAlwaysOnPreferenceController.class,
+                AmbientDisplayAlwaysOnPreferenceController::new);
+        registerWithKey(AmbientDisplayNotificationsPreferenceController.class,
+                AmbientDisplayNotificationsPreferenceController::new);
+        registerWithKey(AndroidBeamPreferenceController.class,
+                AndroidBeamPreferenceController::new);
+        registerWithKey(AppDataUsagePreferenceController.class,
+                AppDataUsagePreferenceController::new);
+        registerWithKey(AppInstallerInfoPreferenceController.class,
+                AppInstallerInfoPreferenceController::new);
+        registerWithKey(AppInstallerPreferenceCategoryController.class,
+                AppInstallerPreferenceCategoryController::new);
+        registerWithKey(AppNotificationPreferenceController.class,
+                AppNotificationPreferenceController::new);
+        registerWithKey(AppOpenByDefaultPreferenceController.class,
+                AppOpenByDefaultPreferenceController::new);
+        registerWithKey(AppPackageNamePreferenceController.class,
+                AppPackageNamePreferenceController::new);
+        registerWithKey(AppPermissionPreferenceController.class,
+                AppPermissionPreferenceController::new);
+        registerWithKey(AppSettingPreferenceController.class, AppSettingPreferenceController::new);
+        registerWithKey(AppStoragePreferenceController.class, AppStoragePreferenceController::new);
+        registerWithKey(AppVersionPreferenceController.class, AppVersionPreferenceController::new);
+        registerWithKey(AssistGestureSettingsPreferenceController.class,
+                AssistGestureSettingsPreferenceController::new);
+        registerWithKey(AutoBrightnessPreferenceController.class,
+                AutoBrightnessPreferenceController::new);
+        registerWithKey(AutoRotatePreferenceController.class, AutoRotatePreferenceController::new);
+        registerWithKey(BadgingNotificationPreferenceController.class,
+                BadgingNotificationPreferenceController::new);
+        registerWithKey(BatterySaverButtonPreferenceController.class,
+                BatterySaverButtonPreferenceController::new);
+        registerWithKey(BluetoothDeviceRenamePreferenceController.class,
+                BluetoothDeviceRenamePreferenceController::new);
+        registerWithKey(CallVolumePreferenceController.class, CallVolumePreferenceController::new);
+        registerWithKey(DoubleTapPowerPreferenceController.class,
+                DoubleTapPowerPreferenceController::new);
+        registerWithKey(DoubleTapScreenPreferenceController.class,
+                DoubleTapScreenPreferenceController::new);
+        registerWithKey(DoubleTwistPreferenceController.class,
+                DoubleTwistPreferenceController::new);
+        registerWithKey(DrawOverlayDetailPreferenceController.class,
+                DrawOverlayDetailPreferenceController::new);
+        registerWithKey(ExternalSourceDetailPreferenceController.class,
+                ExternalSourceDetailPreferenceController::new);
+        registerWithKey(FontSizePreferenceController.class, FontSizePreferenceController::new);
+        registerWithKey(GameControllerPreferenceController.class,
+                GameControllerPreferenceController::new);
+        registerWithKey(HandsFreeProfileOutputPreferenceController.class,
+                HandsFreeProfileOutputPreferenceController::new);
+        registerWithKey(InstantAppDomainsPreferenceController.class,
+                InstantAppDomainsPreferenceController::new);
+        registerWithKey(MagnificationGesturesPreferenceController.class,
+                MagnificationGesturesPreferenceController::new);
+        registerWithKey(MagnificationNavbarPreferenceController.class,
+                MagnificationNavbarPreferenceController::new);
+        registerWithKey(MediaOutputPreferenceController.class,
+                MediaOutputPreferenceController::new);
+        registerWithKey(NetworkScorerPickerPreferenceController.class,
+                NetworkScorerPickerPreferenceController::new);
+        registerWithKey(NfcPreferenceController.class, NfcPreferenceController::new);
+        registerWithKey(NightDisplayActivationPreferenceController.class,
+                NightDisplayActivationPreferenceController::new);
+        registerWithKey(NightDisplayAutoModePreferenceController.class,
+                NightDisplayAutoModePreferenceController::new);
+        registerWithKey(NightDisplayCustomEndTimePreferenceController.class,
+                NightDisplayCustomEndTimePreferenceController::new);
+        registerWithKey(NightDisplayCustomStartTimePreferenceController.class,
+                NightDisplayCustomStartTimePreferenceController::new);
+        registerWithKey(NightDisplayIntensityPreferenceController.class,
+                NightDisplayIntensityPreferenceController::new);
+        registerWithKey(PickupGesturePreferenceController.class,
+                PickupGesturePreferenceController::new);
+        registerWithKey(PictureInPictureDetailPreferenceController.class,
+                PictureInPictureDetailPreferenceController::new);
+        registerWithKey(PreventRingingPreferenceController.class,
+                PreventRingingPreferenceController::new);
+        registerWithKey(PreviouslyConnectedDevicePreferenceController.class,
+                PreviouslyConnectedDevicePreferenceController::new);
+        registerWithKey(ResetPreferenceController.class, ResetPreferenceController::new);
+        registerWithKey(RingVolumePreferenceController.class, RingVolumePreferenceController::new);
+        registerWithKey(SwipeToNotificationPreferenceController.class,
+                SwipeToNotificationPreferenceController::new);
+        registerWithKey(SwipeUpPreferenceController.class, SwipeUpPreferenceController::new);
+        registerWithKey(SystemUiThemePreferenceController.class,
+                SystemUiThemePreferenceController::new);
+        registerWithKey(TimeSpentInAppPreferenceController.class,
+                TimeSpentInAppPreferenceController::new);
+        registerWithKey(VibrateWhenRingPreferenceController.class,
+                VibrateWhenRingPreferenceController::new);
+        registerWithKey(WriteSystemSettingsPreferenceController.class,
+                WriteSystemSettingsPreferenceController::new);
+    }
+
+    @VisibleForTesting
+    void register(Class<? extends BasePreferenceController> controllerClass, Factory factory) {
+        mFactories.put(controllerClass.getName(), factory);
+    }
+
+    @VisibleForTesting
+    void registerWithKey(Class<? extends BasePreferenceController> controllerClass,
+            KeyedFactory factory) {
+        mKeyedFactories.put(controllerClass.getName(), factory);
+    }
+
+    /**
+     * @return {@code true} if {@param controllerName} can be created without reflection.
+     */
+    public boolean isRegistered(String controllerName) {
+        return mFactories.containsKey(controllerName)
+                || mKeyedFactories.containsKey(controllerName);
+    }
+
+    /**
+     * @return a new instance of {@param controllerName} created with its Context-only
+     * constructor, or null if it has no such factory.
+     * @throws IllegalStateException if the constructor throws, like the reflective path.
+     */
+    public BasePreferenceController create(Context context, String controllerName) {
+        final Factory factory = mFactories.get(controllerName);
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return factory.create(context);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(
+                    "Invalid preference controller: " + controllerName, e);
+        }
+    }
+
+    /**
+     * @return a new instance of {@param controllerName} created with its Context and key
+     * constructor, or null if it has no such factory.
+     * @throws IllegalStateException if the constructor throws, like the reflective path.
+     */
+    public BasePreferenceController create(Context context, String controllerName, String key) {
+        final KeyedFactory factory = mKeyedFactories.get(controllerName);
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return factory.create(context, key);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException(
+                    "Invalid preference controller: " + controllerName, e);
+        }
+    }
+}
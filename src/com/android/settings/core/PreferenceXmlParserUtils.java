@@ -20,6 +20,7 @@ import android.annotation.NonNull;
 import android.annotation.Nullable;
 import android.annotation.XmlRes;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
 import android.os.Bundle;
@@ -28,6 +29,7 @@ import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.TypedValue;
 import android.util.Xml;
 
@@ -42,6 +44,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Utility class to parse elements of XML preferences
@@ -66,7 +69,13 @@ public class PreferenceXmlParserUtils {
             MetadataFlag.FLAG_NEED_PREF_CONTROLLER,
             MetadataFlag.FLAG_NEED_PREF_TITLE,
             MetadataFlag.FLAG_NEED_PREF_SUMMARY,
-            MetadataFlag.FLAG_NEED_PREF_ICON})
+            MetadataFlag.FLAG_NEED_PREF_ICON,
+            MetadataFlag.FLAG_NEED_PLATFORM_SLICE_FLAG,
+            MetadataFlag.FLAG_NEED_KEYWORDS,
+            MetadataFlag.FLAG_INCLUDE_ALL_ELEMENTS,
+            MetadataFlag.FLAG_NEED_ENTRIES,
+            MetadataFlag.FLAG_NEED_SUMMARY_ON_OFF,
+            MetadataFlag.FLAG_NEED_CHILD_FRAGMENT})
     @Retention(RetentionPolicy.SOURCE)
     public @interface MetadataFlag {
         int FLAG_INCLUDE_PREF_SCREEN = 1;
@@ -78,6 +87,10 @@ public class PreferenceXmlParserUtils {
         int FLAG_NEED_PREF_ICON = 1 << 6;
         int FLAG_NEED_PLATFORM_SLICE_FLAG = 1 << 7;
         int FLAG_NEED_KEYWORDS = 1 << 8;
+        int FLAG_INCLUDE_ALL_ELEMENTS = 1 << 9;
+        int FLAG_NEED_ENTRIES = 1 << 10;
+        int FLAG_NEED_SUMMARY_ON_OFF = 1 << 11;
+        int FLAG_NEED_CHILD_FRAGMENT = 1 << 12;
     }
 
     public static final String METADATA_PREF_TYPE = "type";
@@ -88,9 +101,25 @@ public class PreferenceXmlParserUtils {
     public static final String METADATA_ICON = "icon";
     public static final String METADATA_PLATFORM_SLICE_FLAG = "platform_slice";
     public static final String METADATA_KEYWORDS = "keywords";
+    public static final String METADATA_ENTRIES = "entries";
+    public static final String METADATA_SUMMARY_ON = "summary_on";
+    public static final String METADATA_SUMMARY_OFF = "summary_off";
+    public static final String METADATA_CHILD_FRAGMENT = "child_fragment";
 
     private static final String ENTRIES_SEPARATOR = "|";
 
+    private static final int METADATA_CACHE_SIZE = 64;
+
+    private static final String SETTINGS_PACKAGE_NAME = "com.android.settings";
+
+    /**
+     * Every element of recently parsed preference xml of Settings, with all of its metadata.
+     * Keyed by {@link MetadataCacheKey} so a configuration change, such as a new locale, misses
+     * the cache.
+     */
+    private static final LruCache<MetadataCacheKey, List<Bundle>> sMetadataCache =
+            new LruCache<>(METADATA_CACHE_SIZE);
+
     /**
      * Call {@link #extractMetadata(Context, int, int)} with {@link #METADATA_KEY} instead.
      */
@@ -167,6 +196,8 @@ public class PreferenceXmlParserUtils {
 
     /**
      * Extracts metadata from preference xml and put them into a {@link Bundle}.
+     * The xml of Settings is parsed once per configuration and served from a process-wide cache
+     * afterwards.
      *
      * @param xmlResId xml res id of a preference screen
      * @param flags    Should be one or more of {@link MetadataFlag}.
@@ -179,64 +210,133 @@ public class PreferenceXmlParserUtils {
             Log.d(TAG, xmlResId + " is invalid.");
             return metadata;
         }
-        final XmlResourceParser parser = context.getResources().getXml(xmlResId);
-
-        int type;
-        while ((type = parser.next()) != XmlPullParser.END_DOCUMENT
-                && type != XmlPullParser.START_TAG) {
-            // Parse next until start tag is found
-        }
-        final int outerDepth = parser.getDepth();
 
-        do {
-            if (type != XmlPullParser.START_TAG) {
-                continue;
-            }
-            final String nodeName = parser.getName();
-            if (!hasFlag(flags, MetadataFlag.FLAG_INCLUDE_PREF_SCREEN)
-                    && TextUtils.equals(PREF_SCREEN_TAG, nodeName)) {
-                continue;
-            }
-            if (!SUPPORTED_PREF_TYPES.contains(nodeName) && !nodeName.endsWith("Preference")) {
-                continue;
+        for (Bundle element : getCachedMetadata(context, xmlResId)) {
+            final String nodeName = element.getString(METADATA_PREF_TYPE);
+            if (!hasFlag(flags, MetadataFlag.FLAG_INCLUDE_ALL_ELEMENTS)) {
+                if (!hasFlag(flags, MetadataFlag.FLAG_INCLUDE_PREF_SCREEN)
+                        && TextUtils.equals(PREF_SCREEN_TAG, nodeName)) {
+                    continue;
+                }
+                if (!SUPPORTED_PREF_TYPES.contains(nodeName)
+                        && !nodeName.endsWith("Preference")) {
+                    continue;
+                }
             }
             final Bundle preferenceMetadata = new Bundle();
-            final AttributeSet attrs = Xml.asAttributeSet(parser);
-            final TypedArray preferenceAttributes = context.obtainStyledAttributes(attrs,
-                    R.styleable.Preference);
 
             if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_TYPE)) {
                 preferenceMetadata.putString(METADATA_PREF_TYPE, nodeName);
             }
             if (hasFlag(flags, MetadataFlag.FLAG_NEED_KEY)) {
-                preferenceMetadata.putString(METADATA_KEY, getKey(preferenceAttributes));
+                preferenceMetadata.putString(METADATA_KEY, element.getString(METADATA_KEY));
             }
             if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_CONTROLLER)) {
                 preferenceMetadata.putString(METADATA_CONTROLLER,
-                        getController(preferenceAttributes));
+                        element.getString(METADATA_CONTROLLER));
             }
             if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_TITLE)) {
-                preferenceMetadata.putString(METADATA_TITLE, getTitle(preferenceAttributes));
+                preferenceMetadata.putString(METADATA_TITLE, element.getString(METADATA_TITLE));
             }
             if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_SUMMARY)) {
-                preferenceMetadata.putString(METADATA_SUMMARY, getSummary(preferenceAttributes));
+                preferenceMetadata.putString(METADATA_SUMMARY,
+                        element.getString(METADATA_SUMMARY));
             }
             if (hasFlag(flags, MetadataFlag.FLAG_NEED_PREF_ICON)) {
-                preferenceMetadata.putInt(METADATA_ICON, getIcon(preferenceAttributes));
+                preferenceMetadata.putInt(METADATA_ICON, element.getInt(METADATA_ICON));
             }
             if (hasFlag(flags, MetadataFlag.FLAG_NEED_PLATFORM_SLICE_FLAG)) {
                 preferenceMetadata.putBoolean(METADATA_PLATFORM_SLICE_FLAG,
-                        getPlatformSlice(preferenceAttributes));
+                        element.getBoolean(METADATA_PLATFORM_SLICE_FLAG));
             }
             if (hasFlag(flags, MetadataFlag.FLAG_NEED_KEYWORDS)) {
-                preferenceMetadata.putString(METADATA_KEYWORDS, getKeywords(preferenceAttributes));
+                preferenceMetadata.putString(METADATA_KEYWORDS,
+                        element.getString(METADATA_KEYWORDS));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_ENTRIES)) {
+                preferenceMetadata.putString(METADATA_ENTRIES,
+                        element.getString(METADATA_ENTRIES));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_SUMMARY_ON_OFF)) {
+                preferenceMetadata.putString(METADATA_SUMMARY_ON,
+                        element.getString(METADATA_SUMMARY_ON));
+                preferenceMetadata.putString(METADATA_SUMMARY_OFF,
+                        element.getString(METADATA_SUMMARY_OFF));
+            }
+            if (hasFlag(flags, MetadataFlag.FLAG_NEED_CHILD_FRAGMENT)) {
+                preferenceMetadata.putString(METADATA_CHILD_FRAGMENT,
+                        element.getString(METADATA_CHILD_FRAGMENT));
             }
             metadata.add(preferenceMetadata);
+        }
+        return metadata;
+    }
+
+    @VisibleForTesting
+    static void clearMetadataCache() {
+        sMetadataCache.evictAll();
+    }
+
+    private static List<Bundle> getCachedMetadata(Context context, @XmlRes int xmlResId)
+            throws IOException, XmlPullParserException {
+        if (!TextUtils.equals(context.getPackageName(), SETTINGS_PACKAGE_NAME)) {
+            // Other packages can be updated while Settings is running, which the cache key
+            // cannot tell, so their xml is parsed each time.
+            return parseAllMetadata(context, xmlResId);
+        }
+        final MetadataCacheKey cacheKey = new MetadataCacheKey(context, xmlResId);
+        List<Bundle> metadata = sMetadataCache.get(cacheKey);
+        if (metadata == null) {
+            metadata = parseAllMetadata(context, xmlResId);
+            sMetadataCache.put(cacheKey, metadata);
+        }
+        return metadata;
+    }
+
+    /**
+     * Parses every element of the preference xml, including unsupported preference types, with
+     * all of the metadata any {@link MetadataFlag} can ask for.
+     */
+    private static List<Bundle> parseAllMetadata(Context context, @XmlRes int xmlResId)
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = new ArrayList<>();
+        final XmlResourceParser parser = context.getResources().getXml(xmlResId);
+        try {
+            int type;
+            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT) {
+                if (type != XmlPullParser.START_TAG) {
+                    continue;
+                }
+                final String nodeName = parser.getName();
+                final Bundle preferenceMetadata = new Bundle();
+                final AttributeSet attrs = Xml.asAttributeSet(parser);
+                final TypedArray preferenceAttributes = context.obtainStyledAttributes(attrs,
+                        R.styleable.Preference);
 
-            preferenceAttributes.recycle();
-        } while ((type = parser.next()) != XmlPullParser.END_DOCUMENT
-                && (type != XmlPullParser.END_TAG || parser.getDepth() > outerDepth));
-        parser.close();
+                preferenceMetadata.putString(METADATA_PREF_TYPE, nodeName);
+                preferenceMetadata.putString(METADATA_KEY, getKey(preferenceAttributes));
+                preferenceMetadata.putString(METADATA_CONTROLLER,
+                        getController(preferenceAttributes));
+                preferenceMetadata.putString(METADATA_TITLE, getTitle(preferenceAttributes));
+                preferenceMetadata.putString(METADATA_SUMMARY, getSummary(preferenceAttributes));
+                preferenceMetadata.putInt(METADATA_ICON, getIcon(preferenceAttributes));
+                preferenceMetadata.putBoolean(METADATA_PLATFORM_SLICE_FLAG,
+                        getPlatformSlice(preferenceAttributes));
+                preferenceMetadata.putString(METADATA_KEYWORDS,
+                        getKeywords(preferenceAttributes));
+                preferenceMetadata.putString(METADATA_CHILD_FRAGMENT,
+                        getChildFragment(preferenceAttributes));
+                preferenceAttributes.recycle();
+
+                preferenceMetadata.putString(METADATA_ENTRIES, getDataEntries(context, attrs));
+                preferenceMetadata.putString(METADATA_SUMMARY_ON, getDataSummaryOn(context, attrs));
+                preferenceMetadata.putString(METADATA_SUMMARY_OFF,
+                        getDataSummaryOff(context, attrs));
+                metadata.add(preferenceMetadata);
+            }
+        } finally {
+            parser.close();
+        }
         return metadata;
     }
 
@@ -314,4 +414,39 @@ public class PreferenceXmlParserUtils {
     private static String getKeywords(TypedArray styleAttributes) {
         return styleAttributes.getString(R.styleable.Preference_keywords);
     }
+
+    private static String getChildFragment(TypedArray styledAttributes) {
+        return styledAttributes.getString(R.styleable.Preference_android_fragment);
+    }
+
+    private static final class MetadataCacheKey {
+        private final String mPackageName;
+        private final int mXmlResId;
+        private final Configuration mConfiguration;
+
+        MetadataCacheKey(Context context, @XmlRes int xmlResId) {
+            mPackageName = context.getPackageName();
+            mXmlResId = xmlResId;
+            mConfiguration = new Configuration(context.getResources().getConfiguration());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MetadataCacheKey)) {
+                return false;
+            }
+            final MetadataCacheKey other = (MetadataCacheKey) o;
+            return mXmlResId == other.mXmlResId
+                    && TextUtils.equals(mPackageName, other.mPackageName)
+                    && mConfiguration.equals(other.mConfiguration);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mPackageName, mXmlResId, mConfiguration);
+        }
+    }
 }
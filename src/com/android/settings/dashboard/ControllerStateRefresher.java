@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import android.support.annotation.VisibleForTesting;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceScreen;
+import android.util.ArraySet;
+import android.util.Log;
+
+import com.android.settings.core.BasePreferenceController;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Refreshes the state of the controllers which {@link BasePreferenceController#hasAsyncState()}.
+ *
+ * Their availability and state are computed in parallel on a bounded pool, then applied to the
+ * preferences in one pass on the main thread, in the order the controllers were given so that a
+ * controller can rely on the state applied by the ones before it. This pass runs after the
+ * synchronous controllers were updated.
+ *
+ * A preference is hidden until the state of its controller is applied for the first time, so it
+ * never shows without its state.
+ */
+public class ControllerStateRefresher {
+
+    private static final String TAG = "ControllerStateRefresh";
+
+    private static final int MAX_PARALLEL_CONTROLLERS = 4;
+
+    private static ExecutorService sExecutor;
+
+    private final Executor mExecutor;
+
+    /**
+     * Incremented by each refresh and cancellation, so that only the results of the latest
+     * refresh are applied. Only accessed on the main thread.
+     */
+    private int mGeneration;
+
+    /**
+     * The preferences a state was applied to. Only accessed on the main thread.
+     */
+    private final Set<Preference> mAppliedPreferences = new ArraySet<>();
+
+    public ControllerStateRefresher() {
+        this(getExecutor());
+    }
+
+    @VisibleForTesting
+    ControllerStateRefresher(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Computes the state of {@param controllers} in the background, then applies it to the
+     * preferences of {@param screen}. Must be called on the main thread.
+     */
+    public void refresh(PreferenceScreen screen, List<BasePreferenceController> controllers) {
+        final int generation = ++mGeneration;
+        if (controllers.isEmpty()) {
+            return;
+        }
+
+        final int count = controllers.size();
+        for (int i = 0; i < count; i++) {
+            final Preference preference =
+                    screen.findPreference(controllers.get(i).getPreferenceKey());
+            if (preference != null && !mAppliedPreferences.contains(preference)) {
+                preference.setVisible(false);
+            }
+        }
+
+        final boolean[] available = new boolean[count];
+        final Object[] states = new Object[count];
+        final AtomicInteger remaining = new AtomicInteger(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            final BasePreferenceController controller = controllers.get(index);
+            mExecutor.execute(() -> {
+                try {
+                    available[index] = controller.isAvailable();
+                    if (available[index]) {
+                        states[index] = controller.computeState();
+                    }
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Cannot compute the state of " + controller.getClass().getName(),
+                            e);
+                    available[index] = false;
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    ThreadUtils.postOnMainThread(() ->
+                            apply(generation, screen, controllers, available, states));
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the results of the refresh in progress. Must be called on the main thread.
+     */
+    public void cancel() {
+        mGeneration++;
+    }
+
+    private void apply(int generation, PreferenceScreen screen,
+            List<BasePreferenceController> controllers, boolean[] available, Object[] states) {
+        if (generation != mGeneration) {
+            return;
+        }
+        for (int i = 0; i < controllers.size(); i++) {
+            final BasePreferenceController controller = controllers.get(i);
+            final Preference preference = screen.findPreference(controller.getPreferenceKey());
+            if (preference == null) {
+                Log.d(TAG, String.format("Cannot find preference with key %s in Controller %s",
+                        controller.getPreferenceKey(), controller.getClass().getSimpleName()));
+                continue;
+            }
+            if (!available[i]) {
+                preference.setVisible(false);
+                continue;
+            }
+            if (mAppliedPreferences.add(preference)) {
+                preference.setVisible(true);
+            }
+            controller.applyState(preference, states[i]);
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_CONTROLLERS,
+                    MAX_PARALLEL_CONTROLLERS, 30 /* keepAliveTime */, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+}
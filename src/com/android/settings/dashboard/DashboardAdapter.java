@@ -169,6 +169,28 @@ public class DashboardAdapter extends RecyclerView.Adapter<DashboardAdapter.Dash
         }
     }
 
+    @Override
+    public void notifySummariesChanged(List<Tile> tiles) {
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (Tile tile : tiles) {
+            final int position = mDashboardData.getPositionByTile(tile);
+            if (position != DashboardData.POSITION_NOT_FOUND) {
+                first = Math.min(first, position);
+                last = Math.max(last, position);
+            }
+        }
+        if (last == -1) {
+            return;
+        }
+        if (first == last) {
+            notifyItemChanged(first, mDashboardData.getItemTypeByPosition(first));
+        } else {
+            // One notification for the whole range, so the list is rebound once.
+            notifyItemRangeChanged(first, last - first + 1);
+        }
+    }
+
     @Override
     public DashboardItemHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         final View view = LayoutInflater.from(parent.getContext()).inflate(viewType, parent, false);
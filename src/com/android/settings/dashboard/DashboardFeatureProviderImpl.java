@@ -17,13 +17,11 @@
 package com.android.settings.dashboard;
 
 import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_ICON_URI;
-import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY;
 import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY_URI;
 
 import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Context;
-import android.content.IContentProvider;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.drawable.Icon;
@@ -32,9 +30,7 @@ import android.provider.Settings;
 import android.support.annotation.VisibleForTesting;
 import android.support.v7.preference.Preference;
 import android.text.TextUtils;
-import android.util.ArrayMap;
 import android.util.Log;
-import android.util.Pair;
 
 import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
@@ -46,12 +42,9 @@ import com.android.settingslib.drawer.CategoryManager;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.ProfileSelectDialog;
 import com.android.settingslib.drawer.Tile;
-import com.android.settingslib.drawer.TileUtils;
-import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Impl for {@code DashboardFeatureProvider}.
@@ -70,12 +63,14 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
     private final MetricsFeatureProvider mMetricsFeatureProvider;
     private final CategoryManager mCategoryManager;
     private final PackageManager mPackageManager;
+    private final TileDataFetcher mTileDataFetcher;
 
     public DashboardFeatureProviderImpl(Context context) {
         mContext = context.getApplicationContext();
         mCategoryManager = CategoryManager.get(context, getExtraIntentAction());
         mMetricsFeatureProvider = FeatureFactory.getFactory(context).getMetricsFeatureProvider();
         mPackageManager = context.getPackageManager();
+        mTileDataFetcher = new TileDataFetcher(context);
     }
 
     @Override
@@ -221,17 +216,15 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
             preference.setSummary(tile.summary);
         } else if (tile.metaData != null
                 && tile.metaData.containsKey(META_DATA_PREFERENCE_SUMMARY_URI)) {
-            // Set a placeholder summary before  starting to fetch real summary, this is necessary
-            // to avoid preference height change.
-            preference.setSummary(R.string.summary_placeholder);
-
-            ThreadUtils.postOnBackgroundThread(() -> {
-                final Map<String, IContentProvider> providerMap = new ArrayMap<>();
-                final String uri = tile.metaData.getString(META_DATA_PREFERENCE_SUMMARY_URI);
-                final String summary = TileUtils.getTextFromUri(
-                        mContext, uri, providerMap, META_DATA_PREFERENCE_SUMMARY);
-                ThreadUtils.postOnMainThread(() -> preference.setSummary(summary));
-            });
+            // Set the last known or a placeholder summary before starting to fetch the real
+            // summary, this is necessary to avoid preference height change.
+            final String cachedSummary = mTileDataFetcher.getCachedSummary(tile);
+            if (cachedSummary != null) {
+                preference.setSummary(cachedSummary);
+            } else {
+                preference.setSummary(R.string.summary_placeholder);
+            }
+            mTileDataFetcher.requestSummary(preference, tile);
         } else {
             preference.setSummary(R.string.summary_placeholder);
         }
@@ -243,29 +236,11 @@ public class DashboardFeatureProviderImpl implements DashboardFeatureProvider {
             preference.setIcon(tile.icon.loadDrawable(preference.getContext()));
         } else if (tile.metaData != null
                 && tile.metaData.containsKey(META_DATA_PREFERENCE_ICON_URI)) {
-            ThreadUtils.postOnBackgroundThread(() -> {
-                String packageName = null;
-                if (tile.intent != null) {
-                    Intent intent = tile.intent;
-                    if (!TextUtils.isEmpty(intent.getPackage())) {
-                        packageName = intent.getPackage();
-                    } else if (intent.getComponent() != null) {
-                        packageName = intent.getComponent().getPackageName();
-                    }
-                }
-                final Map<String, IContentProvider> providerMap = new ArrayMap<>();
-                final String uri = tile.metaData.getString(META_DATA_PREFERENCE_ICON_URI);
-                final Pair<String, Integer> iconInfo = TileUtils.getIconFromUri(
-                        mContext, packageName, uri, providerMap);
-                if (iconInfo == null) {
-                    Log.w(TAG, "Failed to get icon from uri " + uri);
-                    return;
-                }
-                final Icon icon = Icon.createWithResource(iconInfo.first, iconInfo.second);
-                ThreadUtils.postOnMainThread(() ->
-                        preference.setIcon(icon.loadDrawable(preference.getContext()))
-                );
-            });
+            final Icon cachedIcon = mTileDataFetcher.getCachedIcon(tile);
+            if (cachedIcon != null) {
+                preference.setIcon(cachedIcon.loadDrawable(preference.getContext()));
+            }
+            mTileDataFetcher.requestIcon(preference, tile);
         }
     }
 
@@ -58,6 +58,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     private final Map<Class, List<AbstractPreferenceController>> mPreferenceControllers =
             new ArrayMap<>();
     private final Set<String> mDashboardTilePrefKeys = new ArraySet<>();
+    private final ControllerStateRefresher mStateRefresher = new ControllerStateRefresher();
 
     private DashboardFeatureProvider mDashboardFeatureProvider;
     private DashboardTilePlaceholderPreferenceController mPlaceholderPreferenceController;
@@ -190,6 +191,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
     @Override
     public void onStop() {
         super.onStop();
+        mStateRefresher.cancel();
         if (mSummaryLoader != null) {
             // SummaryLoader can be null when there is no dynamic tiles.
             mSummaryLoader.setListening(false);
@@ -291,8 +293,15 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         final PreferenceScreen screen = getPreferenceScreen();
         Collection<List<AbstractPreferenceController>> controllerLists =
                 mPreferenceControllers.values();
+        final List<BasePreferenceController> asyncControllers = new ArrayList<>();
         for (List<AbstractPreferenceController> controllerList : controllerLists) {
             for (AbstractPreferenceController controller : controllerList) {
+                if (controller instanceof BasePreferenceController
+                        && ((BasePreferenceController) controller).hasAsyncState()) {
+                    // Availability and state are both computed in the background.
+                    asyncControllers.add((BasePreferenceController) controller);
+                    continue;
+                }
                 if (!controller.isAvailable()) {
                     continue;
                 }
@@ -307,6 +316,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
                 controller.updateState(preference);
             }
         }
+        mStateRefresher.refresh(screen, asyncControllers);
     }
 
     /**
@@ -70,6 +70,7 @@ public class DashboardSummary extends InstrumentedFragment
     private LinearLayoutManager mLayoutManager;
     private SuggestionControllerMixin mSuggestionControllerMixin;
     private DashboardFeatureProvider mDashboardFeatureProvider;
+    private HomepageSnapshot mHomepageSnapshot;
     @VisibleForTesting
     boolean mIsOnCategoriesChangedCalled;
     private boolean mOnConditionsChangedCalled;
@@ -114,6 +115,7 @@ public class DashboardSummary extends InstrumentedFragment
                 .getDashboardFeatureProvider(activity);
 
         mSummaryLoader = new SummaryLoader(activity, CategoryKey.CATEGORY_HOMEPAGE);
+        mHomepageSnapshot = new HomepageSnapshot(activity);
 
         mConditionManager = ConditionManager.get(activity, false);
         getLifecycle().addObserver(mConditionManager);
@@ -164,6 +166,16 @@ public class DashboardSummary extends InstrumentedFragment
         }
     }
 
+    @Override
+    public void onStop() {
+        super.onStop();
+        // Flatten on the main thread, where the summaries of the tiles are updated.
+        final byte[] snapshot = mHomepageSnapshot.marshall(mStagingCategory);
+        if (snapshot != null) {
+            ThreadUtils.postOnBackgroundThread(() -> mHomepageSnapshot.save(snapshot));
+        }
+    }
+
     @Override
     public void onWindowFocusChanged(boolean hasWindowFocus) {
         long startTime = System.currentTimeMillis();
@@ -211,6 +223,7 @@ public class DashboardSummary extends InstrumentedFragment
                 mConditionManager.getConditions(), mSuggestionControllerMixin, getLifecycle());
         mDashboard.setAdapter(mAdapter);
         mSummaryLoader.setSummaryConsumer(mAdapter);
+        restoreSnapshot();
         ActionBarShadowController.attachToRecyclerView(
                 getActivity().findViewById(R.id.search_bar_container), getLifecycle(), mDashboard);
         rebuildUI();
@@ -221,6 +234,22 @@ public class DashboardSummary extends InstrumentedFragment
         return root;
     }
 
+    /**
+     * Shows the homepage as it was last shown until the tiles are loaded, which the adapter then
+     * diffs against it.
+     */
+    @VisibleForTesting
+    void restoreSnapshot() {
+        if (mStagingCategory != null) {
+            return;
+        }
+        final DashboardCategory snapshot = mHomepageSnapshot.restore();
+        if (snapshot != null) {
+            Log.d(TAG, "Showing homepage snapshot until category is loaded");
+            mAdapter.setCategory(snapshot);
+        }
+    }
+
     @VisibleForTesting
     void rebuildUI() {
         ThreadUtils.postOnBackgroundThread(() -> updateCategory());
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Parcel;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import com.android.settingslib.drawer.DashboardCategory;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Persists the last homepage category shown, tiles with their titles, summaries and icons, so
+ * that the homepage can be shown on a cold start before the tiles are queried again.
+ * <p/>
+ * The snapshot is a parcel of the category. Parcels are only readable by the same code, so a
+ * snapshot written by another build of the system or of Settings is ignored.
+ */
+public class HomepageSnapshot {
+
+    private static final String TAG = "HomepageSnapshot";
+
+    @VisibleForTesting
+    static final String FILE_NAME = "homepage_snapshot";
+
+    private static final int VERSION = 1;
+
+    private final AtomicFile mFile;
+    private final String mBuildStamp;
+
+    public HomepageSnapshot(Context context) {
+        mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        // The apk is replaced on each update of Settings, the fingerprint on each system update.
+        final String sourceDir = context.getApplicationInfo().sourceDir;
+        mBuildStamp = Build.FINGERPRINT + "|"
+                + (sourceDir != null ? new File(sourceDir).lastModified() : 0);
+    }
+
+    /**
+     * @return the category last saved by this build, or null if there is none.
+     */
+    public DashboardCategory restore() {
+        final byte[] data;
+        try {
+            data = mFile.readFully();
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read homepage snapshot", e);
+            return null;
+        }
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(data, 0, data.length);
+            parcel.setDataPosition(0);
+            if (parcel.readInt() != VERSION || !mBuildStamp.equals(parcel.readString())) {
+                return null;
+            }
+            return DashboardCategory.CREATOR.createFromParcel(parcel);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to restore homepage snapshot", e);
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Flattens {@param category} for {@link #save(byte[])}. Call on the thread which updates the
+     * category, so that no tile changes while it is written.
+     *
+     * @return the flattened category, or null if it cannot be persisted.
+     */
+    public byte[] marshall(DashboardCategory category) {
+        if (category == null) {
+            return null;
+        }
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeInt(VERSION);
+            parcel.writeString(mBuildStamp);
+            category.writeToParcel(parcel, 0 /* flags */);
+            return parcel.marshall();
+        } catch (RuntimeException e) {
+            // Thrown when a tile holds an object which cannot be persisted, such as a binder.
+            Log.w(TAG, "Failed to flatten homepage snapshot", e);
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Persists a category flattened by {@link #marshall(DashboardCategory)}.
+     */
+    @WorkerThread
+    public void save(byte[] data) {
+        if (data == null) {
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            out.write(data);
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save homepage snapshot", e);
+            mFile.failWrite(out);
+        }
+    }
+}
@@ -20,11 +20,6 @@ import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.IntentFilter;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Looper;
-import android.os.Message;
-import android.os.Process;
 import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.ArrayMap;
@@ -38,7 +33,14 @@ import com.android.settingslib.drawer.Tile;
 import com.android.settingslib.utils.ThreadUtils;
 
 import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class SummaryLoader {
     private static final boolean DEBUG = DashboardSummary.DEBUG;
@@ -46,77 +48,159 @@ public class SummaryLoader {
 
     public static final String SUMMARY_PROVIDER_FACTORY = "SUMMARY_PROVIDER_FACTORY";
 
+    private static final int MAX_WORKER_THREADS = 2;
+
+    /**
+     * Worker threads shared by every loader, so that moving between dashboards does not start
+     * and stop threads.
+     */
+    private static ExecutorService sExecutor;
+
     private final Activity mActivity;
-    private final ArrayMap<SummaryProvider, ComponentName> mSummaryProviderMap = new ArrayMap<>();
+    @VisibleForTesting
+    final ArrayMap<SummaryProvider, ComponentName> mSummaryProviderMap = new ArrayMap<>();
     private final ArrayMap<String, CharSequence> mSummaryTextMap = new ArrayMap<>();
     private final DashboardFeatureProvider mDashboardFeatureProvider;
     private final String mCategoryKey;
 
-    private final Worker mWorker;
-    private final HandlerThread mWorkerThread;
+    /**
+     * Runs the work of this loader in order, on the shared worker threads.
+     */
+    private final SerialExecutor mWorker;
+    /**
+     * Summaries set since the last publish, and the last summary set for each component. Only
+     * accessed while holding {@link #mPendingSummaries}.
+     */
+    private final ArrayMap<ComponentName, CharSequence> mPendingSummaries = new ArrayMap<>();
+    private final ArrayMap<ComponentName, CharSequence> mLastSummaries = new ArrayMap<>();
 
     private SummaryConsumer mSummaryConsumer;
     private boolean mListening;
     private boolean mWorkerListening;
+    private volatile boolean mReleased;
     private ArraySet<BroadcastReceiver> mReceivers = new ArraySet<>();
 
     public SummaryLoader(Activity activity, String categoryKey) {
+        this(activity, categoryKey, getExecutor());
+    }
+
+    @VisibleForTesting
+    SummaryLoader(Activity activity, String categoryKey, Executor executor) {
         mDashboardFeatureProvider = FeatureFactory.getFactory(activity)
                 .getDashboardFeatureProvider(activity);
         mCategoryKey = categoryKey;
-        mWorkerThread = new HandlerThread("SummaryLoader", Process.THREAD_PRIORITY_BACKGROUND);
-        mWorkerThread.start();
-        mWorker = new Worker(mWorkerThread.getLooper());
+        mWorker = new SerialExecutor(executor);
         mActivity = activity;
     }
 
     public void release() {
-        mWorkerThread.quitSafely();
+        mReleased = true;
         // Make sure we aren't listening.
         setListeningW(false);
+        synchronized (mPendingSummaries) {
+            mPendingSummaries.clear();
+        }
     }
 
     public void setSummaryConsumer(SummaryConsumer summaryConsumer) {
         mSummaryConsumer = summaryConsumer;
     }
 
+    /**
+     * Sets the summary of the tile of {@param provider}. Can be called from any thread.
+     * <p/>
+     * Summaries set before the main thread gets to them are published together, and a summary
+     * identical to the last one set for the same tile is dropped.
+     */
     public void setSummary(SummaryProvider provider, final CharSequence summary) {
         final ComponentName component = mSummaryProviderMap.get(provider);
-        ThreadUtils.postOnMainThread(() -> {
+        if (component == null) {
+            if (DEBUG) {
+                Log.d(TAG, "Can't find component for " + provider);
+            }
+            return;
+        }
+        final boolean schedule;
+        synchronized (mPendingSummaries) {
+            if (mLastSummaries.containsKey(component)
+                    && TextUtils.equals(mLastSummaries.get(component), summary)) {
+                return;
+            }
+            mLastSummaries.put(component, summary);
+            schedule = mPendingSummaries.isEmpty();
+            mPendingSummaries.put(component, summary);
+        }
+        if (schedule) {
+            ThreadUtils.postOnMainThread(this::publishPendingSummaries);
+        }
+    }
 
-            final Tile tile = getTileFromCategory(
-                    mDashboardFeatureProvider.getTilesForCategory(mCategoryKey), component);
+    private void publishPendingSummaries() {
+        final ArrayMap<ComponentName, CharSequence> summaries;
+        synchronized (mPendingSummaries) {
+            summaries = new ArrayMap<>(mPendingSummaries);
+            mPendingSummaries.clear();
+        }
+        if (mReleased || summaries.isEmpty()) {
+            return;
+        }
 
+        final DashboardCategory category =
+                mDashboardFeatureProvider.getTilesForCategory(mCategoryKey);
+        final List<Tile> changedTiles = new ArrayList<>();
+        for (int i = 0; i < summaries.size(); i++) {
+            final ComponentName component = summaries.keyAt(i);
+            final Tile tile = getTileFromCategory(category, component);
             if (tile == null) {
                 if (DEBUG) {
                     Log.d(TAG, "Can't find tile for " + component);
                 }
-                return;
+                continue;
             }
             if (DEBUG) {
-                Log.d(TAG, "setSummary " + tile.title + " - " + summary);
+                Log.d(TAG, "setSummary " + tile.title + " - " + summaries.valueAt(i));
             }
-
-            updateSummaryIfNeeded(tile, summary);
-        });
+            if (updateSummaryCacheIfNeeded(tile, summaries.valueAt(i))) {
+                changedTiles.add(tile);
+            }
+        }
+        notifySummariesChanged(changedTiles);
     }
 
     @VisibleForTesting
     void updateSummaryIfNeeded(Tile tile, CharSequence summary) {
+        if (updateSummaryCacheIfNeeded(tile, summary)) {
+            final List<Tile> changedTiles = new ArrayList<>();
+            changedTiles.add(tile);
+            notifySummariesChanged(changedTiles);
+        }
+    }
+
+    /**
+     * @return {@code true} if the summary of {@param tile} changed to {@param summary}.
+     */
+    private boolean updateSummaryCacheIfNeeded(Tile tile, CharSequence summary) {
         if (TextUtils.equals(tile.summary, summary)) {
             if (DEBUG) {
                 Log.d(TAG, "Summary doesn't change, skipping summary update for " + tile.title);
             }
-            return;
+            return false;
         }
         mSummaryTextMap.put(mDashboardFeatureProvider.getDashboardKeyForTile(tile), summary);
         tile.summary = summary;
+        return true;
+    }
+
+    private void notifySummariesChanged(List<Tile> tiles) {
+        if (tiles.isEmpty()) {
+            return;
+        }
         if (mSummaryConsumer != null) {
-            mSummaryConsumer.notifySummaryChanged(tile);
+            mSummaryConsumer.notifySummariesChanged(tiles);
         } else {
             if (DEBUG) {
                 Log.d(TAG, "SummaryConsumer is null, skipping summary update for "
-                        + tile.title);
+                        + tiles.size() + " tiles");
             }
         }
     }
@@ -135,22 +219,21 @@ public class SummaryLoader {
         }
         mReceivers.clear();
 
-        mWorker.removeMessages(Worker.MSG_SET_LISTENING);
         if (!listening) {
-            // Stop listen
-            mWorker.obtainMessage(Worker.MSG_SET_LISTENING, 0 /* listening */).sendToTarget();
-        } else {
-            // Start listen
-            if (mSummaryProviderMap.isEmpty()) {
+            // Publish the summaries again when listening restarts, even if they are unchanged.
+            synchronized (mPendingSummaries) {
+                mLastSummaries.clear();
+            }
+        }
+        mWorker.execute(() -> {
+            if (listening && mSummaryProviderMap.isEmpty()) {
                 // Category not initialized yet, init before starting to listen
-                if (!mWorker.hasMessages(Worker.MSG_GET_CATEGORY_TILES_AND_SET_LISTENING)) {
-                    mWorker.sendEmptyMessage(Worker.MSG_GET_CATEGORY_TILES_AND_SET_LISTENING);
+                if (!makeProvidersW()) {
+                    return;
                 }
-            } else {
-                // Category already initialized, start listening immediately
-                mWorker.obtainMessage(Worker.MSG_SET_LISTENING, 1 /* listening */).sendToTarget();
             }
-        }
+            setListeningW(listening);
+        });
     }
 
     private SummaryProvider getSummaryProvider(Tile tile) {
@@ -196,16 +279,19 @@ public class SummaryLoader {
      * operations are asynchronous.
      */
     public void registerReceiver(final BroadcastReceiver receiver, final IntentFilter filter) {
-        mActivity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-                if (!mListening) {
-                    return;
-                }
-                mReceivers.add(receiver);
-                mActivity.registerReceiver(receiver, filter);
-            }
-        });
+        if (ThreadUtils.isMainThread()) {
+            registerReceiverIfListening(receiver, filter);
+        } else {
+            ThreadUtils.postOnMainThread(() -> registerReceiverIfListening(receiver, filter));
+        }
+    }
+
+    private void registerReceiverIfListening(BroadcastReceiver receiver, IntentFilter filter) {
+        if (!mListening) {
+            return;
+        }
+        mReceivers.add(receiver);
+        mActivity.registerReceiver(receiver, filter);
     }
 
     /**
@@ -225,7 +311,7 @@ public class SummaryLoader {
     }
 
     private synchronized void setListeningW(boolean listening) {
-        if (mWorkerListening == listening) {
+        if (mWorkerListening == listening || (listening && mReleased)) {
             return;
         }
         mWorkerListening = listening;
@@ -241,6 +327,21 @@ public class SummaryLoader {
         }
     }
 
+    /**
+     * @return {@code false} if the category has no tile yet.
+     */
+    private synchronized boolean makeProvidersW() {
+        final DashboardCategory category =
+                mDashboardFeatureProvider.getTilesForCategory(mCategoryKey);
+        if (category == null || category.getTilesCount() == 0) {
+            return false;
+        }
+        for (Tile tile : category.getTiles()) {
+            makeProviderW(tile);
+        }
+        return true;
+    }
+
     private synchronized void makeProviderW(Tile tile) {
         SummaryProvider provider = getSummaryProvider(tile);
         if (provider != null) {
@@ -271,45 +372,63 @@ public class SummaryLoader {
 
     public interface SummaryConsumer {
         void notifySummaryChanged(Tile tile);
+
+        /**
+         * Called once for all the tiles whose summaries changed together.
+         */
+        default void notifySummariesChanged(List<Tile> tiles) {
+            for (Tile tile : tiles) {
+                notifySummaryChanged(tile);
+            }
+        }
     }
 
     public interface SummaryProviderFactory {
         SummaryProvider createSummaryProvider(Activity activity, SummaryLoader summaryLoader);
     }
 
-    private class Worker extends Handler {
-        private static final int MSG_GET_CATEGORY_TILES_AND_SET_LISTENING = 1;
-        private static final int MSG_GET_PROVIDER = 2;
-        private static final int MSG_SET_LISTENING = 3;
+    /**
+     * Runs tasks one at a time and in order, on an executor which may run them on any thread.
+     */
+    private static class SerialExecutor implements Executor {
+        private final Executor mExecutor;
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private Runnable mActive;
 
-        public Worker(Looper looper) {
-            super(looper);
+        SerialExecutor(Executor executor) {
+            mExecutor = executor;
         }
 
         @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-                case MSG_GET_CATEGORY_TILES_AND_SET_LISTENING:
-                    final DashboardCategory category =
-                            mDashboardFeatureProvider.getTilesForCategory(mCategoryKey);
-                    if (category == null || category.getTilesCount() == 0) {
-                        return;
-                    }
-                    final List<Tile> tiles = category.getTiles();
-                    for (Tile tile : tiles) {
-                        makeProviderW(tile);
-                    }
-                    setListeningW(true);
-                    break;
-                case MSG_GET_PROVIDER:
-                    Tile tile = (Tile) msg.obj;
-                    makeProviderW(tile);
-                    break;
-                case MSG_SET_LISTENING:
-                    boolean listening = msg.obj != null && msg.obj.equals(1);
-                    setListeningW(listening);
-                    break;
+        public synchronized void execute(Runnable task) {
+            mTasks.offer(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (mActive == null) {
+                scheduleNext();
             }
         }
+
+        private synchronized void scheduleNext() {
+            mActive = mTasks.poll();
+            if (mActive != null) {
+                mExecutor.execute(mActive);
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_WORKER_THREADS,
+                    MAX_WORKER_THREADS, 30 /* keepAliveTime */, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
     }
 }
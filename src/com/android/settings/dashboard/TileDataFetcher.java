@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_ICON_URI;
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY;
+import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_SUMMARY_URI;
+
+import android.content.Context;
+import android.content.IContentProvider;
+import android.content.Intent;
+import android.graphics.drawable.Icon;
+import android.net.Uri;
+import android.support.annotation.VisibleForTesting;
+import android.support.v7.preference.Preference;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.Pair;
+
+import com.android.settingslib.drawer.Tile;
+import com.android.settingslib.drawer.TileUtils;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fetches the summaries and icons that dashboard tiles provide through content uris.
+ *
+ * Requests made while binding a page are batched: they are fetched together in one background
+ * pass which acquires each content provider once, and the results are applied to their
+ * preferences in one main thread update. The last fetched values are cached, so a page which is
+ * shown again starts with them instead of placeholders.
+ */
+public class TileDataFetcher {
+
+    private static final String TAG = "TileDataFetcher";
+
+    @VisibleForTesting
+    static final int CACHE_SIZE = 64;
+
+    private final Context mContext;
+    /**
+     * Summaries (as String) and icons (as Icon) keyed by tile component and uri.
+     */
+    private final LruCache<String, Object> mCache = new LruCache<>(CACHE_SIZE);
+    private final Object mLock = new Object();
+
+    /**
+     * Requests to fetch in the next pass, keyed by preference so that only the last binding of
+     * a preference is fetched.
+     */
+    private final Map<Preference, Request> mPendingSummaries = new LinkedHashMap<>();
+    private final Map<Preference, Request> mPendingIcons = new LinkedHashMap<>();
+
+    public TileDataFetcher(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @return the summary last fetched for {@param tile}, or null if there is none.
+     */
+    public String getCachedSummary(Tile tile) {
+        final Object summary =
+                mCache.get(getCacheKey(tile, getSummaryUri(tile), false /* isIcon */));
+        return summary instanceof String ? (String) summary : null;
+    }
+
+    /**
+     * @return the icon last fetched for {@param tile}, or null if there is none.
+     */
+    public Icon getCachedIcon(Tile tile) {
+        final Object icon = mCache.get(getCacheKey(tile, getIconUri(tile), true /* isIcon */));
+        return icon instanceof Icon ? (Icon) icon : null;
+    }
+
+    /**
+     * Fetches the summary of {@param tile} from its summary uri and sets it on
+     * {@param preference}.
+     */
+    public void requestSummary(Preference preference, Tile tile) {
+        enqueue(new Request(preference, tile, getSummaryUri(tile), false /* isIcon */));
+    }
+
+    /**
+     * Fetches the icon of {@param tile} from its icon uri and sets it on {@param preference}.
+     */
+    public void requestIcon(Preference preference, Tile tile) {
+        enqueue(new Request(preference, tile, getIconUri(tile), true /* isIcon */));
+    }
+
+    private void enqueue(Request request) {
+        if (TextUtils.isEmpty(request.uri)) {
+            request.apply();
+            return;
+        }
+        final boolean schedule;
+        synchronized (mLock) {
+            schedule = mPendingSummaries.isEmpty() && mPendingIcons.isEmpty();
+            final Map<Preference, Request> pendingRequests =
+                    request.isIcon ? mPendingIcons : mPendingSummaries;
+            // Re-insert so the request moves to the end, in binding order.
+            pendingRequests.remove(request.preference);
+            pendingRequests.put(request.preference, request);
+        }
+        if (schedule) {
+            // Posting lets every tile bound in the current main thread message join this pass.
+            ThreadUtils.postOnMainThread(this::fetchPendingRequests);
+        }
+    }
+
+    private void fetchPendingRequests() {
+        final List<Request> requests;
+        synchronized (mLock) {
+            requests = new ArrayList<>(mPendingSummaries.values());
+            requests.addAll(mPendingIcons.values());
+            mPendingSummaries.clear();
+            mPendingIcons.clear();
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            fetch(requests);
+            ThreadUtils.postOnMainThread(() -> {
+                for (Request request : requests) {
+                    request.apply();
+                }
+            });
+        });
+    }
+
+    /**
+     * Resolves every request, grouped by authority so that all uris of a provider are queried
+     * back to back through the same provider connection.
+     */
+    @VisibleForTesting
+    void fetch(List<Request> requests) {
+        final Map<String, List<Request>> requestsByAuthority = new ArrayMap<>();
+        for (Request request : requests) {
+            final String authority = Uri.parse(request.uri).getAuthority();
+            List<Request> authorityRequests = requestsByAuthority.get(authority);
+            if (authorityRequests == null) {
+                authorityRequests = new ArrayList<>();
+                requestsByAuthority.put(authority, authorityRequests);
+            }
+            authorityRequests.add(request);
+        }
+
+        final Map<String, IContentProvider> providerMap = new ArrayMap<>();
+        final Map<String, Object> fetched = new ArrayMap<>();
+        for (List<Request> authorityRequests : requestsByAuthority.values()) {
+            for (Request request : authorityRequests) {
+                final String cacheKey = getCacheKey(request.tile, request.uri,
+                        request.isIcon);
+                if (fetched.containsKey(cacheKey)) {
+                    request.result = fetched.get(cacheKey);
+                    continue;
+                }
+                request.result = request.isIcon
+                        ? fetchIcon(request.tile, request.uri, providerMap)
+                        : TileUtils.getTextFromUri(mContext, request.uri, providerMap,
+                                META_DATA_PREFERENCE_SUMMARY);
+                fetched.put(cacheKey, request.result);
+                if (request.result != null) {
+                    mCache.put(cacheKey, request.result);
+                } else {
+                    mCache.remove(cacheKey);
+                }
+            }
+        }
+    }
+
+    private Icon fetchIcon(Tile tile, String uri, Map<String, IContentProvider> providerMap) {
+        String packageName = null;
+        if (tile.intent != null) {
+            final Intent intent = tile.intent;
+            if (!TextUtils.isEmpty(intent.getPackage())) {
+                packageName = intent.getPackage();
+            } else if (intent.getComponent() != null) {
+                packageName = intent.getComponent().getPackageName();
+            }
+        }
+        final Pair<String, Integer> iconInfo =
+                TileUtils.getIconFromUri(mContext, packageName, uri, providerMap);
+        if (iconInfo == null) {
+            Log.w(TAG, "Failed to get icon from uri " + uri);
+            return null;
+        }
+        return Icon.createWithResource(iconInfo.first, iconInfo.second);
+    }
+
+    private static String getSummaryUri(Tile tile) {
+        return tile.metaData != null
+                ? tile.metaData.getString(META_DATA_PREFERENCE_SUMMARY_URI) : null;
+    }
+
+    private static String getIconUri(Tile tile) {
+        return tile.metaData != null
+                ? tile.metaData.getString(META_DATA_PREFERENCE_ICON_URI) : null;
+    }
+
+    private static String getCacheKey(Tile tile, String uri, boolean isIcon) {
+        final String component = tile.intent != null && tile.intent.getComponent() != null
+                ? tile.intent.getComponent().flattenToShortString()
+                : null;
+        return (isIcon ? "icon|" : "summary|") + component + "|" + uri;
+    }
+
+    @VisibleForTesting
+    static class Request {
+        final Preference preference;
+        final Tile tile;
+        final String uri;
+        final boolean isIcon;
+        Object result;
+
+        Request(Preference preference, Tile tile, String uri, boolean isIcon) {
+            this.preference = preference;
+            this.tile = tile;
+            this.uri = uri;
+            this.isIcon = isIcon;
+        }
+
+        void apply() {
+            if (!isIcon) {
+                preference.setSummary((String) result);
+            } else if (result != null) {
+                preference.setIcon(((Icon) result).loadDrawable(preference.getContext()));
+            }
+        }
+    }
+}
@@ -16,7 +16,6 @@
 
 package com.android.settings.dashboard.conditional;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -27,20 +26,20 @@ import com.android.settings.R;
 
 public abstract class AbnormalRingerConditionBase extends Condition {
 
-    private final IntentFilter mFilter;
+    private static final IntentFilter RINGER_MODE_FILTER =
+            new IntentFilter(AudioManager.INTERNAL_RINGER_MODE_CHANGED_ACTION);
 
     protected final AudioManager mAudioManager;
 
-    private final RingerModeChangeReceiver mReceiver;
-
     AbnormalRingerConditionBase(ConditionManager manager) {
         super(manager);
         mAudioManager =
                 (AudioManager) mManager.getContext().getSystemService(Context.AUDIO_SERVICE);
-        mReceiver = new RingerModeChangeReceiver(this);
+    }
 
-        mFilter = new IntentFilter(AudioManager.INTERNAL_RINGER_MODE_CHANGED_ACTION);
-        manager.getContext().registerReceiver(mReceiver, mFilter);
+    @Override
+    protected IntentFilter getTriggerFilter() {
+        return RINGER_MODE_FILTER;
     }
 
     @Override
@@ -63,21 +62,4 @@ public abstract class AbnormalRingerConditionBase extends Condition {
         mAudioManager.setStreamVolume(AudioManager.STREAM_RING, 1, 0 /* flags */);
         refreshState();
     }
-
-    static class RingerModeChangeReceiver extends BroadcastReceiver {
-
-        private final AbnormalRingerConditionBase mCondition;
-
-        public RingerModeChangeReceiver(AbnormalRingerConditionBase condition) {
-            mCondition = condition;
-        }
-
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            final String action = intent.getAction();
-            if (AudioManager.INTERNAL_RINGER_MODE_CHANGED_ACTION.equals(action)) {
-                mCondition.refreshState();
-            }
-        }
-    }
 }
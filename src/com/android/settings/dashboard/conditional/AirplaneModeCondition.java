@@ -21,6 +21,7 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
 import android.net.ConnectivityManager;
+import android.net.Uri;
 import android.provider.Settings;
 import android.util.Log;
 
@@ -35,6 +36,8 @@ public class AirplaneModeCondition extends Condition {
 
     private static final IntentFilter AIRPLANE_MODE_FILTER =
             new IntentFilter(Intent.ACTION_AIRPLANE_MODE_CHANGED);
+    private static final Uri[] AIRPLANE_MODE_URIS =
+            {Settings.Global.getUriFor(Settings.Global.AIRPLANE_MODE_ON)};
 
     public AirplaneModeCondition(ConditionManager conditionManager) {
         super(conditionManager);
@@ -47,6 +50,11 @@ public class AirplaneModeCondition extends Condition {
         setActive(WirelessUtils.isAirplaneModeOn(mManager.getContext()));
     }
 
+    @Override
+    protected Uri[] getTriggerUris() {
+        return AIRPLANE_MODE_URIS;
+    }
+
     @Override
     protected BroadcastReceiver getReceiver() {
         return mReceiver;
@@ -16,6 +16,7 @@
 package com.android.settings.dashboard.conditional;
 
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
 import android.os.PowerManager;
 
@@ -23,20 +24,16 @@ import com.android.internal.logging.nano.MetricsProto.MetricsEvent;
 import com.android.settings.R;
 import com.android.settings.core.SubSettingLauncher;
 import com.android.settings.fuelgauge.BatterySaverDrawable;
-import com.android.settings.fuelgauge.BatterySaverReceiver;
 import com.android.settings.fuelgauge.batterysaver.BatterySaverSettings;
 import com.android.settingslib.fuelgauge.BatterySaverUtils;
 
-public class BatterySaverCondition extends Condition implements
-        BatterySaverReceiver.BatterySaverListener {
+public class BatterySaverCondition extends Condition {
 
-    private final BatterySaverReceiver mReceiver;
+    private static final IntentFilter POWER_SAVE_MODE_FILTER =
+            new IntentFilter(PowerManager.ACTION_POWER_SAVE_MODE_CHANGING);
 
     public BatterySaverCondition(ConditionManager manager) {
         super(manager);
-
-        mReceiver = new BatterySaverReceiver(manager.getContext());
-        mReceiver.setBatterySaverListener(this);
     }
 
     @Override
@@ -45,6 +42,11 @@ public class BatterySaverCondition extends Condition implements
         setActive(powerManager.isPowerSaveMode());
     }
 
+    @Override
+    protected IntentFilter getTriggerFilter() {
+        return POWER_SAVE_MODE_FILTER;
+    }
+
     @Override
     public Drawable getIcon() {
         return mManager.getContext().getDrawable(R.drawable.ic_battery_saver_accent_24dp);
@@ -90,25 +92,4 @@ public class BatterySaverCondition extends Condition implements
     public int getMetricsConstant() {
         return MetricsEvent.SETTINGS_CONDITION_BATTERY_SAVER;
     }
-
-    @Override
-    public void onResume() {
-        mReceiver.setListening(true);
-    }
-
-    @Override
-    public void onPause() {
-        mReceiver.setListening(false);
-    }
-
-    @Override
-    public void onPowerSaveModeChanged() {
-        ConditionManager.get(mManager.getContext()).getCondition(BatterySaverCondition.class)
-                        .refreshState();
-    }
-
-    @Override
-    public void onBatteryChanged(boolean pluggedIn) {
-        // do nothing
-    }
 }
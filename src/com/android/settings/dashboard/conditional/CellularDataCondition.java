@@ -29,6 +29,12 @@ public class CellularDataCondition extends Condition {
 
     private static final IntentFilter DATA_CONNECTION_FILTER =
         new IntentFilter(TelephonyIntents.ACTION_ANY_DATA_CONNECTION_STATE_CHANGED);
+    private static final IntentFilter TRIGGER_FILTER = new IntentFilter();
+
+    static {
+        TRIGGER_FILTER.addAction(TelephonyIntents.ACTION_ANY_DATA_CONNECTION_STATE_CHANGED);
+        TRIGGER_FILTER.addAction(TelephonyIntents.ACTION_SIM_STATE_CHANGED);
+    }
 
     public CellularDataCondition(ConditionManager manager) {
         super(manager);
@@ -48,6 +54,11 @@ public class CellularDataCondition extends Condition {
         setActive(!telephony.isDataEnabled());
     }
 
+    @Override
+    protected IntentFilter getTriggerFilter() {
+        return TRIGGER_FILTER;
+    }
+
     @Override
     protected BroadcastReceiver getReceiver() {
         return mReceiver;
@@ -20,6 +20,7 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
 import android.os.PersistableBundle;
 import android.support.annotation.VisibleForTesting;
 
@@ -131,6 +132,39 @@ public abstract class Condition {
         return null;
     }
 
+    /**
+     * @return the broadcasts which may change the state of this condition, or null. While the
+     * {@link ConditionManager} is resumed, it refreshes the condition when one is received.
+     */
+    protected IntentFilter getTriggerFilter() {
+        return null;
+    }
+
+    /**
+     * @return the uris of the settings which may change the state of this condition, or null.
+     * While the {@link ConditionManager} is resumed, it refreshes the condition when one of them
+     * changes.
+     */
+    protected Uri[] getTriggerUris() {
+        return null;
+    }
+
+    /**
+     * @return {@code true} if the condition registers its own callback, and refreshes itself
+     * when its state changes.
+     */
+    protected boolean hasCallbackTrigger() {
+        return false;
+    }
+
+    /**
+     * @return {@code true} if the condition is refreshed when its state changes, so that
+     * {@link ConditionManager#refreshAll()} does not need to poll it.
+     */
+    final boolean hasTriggers() {
+        return getTriggerFilter() != null || getTriggerUris() != null || hasCallbackTrigger();
+    }
+
     public boolean shouldShow() {
         return isActive() && !isSilenced();
     }
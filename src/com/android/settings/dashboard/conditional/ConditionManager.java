@@ -18,22 +18,23 @@ package com.android.settings.dashboard.conditional;
 import android.content.Context;
 import android.os.AsyncTask;
 import android.os.PersistableBundle;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.util.Xml;
 
 import com.android.settingslib.core.lifecycle.LifecycleObserver;
 import com.android.settingslib.core.lifecycle.events.OnPause;
 import com.android.settingslib.core.lifecycle.events.OnResume;
+import com.android.settingslib.utils.ThreadUtils;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlSerializer;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -46,22 +47,61 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
 
     private static final String PKG = "com.android.settings.dashboard.conditional.";
 
-    private static final String FILE_NAME = "condition_state.xml";
-    private static final String TAG_CONDITIONS = "cs";
+    /**
+     * State file of older versions, migrated to {@link ConditionStateStore} on first load.
+     */
+    private static final String LEGACY_FILE_NAME = "condition_state.xml";
     private static final String TAG_CONDITION = "c";
     private static final String ATTR_CLASS = "cls";
 
+    /**
+     * Every condition, in the order they are added when missing.
+     */
+    private static final List<Class<? extends Condition>> CONDITION_CLASSES = Arrays.asList(
+            AirplaneModeCondition.class,
+            HotspotCondition.class,
+            DndCondition.class,
+            BatterySaverCondition.class,
+            CellularDataCondition.class,
+            BackgroundDataCondition.class,
+            WorkModeCondition.class,
+            NightDisplayCondition.class,
+            RingerMutedCondition.class,
+            RingerVibrateCondition.class);
+
     private static ConditionManager sInstance;
 
     private final Context mContext;
     private final ArrayList<Condition> mConditions;
-    private File mXmlFile;
+    private final ConditionStateStore mStore;
+    /**
+     * Whether every condition has been created. Only the conditions with a saved state are
+     * created on load, the others on the first {@link #refreshAll()}.
+     */
+    private boolean mAllConditionsCreated;
+    private final ConditionTriggerMonitor mTriggerMonitor;
+    private boolean mResumed;
+    /**
+     * Whether a trigger may have fired while they were not listened to, so that every condition
+     * must be refreshed by the next {@link #refreshAll()}.
+     */
+    private boolean mTriggersMissed = true;
+    /**
+     * Whether the saved states have been restored. Until then nothing is saved, so that the
+     * conditions created by {@link #getCondition(Class)} while loading do not overwrite them.
+     */
+    private boolean mStatesLoaded;
+    private boolean mSaveSkipped;
+    private boolean mSaveScheduled;
+    private int mSaveGeneration;
 
     private final ArrayList<ConditionListener> mListeners = new ArrayList<>();
 
     private ConditionManager(Context context, boolean loadConditionsNow) {
         mContext = context;
         mConditions = new ArrayList<>();
+        mStore = new ConditionStateStore(context.getFilesDir());
+        mTriggerMonitor = new ConditionTriggerMonitor(context);
         if (loadConditionsNow) {
             Log.d(TAG, "conditions loading synchronously");
             ConditionLoader loader = new ConditionLoader();
@@ -72,15 +112,63 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
         }
     }
 
+    /**
+     * Refreshes the conditions which may have changed since they were last refreshed.
+     * <p/>
+     * While resumed, the conditions with triggers are refreshed when those fire, so only the
+     * first call after resuming refreshes them. The conditions without triggers are always
+     * refreshed.
+     */
     public void refreshAll() {
-        final int N = mConditions.size();
+        if (!mAllConditionsCreated) {
+            addMissingConditions(mConditions);
+            mAllConditionsCreated = true;
+        }
+        if (mResumed) {
+            mTriggerMonitor.startListening(mConditions);
+        }
+        final boolean refreshTriggered = mTriggersMissed;
+        mTriggersMissed = !mTriggerMonitor.isListening();
+        // Copied, as a condition changing state re-sorts the list.
+        final List<Condition> conditions = new ArrayList<>(mConditions);
+        final int N = conditions.size();
         for (int i = 0; i < N; i++) {
-            mConditions.get(i).refreshState();
+            final Condition condition = conditions.get(i);
+            if (refreshTriggered || !condition.hasTriggers()) {
+                condition.refreshState();
+            }
+        }
+    }
+
+    /**
+     * Creates the conditions with a saved state, that is the active or silenced ones.
+     */
+    private ArrayList<Condition> loadConditions() {
+        final ArrayList<Condition> conditions = new ArrayList<>();
+        final File legacyFile = new File(mContext.getFilesDir(), LEGACY_FILE_NAME);
+        final boolean migrate = !mStore.exists() && legacyFile.exists();
+        final ArrayMap<String, PersistableBundle> states =
+                migrate ? readFromXml(legacyFile) : mStore.read();
+        for (int i = 0; i < states.size(); i++) {
+            final Condition condition = createCondition(getConditionClass(states.keyAt(i)));
+            if (condition != null) {
+                condition.restoreState(states.valueAt(i));
+                conditions.add(condition);
+            } else {
+                Log.e(TAG, "failed to add condition: " + states.keyAt(i));
+            }
+        }
+        if (migrate) {
+            mStore.write(states, ++mSaveGeneration);
+            legacyFile.delete();
         }
+        Collections.sort(conditions, CONDITION_COMPARATOR);
+        return conditions;
     }
 
-    private void readFromXml(File xmlFile, ArrayList<Condition> conditions) {
+    private ArrayMap<String, PersistableBundle> readFromXml(File xmlFile) {
         if (DEBUG) Log.d(TAG, "Reading from " + xmlFile.toString());
+        final ArrayMap<String, PersistableBundle> states = new ArrayMap<>();
         try {
             XmlPullParser parser = Xml.newPullParser();
             FileReader in = new FileReader(xmlFile);
@@ -91,18 +179,12 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
                 if (TAG_CONDITION.equals(parser.getName())) {
                     int depth = parser.getDepth();
                     String clz = parser.getAttributeValue("", ATTR_CLASS);
-                    if (!clz.startsWith(PKG)) {
-                        clz = PKG + clz;
+                    if (clz.startsWith(PKG)) {
+                        clz = clz.substring(PKG.length());
                     }
-                    Condition condition = createCondition(Class.forName(clz));
                     PersistableBundle bundle = PersistableBundle.restoreFromXml(parser);
                     if (DEBUG) Log.d(TAG, "Reading " + clz + " -- " + bundle);
-                    if (condition != null) {
-                        condition.restoreState(bundle);
-                        conditions.add(condition);
-                    } else {
-                        Log.e(TAG, "failed to add condition: " + clz);
-                    }
+                    states.put(clz, bundle);
                     while (parser.getDepth() > depth) {
                         parser.next();
                     }
@@ -110,52 +192,44 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
                 state = parser.next();
             }
             in.close();
-        } catch (XmlPullParserException | IOException | ClassNotFoundException e) {
-            Log.w(TAG, "Problem reading " + FILE_NAME, e);
+        } catch (XmlPullParserException | IOException e) {
+            Log.w(TAG, "Problem reading " + LEGACY_FILE_NAME, e);
         }
+        return states;
     }
 
-    private void saveToXml() {
-        if (DEBUG) Log.d(TAG, "Writing to " + mXmlFile.toString());
-        try {
-            XmlSerializer serializer = Xml.newSerializer();
-            FileWriter writer = new FileWriter(mXmlFile);
-            serializer.setOutput(writer);
-
-            serializer.startDocument("UTF-8", true);
-            serializer.startTag("", TAG_CONDITIONS);
-
+    /**
+     * Saves the state of the conditions once the current main thread message is handled, so that
+     * the changes it makes are written together.
+     */
+    private void scheduleSave() {
+        if (!mStatesLoaded) {
+            mSaveSkipped = true;
+            return;
+        }
+        if (mSaveScheduled) {
+            return;
+        }
+        mSaveScheduled = true;
+        ThreadUtils.postOnMainThread(() -> {
+            mSaveScheduled = false;
+            final ArrayMap<String, PersistableBundle> states = new ArrayMap<>();
             final int N = mConditions.size();
             for (int i = 0; i < N; i++) {
                 PersistableBundle bundle = new PersistableBundle();
                 if (mConditions.get(i).saveState(bundle)) {
-                    serializer.startTag("", TAG_CONDITION);
-                    final String clz = mConditions.get(i).getClass().getSimpleName();
-                    serializer.attribute("", ATTR_CLASS, clz);
-                    bundle.saveToXml(serializer);
-                    serializer.endTag("", TAG_CONDITION);
+                    states.put(mConditions.get(i).getClass().getSimpleName(), bundle);
                 }
             }
-
-            serializer.endTag("", TAG_CONDITIONS);
-            serializer.flush();
-            writer.close();
-        } catch (XmlPullParserException | IOException e) {
-            Log.w(TAG, "Problem writing " + FILE_NAME, e);
-        }
+            final int generation = ++mSaveGeneration;
+            ThreadUtils.postOnBackgroundThread(() -> mStore.write(states, generation));
+        });
     }
 
     private void addMissingConditions(ArrayList<Condition> conditions) {
-        addIfMissing(AirplaneModeCondition.class, conditions);
-        addIfMissing(HotspotCondition.class, conditions);
-        addIfMissing(DndCondition.class, conditions);
-        addIfMissing(BatterySaverCondition.class, conditions);
-        addIfMissing(CellularDataCondition.class, conditions);
-        addIfMissing(BackgroundDataCondition.class, conditions);
-        addIfMissing(WorkModeCondition.class, conditions);
-        addIfMissing(NightDisplayCondition.class, conditions);
-        addIfMissing(RingerMutedCondition.class, conditions);
-        addIfMissing(RingerVibrateCondition.class, conditions);
+        for (Class<? extends Condition> clz : CONDITION_CLASSES) {
+            addIfMissing(clz, conditions);
+        }
         Collections.sort(conditions, CONDITION_COMPARATOR);
     }
 
@@ -170,6 +244,9 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
     }
 
     private Condition createCondition(Class<?> clz) {
+        if (clz == null) {
+            return null;
+        }
         if (AirplaneModeCondition.class == clz) {
             return new AirplaneModeCondition(this);
         } else if (HotspotCondition.class == clz) {
@@ -195,19 +272,38 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
         return null;
     }
 
+    private static Class<? extends Condition> getConditionClass(String simpleName) {
+        for (Class<? extends Condition> clz : CONDITION_CLASSES) {
+            if (clz.getSimpleName().equals(simpleName)) {
+                return clz;
+            }
+        }
+        return null;
+    }
+
     Context getContext() {
         return mContext;
     }
 
+    /**
+     * @return the condition of class {@param clz}, created if it was not yet.
+     */
     public <T extends Condition> T getCondition(Class<T> clz) {
-        return getCondition(clz, mConditions);
+        T condition = getCondition(clz, mConditions);
+        if (condition == null && !mAllConditionsCreated) {
+            condition = clz.cast(createCondition(clz));
+            if (condition != null) {
+                mConditions.add(condition);
+            }
+        }
+        return condition;
     }
 
     private <T extends Condition> T getCondition(Class<T> clz, List<Condition> conditions) {
         final int N = conditions.size();
         for (int i = 0; i < N; i++) {
             if (clz.equals(conditions.get(i).getClass())) {
-                return (T) conditions.get(i);
+                return clz.cast(conditions.get(i));
             }
         }
         return null;
@@ -229,7 +325,7 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
     }
 
     public void notifyChanged(Condition condition) {
-        saveToXml();
+        scheduleSave();
         Collections.sort(mConditions, CONDITION_COMPARATOR);
         final int N = mListeners.size();
         for (int i = 0; i < N; i++) {
@@ -248,6 +344,11 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
 
     @Override
     public void onResume() {
+        mResumed = true;
+        // Until every condition is created, the triggers are listened to from refreshAll().
+        if (mAllConditionsCreated) {
+            mTriggerMonitor.startListening(mConditions);
+        }
         for (int i = 0, size = mConditions.size(); i < size; i++) {
             mConditions.get(i).onResume();
         }
@@ -255,6 +356,9 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
 
     @Override
     public void onPause() {
+        mResumed = false;
+        mTriggerMonitor.stopListening();
+        mTriggersMissed = true;
         for (int i = 0, size = mConditions.size(); i < size; i++) {
             mConditions.get(i).onPause();
         }
@@ -263,22 +367,35 @@ public class ConditionManager implements LifecycleObserver, OnResume, OnPause {
     private class ConditionLoader extends AsyncTask<Void, Void, ArrayList<Condition>> {
         @Override
         protected ArrayList<Condition> doInBackground(Void... params) {
-            Log.d(TAG, "loading conditions from xml");
-            ArrayList<Condition> conditions = new ArrayList<>();
-            mXmlFile = new File(mContext.getFilesDir(), FILE_NAME);
-            if (mXmlFile.exists()) {
-                readFromXml(mXmlFile, conditions);
-            }
-            addMissingConditions(conditions);
-            return conditions;
+            Log.d(TAG, "loading conditions");
+            return loadConditions();
         }
 
         @Override
         protected void onPostExecute(ArrayList<Condition> conditions) {
-            Log.d(TAG, "conditions loaded from xml, refreshing conditions");
-            mConditions.clear();
-            mConditions.addAll(conditions);
-            refreshAll();
+            Log.d(TAG, "conditions loaded, refreshing conditions");
+            // Keep the conditions created by getCondition() or refreshAll() while loading, but
+            // restore their saved state, such as whether they were silenced.
+            for (Condition condition : conditions) {
+                final Condition existing = getCondition(condition.getClass(), mConditions);
+                if (existing == null) {
+                    mConditions.add(condition);
+                } else {
+                    final PersistableBundle bundle = new PersistableBundle();
+                    condition.saveState(bundle);
+                    existing.restoreState(bundle);
+                }
+            }
+            mStatesLoaded = true;
+            if (mSaveSkipped) {
+                mSaveSkipped = false;
+                scheduleSave();
+            }
+            Collections.sort(mConditions, CONDITION_COMPARATOR);
+            final int N = mConditions.size();
+            for (int i = 0; i < N; i++) {
+                mConditions.get(i).refreshState();
+            }
         }
     }
 
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard.conditional;
+
+import android.os.PersistableBundle;
+import android.support.annotation.WorkerThread;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Stores the state saved by each {@link Condition} in a small binary file, replaced atomically.
+ * <p/>
+ * The file holds, for each condition with a state to save, its class name and the boolean, int
+ * and long values of its state.
+ */
+class ConditionStateStore {
+
+    private static final String TAG = "ConditionStateStore";
+
+    static final String FILE_NAME = "condition_state";
+
+    private static final int VERSION = 1;
+
+    private static final byte TYPE_BOOLEAN = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+
+    private final AtomicFile mFile;
+    /**
+     * Generation of the last states written, so that a write scheduled earlier but run later
+     * does not overwrite newer states.
+     */
+    private int mWrittenGeneration;
+
+    ConditionStateStore(File dir) {
+        mFile = new AtomicFile(new File(dir, FILE_NAME));
+    }
+
+    boolean exists() {
+        return mFile.getBaseFile().exists();
+    }
+
+    /**
+     * @return the saved states keyed by condition class name, in the order they were saved, or
+     * an empty map if there are none.
+     */
+    @WorkerThread
+    ArrayMap<String, PersistableBundle> read() {
+        final ArrayMap<String, PersistableBundle> states = new ArrayMap<>();
+        final byte[] data;
+        try {
+            data = mFile.readFully();
+        } catch (FileNotFoundException e) {
+            return states;
+        } catch (IOException e) {
+            Log.w(TAG, "Problem reading " + FILE_NAME, e);
+            return states;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readInt() != VERSION) {
+                return states;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String className = in.readUTF();
+                final PersistableBundle bundle = new PersistableBundle();
+                final int size = in.readInt();
+                for (int j = 0; j < size; j++) {
+                    final String key = in.readUTF();
+                    final byte type = in.readByte();
+                    switch (type) {
+                        case TYPE_BOOLEAN:
+                            bundle.putBoolean(key, in.readBoolean());
+                            break;
+                        case TYPE_INT:
+                            bundle.putInt(key, in.readInt());
+                            break;
+                        case TYPE_LONG:
+                            bundle.putLong(key, in.readLong());
+                            break;
+                        default:
+                            throw new IOException("Unknown type " + type + " for " + key);
+                    }
+                }
+                states.put(className, bundle);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Problem reading " + FILE_NAME, e);
+            states.clear();
+        }
+        return states;
+    }
+
+    /**
+     * Replaces the saved states with {@param states}, unless states of a later
+     * {@param generation} were already written.
+     */
+    @WorkerThread
+    synchronized void write(Map<String, PersistableBundle> states, int generation) {
+        if (generation <= mWrittenGeneration) {
+            return;
+        }
+        mWrittenGeneration = generation;
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            final DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(VERSION);
+            data.writeInt(states.size());
+            for (Map.Entry<String, PersistableBundle> state : states.entrySet()) {
+                data.writeUTF(state.getKey());
+                writeBundle(data, state.getValue());
+            }
+            data.flush();
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Problem writing " + FILE_NAME, e);
+            mFile.failWrite(out);
+        }
+    }
+
+    private static void writeBundle(DataOutputStream out, PersistableBundle bundle)
+            throws IOException {
+        int size = 0;
+        for (String key : bundle.keySet()) {
+            if (isSupported(bundle.get(key))) {
+                size++;
+            } else {
+                Log.w(TAG, "Skipping unsupported value of " + key);
+            }
+        }
+        out.writeInt(size);
+        for (String key : bundle.keySet()) {
+            final Object value = bundle.get(key);
+            if (!isSupported(value)) {
+                continue;
+            }
+            out.writeUTF(key);
+            if (value instanceof Boolean) {
+                out.writeByte(TYPE_BOOLEAN);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(TYPE_INT);
+                out.writeInt((Integer) value);
+            } else {
+                out.writeByte(TYPE_LONG);
+                out.writeLong((Long) value);
+            }
+        }
+    }
+
+    private static boolean isSupported(Object value) {
+        return value instanceof Boolean || value instanceof Integer || value instanceof Long;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard.conditional;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.ArrayMap;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Refreshes the conditions whose triggers fire.
+ * <p/>
+ * The broadcasts and settings declared by {@link Condition#getTriggerFilter()} and
+ * {@link Condition#getTriggerUris()} are listened to with a single receiver and a single
+ * observer, registered once for each action and uri however many conditions depend on it. Only
+ * the conditions depending on the action or uri which changed are refreshed.
+ */
+class ConditionTriggerMonitor {
+
+    private static final String TAG = "ConditionTriggerMonitor";
+
+    private static final boolean DEBUG = false;
+
+    private final Context mContext;
+    private final ArrayMap<String, List<Condition>> mActionConditions = new ArrayMap<>();
+    private final ArrayMap<Uri, List<Condition>> mUriConditions = new ArrayMap<>();
+    private boolean mListening;
+
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            // The last sticky broadcast is replayed on registration, while the manager refreshes
+            // every condition anyway after listening starts.
+            if (isInitialStickyBroadcast()) {
+                return;
+            }
+            refresh(mActionConditions.get(intent.getAction()));
+        }
+    };
+
+    private final ContentObserver mObserver = new ContentObserver(
+            new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            refresh(mUriConditions.get(uri));
+        }
+    };
+
+    ConditionTriggerMonitor(Context context) {
+        mContext = context;
+    }
+
+    boolean isListening() {
+        return mListening;
+    }
+
+    /**
+     * Starts listening to the triggers of {@param conditions}.
+     */
+    void startListening(List<Condition> conditions) {
+        if (mListening) {
+            return;
+        }
+        mListening = true;
+        for (int i = 0, size = conditions.size(); i < size; i++) {
+            final Condition condition = conditions.get(i);
+            final IntentFilter filter = condition.getTriggerFilter();
+            if (filter != null) {
+                for (int j = 0, count = filter.countActions(); j < count; j++) {
+                    add(mActionConditions, filter.getAction(j), condition);
+                }
+            }
+            final Uri[] uris = condition.getTriggerUris();
+            if (uris != null) {
+                for (Uri uri : uris) {
+                    add(mUriConditions, uri, condition);
+                }
+            }
+        }
+
+        if (!mActionConditions.isEmpty()) {
+            final IntentFilter filter = new IntentFilter();
+            for (int i = 0, size = mActionConditions.size(); i < size; i++) {
+                filter.addAction(mActionConditions.keyAt(i));
+            }
+            mContext.registerReceiver(mReceiver, filter);
+        }
+        for (int i = 0, size = mUriConditions.size(); i < size; i++) {
+            mContext.getContentResolver().registerContentObserver(mUriConditions.keyAt(i),
+                    false /* notifyForDescendants */, mObserver);
+        }
+    }
+
+    void stopListening() {
+        if (!mListening) {
+            return;
+        }
+        mListening = false;
+        if (!mActionConditions.isEmpty()) {
+            mContext.unregisterReceiver(mReceiver);
+        }
+        if (!mUriConditions.isEmpty()) {
+            mContext.getContentResolver().unregisterContentObserver(mObserver);
+        }
+        mActionConditions.clear();
+        mUriConditions.clear();
+    }
+
+    private void refresh(List<Condition> conditions) {
+        if (!mListening || conditions == null) {
+            return;
+        }
+        for (int i = 0, size = conditions.size(); i < size; i++) {
+            if (DEBUG) Log.d(TAG, "Refreshing " + conditions.get(i).getClass().getSimpleName());
+            conditions.get(i).refreshState();
+        }
+    }
+
+    private static <K> void add(ArrayMap<K, List<Condition>> map, K key, Condition condition) {
+        List<Condition> conditions = map.get(key);
+        if (conditions == null) {
+            conditions = new ArrayList<>();
+            map.put(key, conditions);
+        }
+        conditions.add(condition);
+    }
+}
@@ -16,8 +16,6 @@
 package com.android.settings.dashboard.conditional;
 
 import android.app.NotificationManager;
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
@@ -37,8 +35,6 @@ public class DndCondition extends Condition {
     private static final String TAG = "DndCondition";
     private static final String KEY_STATE = "state";
 
-    private boolean mRegistered;
-
     @VisibleForTesting
     static final IntentFilter DND_FILTER =
         new IntentFilter(NotificationManager.ACTION_INTERRUPTION_FILTER_CHANGED_INTERNAL);
@@ -46,13 +42,9 @@ public class DndCondition extends Condition {
     protected ZenModeConfig mConfig;
 
     private int mZen;
-    private final Receiver mReceiver;
 
     public DndCondition(ConditionManager manager) {
         super(manager);
-        mReceiver = new Receiver();
-        mManager.getContext().registerReceiver(mReceiver, DND_FILTER);
-        mRegistered = true;
     }
 
     @Override
@@ -81,6 +73,11 @@ public class DndCondition extends Condition {
         mZen = bundle.getInt(KEY_STATE, Global.ZEN_MODE_OFF);
     }
 
+    @Override
+    protected IntentFilter getTriggerFilter() {
+        return DND_FILTER;
+    }
+
     @Override
     public Drawable getIcon() {
         return mManager.getContext().getDrawable(R.drawable.ic_do_not_disturb_on_24dp);
@@ -128,34 +125,4 @@ public class DndCondition extends Condition {
     public int getMetricsConstant() {
         return MetricsEvent.SETTINGS_CONDITION_DND;
     }
-
-    public static class Receiver extends BroadcastReceiver {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            if (NotificationManager.ACTION_INTERRUPTION_FILTER_CHANGED_INTERNAL
-                    .equals(intent.getAction())) {
-                final Condition condition =
-                        ConditionManager.get(context).getCondition(DndCondition.class);
-                if (condition != null) {
-                    condition.refreshState();
-                }
-            }
-        }
-    }
-
-    @Override
-    public void onResume() {
-        if (!mRegistered) {
-           mManager.getContext().registerReceiver(mReceiver, DND_FILTER);
-           mRegistered = true;
-        }
-    }
-
-    @Override
-    public void onPause() {
-        if (mRegistered) {
-            mManager.getContext().unregisterReceiver(mReceiver);
-            mRegistered = false;
-        }
-    }
 }
@@ -53,6 +53,11 @@ public class HotspotCondition extends Condition {
         setActive(wifiTetherEnabled);
     }
 
+    @Override
+    protected IntentFilter getTriggerFilter() {
+        return WIFI_AP_STATE_FILTER;
+    }
+
     @Override
     protected BroadcastReceiver getReceiver() {
         return mReceiver;
@@ -85,6 +85,11 @@ public final class NightDisplayCondition extends Condition
         setActive(mController.isActivated());
     }
 
+    @Override
+    protected boolean hasCallbackTrigger() {
+        return true;
+    }
+
     @Override
     public void onActivated(boolean activated) {
         refreshState();
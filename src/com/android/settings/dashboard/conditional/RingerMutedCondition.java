@@ -19,6 +19,7 @@ package com.android.settings.dashboard.conditional;
 import static android.content.Context.NOTIFICATION_SERVICE;
 
 import android.app.NotificationManager;
+import android.content.IntentFilter;
 import android.graphics.drawable.Drawable;
 import android.media.AudioManager;
 import android.provider.Settings;
@@ -28,6 +29,14 @@ import com.android.settings.R;
 
 public class RingerMutedCondition extends AbnormalRingerConditionBase {
 
+    private static final IntentFilter RINGER_MODE_AND_DND_FILTER = new IntentFilter();
+
+    static {
+        RINGER_MODE_AND_DND_FILTER.addAction(AudioManager.INTERNAL_RINGER_MODE_CHANGED_ACTION);
+        RINGER_MODE_AND_DND_FILTER.addAction(
+                NotificationManager.ACTION_INTERRUPTION_FILTER_CHANGED_INTERNAL);
+    }
+
     private final NotificationManager mNotificationManager;
 
     RingerMutedCondition(ConditionManager manager) {
@@ -36,6 +45,12 @@ public class RingerMutedCondition extends AbnormalRingerConditionBase {
                 (NotificationManager) mManager.getContext().getSystemService(NOTIFICATION_SERVICE);
     }
 
+    @Override
+    protected IntentFilter getTriggerFilter() {
+        // The condition is hidden while DND is on, so it also depends on the zen mode.
+        return RINGER_MODE_AND_DND_FILTER;
+    }
+
     @Override
     public void refreshState() {
         int zen = Settings.Global.ZEN_MODE_OFF;
@@ -18,6 +18,7 @@ package com.android.settings.dashboard.conditional;
 
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.pm.UserInfo;
 import android.graphics.drawable.Drawable;
 import android.os.UserHandle;
@@ -31,6 +32,15 @@ import java.util.List;
 
 public class WorkModeCondition extends Condition {
 
+    private static final IntentFilter PROFILE_FILTER = new IntentFilter();
+
+    static {
+        PROFILE_FILTER.addAction(Intent.ACTION_MANAGED_PROFILE_AVAILABLE);
+        PROFILE_FILTER.addAction(Intent.ACTION_MANAGED_PROFILE_UNAVAILABLE);
+        PROFILE_FILTER.addAction(Intent.ACTION_MANAGED_PROFILE_ADDED);
+        PROFILE_FILTER.addAction(Intent.ACTION_MANAGED_PROFILE_REMOVED);
+    }
+
     private UserManager mUm;
     private UserHandle mUserHandle;
 
@@ -59,6 +69,11 @@ public class WorkModeCondition extends Condition {
         setActive(mUserHandle != null && mUm.isQuietModeEnabled(mUserHandle));
     }
 
+    @Override
+    protected IntentFilter getTriggerFilter() {
+        return PROFILE_FILTER;
+    }
+
     @Override
     public Drawable getIcon() {
         return mManager.getContext().getDrawable(R.drawable.ic_signal_workmode_enable);
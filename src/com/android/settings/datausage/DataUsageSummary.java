@@ -41,6 +41,7 @@ import com.android.settings.Utils;
 import com.android.settings.dashboard.SummaryLoader;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settings.search.Indexable;
+import com.android.settings.search.NonIndexableKeysCache;
 import com.android.settingslib.NetworkPolicyEditor;
 import com.android.settingslib.core.AbstractPreferenceController;
 import com.android.settingslib.net.DataUsageController;
@@ -375,6 +376,12 @@ public class DataUsageSummary extends DataUsageBaseFragment implements Indexable
                 return resources;
             }
 
+            @Override
+            public NonIndexableKeysCache.Inputs getNonIndexableKeysInputs(Context context) {
+                // Which data radios the device has does not change at runtime.
+                return new NonIndexableKeysCache.Inputs();
+            }
+
             @Override
             public List<String> getNonIndexableKeys(Context context) {
                 List<String> keys = super.getNonIndexableKeys(context);
@@ -45,6 +45,7 @@ import com.android.settings.Utils;
 import com.android.settings.dashboard.SummaryLoader;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settings.search.Indexable;
+import com.android.settings.search.NonIndexableKeysCache;
 import com.android.settingslib.NetworkPolicyEditor;
 import com.android.settingslib.core.AbstractPreferenceController;
 import com.android.settingslib.net.DataUsageController;
@@ -384,6 +385,12 @@ public class DataUsageSummaryLegacy extends DataUsageBaseFragment implements Ind
                 return resources;
             }
 
+            @Override
+            public NonIndexableKeysCache.Inputs getNonIndexableKeysInputs(Context context) {
+                // Which data radios the device has does not change at runtime.
+                return new NonIndexableKeysCache.Inputs();
+            }
+
             @Override
             public List<String> getNonIndexableKeys(Context context) {
                 List<String> keys = super.getNonIndexableKeys(context);
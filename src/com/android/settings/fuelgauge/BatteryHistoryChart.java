@@ -212,7 +212,7 @@ public class BatteryHistoryChart extends View {
     int mLevelLeft;
     int mLevelRight;
 
-    int mNumHist;
+    BatteryHistoryModel mHistory;
     long mHistStart;
     long mHistDataEnd;
     long mHistEnd;
@@ -515,64 +515,17 @@ public class BatteryHistoryChart extends View {
             mChargeDurationString = "";
             setContentDescription(mInfo.chargeLabel);
 
-            int pos = 0;
-            int lastInteresting = 0;
-            byte lastLevel = -1;
             mBatLow = 0;
             mBatHigh = 100;
-            mStartWallTime = 0;
-            mEndDataWallTime = 0;
-            mEndWallTime = 0;
-            mHistStart = 0;
-            mHistEnd = 0;
-            long lastWallTime = 0;
-            long lastRealtime = 0;
-            int aggrStates = 0;
-            int aggrStates2 = 0;
-            boolean first = true;
-            if (stats.startIteratingHistoryLocked()) {
-                final HistoryItem rec = new HistoryItem();
-                while (stats.getNextHistoryLocked(rec)) {
-                    pos++;
-                    if (first) {
-                        first = false;
-                        mHistStart = rec.time;
-                    }
-                    if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
-                            || rec.cmd == HistoryItem.CMD_RESET) {
-                        // If there is a ridiculously large jump in time, then we won't be
-                        // able to create a good chart with that data, so just ignore the
-                        // times we got before and pretend like our data extends back from
-                        // the time we have now.
-                        // Also, if we are getting a time change and we are less than 5 minutes
-                        // since the start of the history real time, then also use this new
-                        // time to compute the base time, since whatever time we had before is
-                        // pretty much just noise.
-                        if (rec.currentTime > (lastWallTime+(180*24*60*60*1000L))
-                                || rec.time < (mHistStart+(5*60*1000L))) {
-                            mStartWallTime = 0;
-                        }
-                        lastWallTime = rec.currentTime;
-                        lastRealtime = rec.time;
-                        if (mStartWallTime == 0) {
-                            mStartWallTime = lastWallTime - (lastRealtime-mHistStart);
-                        }
-                    }
-                    if (rec.isDeltaData()) {
-                        if (rec.batteryLevel != lastLevel || pos == 1) {
-                            lastLevel = rec.batteryLevel;
-                        }
-                        lastInteresting = pos;
-                        mHistDataEnd = rec.time;
-                        aggrStates |= rec.states;
-                        aggrStates2 |= rec.states2;
-                    }
-                }
-            }
+            mHistory = BatteryHistoryModel.get(stats);
+            mHistStart = mHistory.getHistoryStart();
+            mHistDataEnd = mHistory.getHistoryDataEnd();
+            mStartWallTime = mHistory.getStartWalltime();
+            mEndDataWallTime = mHistory.getEndDataWalltime();
+            final int aggrStates = mHistory.getAggregatedStates();
+            final int aggrStates2 = mHistory.getAggregatedStates2();
             mHistEnd = mHistDataEnd + (mInfo.remainingTimeUs/1000);
-            mEndDataWallTime = lastWallTime + mHistDataEnd - lastRealtime;
             mEndWallTime = mEndDataWallTime + (mInfo.remainingTimeUs/1000);
-            mNumHist = lastInteresting;
             mHaveGps = (aggrStates&HistoryItem.STATE_GPS_ON_FLAG) != 0;
             mHaveFlashlight = (aggrStates2&HistoryItem.STATE2_FLASHLIGHT_FLAG) != 0;
             mHaveCamera = (aggrStates2&HistoryItem.STATE2_CAMERA_FLAG) != 0;
@@ -767,20 +720,24 @@ public class BatteryHistoryChart extends View {
         mLevelBottom = mLevelTop + levelh;
 
         int x = mLevelLeft, y = 0, startX = mLevelLeft, lastX = -1, lastY = -1;
-        int i = 0;
         Path curLevelPath = null;
         Path lastLinePath = null;
         boolean lastCharging = false, lastScreenOn = false, lastGpsOn = false;
         boolean lastFlashlightOn = false, lastCameraOn = false;
         boolean lastWifiRunning = false, lastWifiSupplRunning = false, lastCpuRunning = false;
         int lastWifiSupplState = BatteryStats.WIFI_SUPPL_STATE_INVALID;
-        final int N = mNumHist;
-        if (mEndDataWallTime > mStartWallTime && mStats.startIteratingHistoryLocked()) {
-            final HistoryItem rec = new HistoryItem();
-            while (mStats.getNextHistoryLocked(rec) && i < N) {
-                if (rec.isDeltaData()) {
-                    curWalltime += rec.time-lastRealtime;
-                    lastRealtime = rec.time;
+        final BatteryHistoryModel history = mHistory;
+        if (history != null && mEndDataWallTime > mStartWallTime) {
+            final int N = history.size();
+            for (int i = 0; i < N; i++) {
+                final byte cmd = history.getCmd(i);
+                final long time = history.getTime(i);
+                final int states = history.getStates(i);
+                final int states2 = history.getStates2(i);
+                final byte batteryLevel = history.getBatteryLevel(i);
+                if (cmd == HistoryItem.CMD_UPDATE) {
+                    curWalltime += time-lastRealtime;
+                    lastRealtime = time;
                     x = mLevelLeft + (int)(((curWalltime-walltimeStart)*levelWidth)/walltimeChange);
                     if (x < 0) {
                         x = 0;
@@ -795,14 +752,14 @@ public class BatteryHistoryChart extends View {
                         sb.append(x);
                         Log.d("foo", sb.toString());
                     }
-                    y = mLevelTop + levelh - ((rec.batteryLevel-batLow)*(levelh-1))/batChange;
+                    y = mLevelTop + levelh - ((batteryLevel-batLow)*(levelh-1))/batChange;
 
                     if (lastX != x) {
                         // We have moved by at least a pixel.
                         if (lastY != y) {
                             // Don't plot changes within a pixel.
                             Path path;
-                            byte value = rec.batteryLevel;
+                            byte value = batteryLevel;
                             if (value <= mBatteryCriticalLevel) path = mBatCriticalPath;
                             else if (value <= mBatteryWarnLevel) path = mBatWarnPath;
                             else path = null; //mBatGoodPath;
@@ -833,7 +790,7 @@ public class BatteryHistoryChart extends View {
 
                     if (mLargeMode) {
                         final boolean charging =
-                            (rec.states&HistoryItem.STATE_BATTERY_PLUGGED_FLAG) != 0;
+                            (states&HistoryItem.STATE_BATTERY_PLUGGED_FLAG) != 0;
                         if (charging != lastCharging) {
                             if (charging) {
                                 mChargingPath.moveTo(x, h-mChargingOffset);
@@ -844,7 +801,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean screenOn =
-                            (rec.states&HistoryItem.STATE_SCREEN_ON_FLAG) != 0;
+                            (states&HistoryItem.STATE_SCREEN_ON_FLAG) != 0;
                         if (screenOn != lastScreenOn) {
                             if (screenOn) {
                                 mScreenOnPath.moveTo(x, h-mScreenOnOffset);
@@ -855,7 +812,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean gpsOn =
-                            (rec.states&HistoryItem.STATE_GPS_ON_FLAG) != 0;
+                            (states&HistoryItem.STATE_GPS_ON_FLAG) != 0;
                         if (gpsOn != lastGpsOn) {
                             if (gpsOn) {
                                 mGpsOnPath.moveTo(x, h-mGpsOnOffset);
@@ -866,7 +823,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean flashlightOn =
-                            (rec.states2&HistoryItem.STATE2_FLASHLIGHT_FLAG) != 0;
+                            (states2&HistoryItem.STATE2_FLASHLIGHT_FLAG) != 0;
                         if (flashlightOn != lastFlashlightOn) {
                             if (flashlightOn) {
                                 mFlashlightOnPath.moveTo(x, h-mFlashlightOnOffset);
@@ -877,7 +834,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean cameraOn =
-                            (rec.states2&HistoryItem.STATE2_CAMERA_FLAG) != 0;
+                            (states2&HistoryItem.STATE2_CAMERA_FLAG) != 0;
                         if (cameraOn != lastCameraOn) {
                             if (cameraOn) {
                                 mCameraOnPath.moveTo(x, h-mCameraOnOffset);
@@ -888,7 +845,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final int wifiSupplState =
-                            ((rec.states2&HistoryItem.STATE2_WIFI_SUPPL_STATE_MASK)
+                            ((states2&HistoryItem.STATE2_WIFI_SUPPL_STATE_MASK)
                                     >> HistoryItem.STATE2_WIFI_SUPPL_STATE_SHIFT);
                         boolean wifiRunning;
                         if (lastWifiSupplState != wifiSupplState) {
@@ -909,7 +866,7 @@ public class BatteryHistoryChart extends View {
                         } else {
                             wifiRunning = lastWifiSupplRunning;
                         }
-                        if ((rec.states&(HistoryItem.STATE_WIFI_FULL_LOCK_FLAG
+                        if ((states&(HistoryItem.STATE_WIFI_FULL_LOCK_FLAG
                                 |HistoryItem.STATE_WIFI_MULTICAST_ON_FLAG
                                 |HistoryItem.STATE_WIFI_SCAN_FLAG)) != 0) {
                             wifiRunning = true;
@@ -924,7 +881,7 @@ public class BatteryHistoryChart extends View {
                         }
 
                         final boolean cpuRunning =
-                            (rec.states&HistoryItem.STATE_CPU_RUNNING_FLAG) != 0;
+                            (states&HistoryItem.STATE_CPU_RUNNING_FLAG) != 0;
                         if (cpuRunning != lastCpuRunning) {
                             if (cpuRunning) {
                                 mCpuRunningPath.moveTo(x, h - mCpuRunningOffset);
@@ -936,14 +893,14 @@ public class BatteryHistoryChart extends View {
 
                         if (mLargeMode && mHavePhoneSignal) {
                             int bin;
-                            if (((rec.states&HistoryItem.STATE_PHONE_STATE_MASK)
+                            if (((states&HistoryItem.STATE_PHONE_STATE_MASK)
                                     >> HistoryItem.STATE_PHONE_STATE_SHIFT)
                                     == ServiceState.STATE_POWER_OFF) {
                                 bin = 0;
-                            } else if ((rec.states&HistoryItem.STATE_PHONE_SCANNING_FLAG) != 0) {
+                            } else if ((states&HistoryItem.STATE_PHONE_SCANNING_FLAG) != 0) {
                                 bin = 1;
                             } else {
-                                bin = (rec.states&HistoryItem.STATE_PHONE_SIGNAL_STRENGTH_MASK)
+                                bin = (states&HistoryItem.STATE_PHONE_SIGNAL_STRENGTH_MASK)
                                         >> HistoryItem.STATE_PHONE_SIGNAL_STRENGTH_SHIFT;
                                 bin += 2;
                             }
@@ -953,18 +910,18 @@ public class BatteryHistoryChart extends View {
 
                 } else {
                     long lastWalltime = curWalltime;
-                    if (rec.cmd == HistoryItem.CMD_CURRENT_TIME
-                            || rec.cmd == HistoryItem.CMD_RESET) {
-                        if (rec.currentTime >= mStartWallTime) {
-                            curWalltime = rec.currentTime;
+                    if (cmd == HistoryItem.CMD_CURRENT_TIME
+                            || cmd == HistoryItem.CMD_RESET) {
+                        if (history.getCurrentTime(i) >= mStartWallTime) {
+                            curWalltime = history.getCurrentTime(i);
                         } else {
-                            curWalltime = mStartWallTime + (rec.time-mHistStart);
+                            curWalltime = mStartWallTime + (time-mHistStart);
                         }
-                        lastRealtime = rec.time;
+                        lastRealtime = time;
                     }
 
-                    if (rec.cmd != HistoryItem.CMD_OVERFLOW
-                            && (rec.cmd != HistoryItem.CMD_CURRENT_TIME
+                    if (cmd != HistoryItem.CMD_OVERFLOW
+                            && (cmd != HistoryItem.CMD_CURRENT_TIME
                                     || Math.abs(lastWalltime-curWalltime) > (60*60*1000))) {
                         if (curLevelPath != null) {
                             finishPaths(x+1, h, levelh, startX, lastY, curLevelPath, lastX,
@@ -978,10 +935,7 @@ public class BatteryHistoryChart extends View {
                         }
                     }
                 }
-
-                i++;
             }
-            mStats.finishIteratingHistoryLocked();
         }
 
         if (lastY < 0 || lastX < 0) {
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import android.os.BatteryStats;
+import android.os.BatteryStats.HistoryItem;
+import android.support.annotation.VisibleForTesting;
+
+import com.android.settings.fuelgauge.BatteryInfo.BatteryDataParser;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * The battery history of a {@link BatteryStats} snapshot, decoded once into primitive arrays.
+ * <p>
+ * Walking the history means decoding every {@link HistoryItem} again, so the model of the last
+ * snapshot is cached and shared by the usage graph, the history chart and the battery tips. A
+ * new snapshot, created by a {@code BatteryStatsHelper} refresh, is always decoded again: the
+ * history cannot be iterated from a given record, and its last record may have been rewritten
+ * in place without changing the size of the history.
+ * <p>
+ * Only the command, time, current time, battery level and states of each record are kept, which
+ * is all the {@link BatteryDataParser}s look at.
+ */
+public class BatteryHistoryModel {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static final Object sLock = new Object();
+    private static WeakReference<BatteryStats> sStats;
+    private static BatteryHistoryModel sModel;
+
+    private int mSize;
+    private byte[] mCmds = new byte[INITIAL_CAPACITY];
+    private long[] mTimes = new long[INITIAL_CAPACITY];
+    private long[] mCurrentTimes = new long[INITIAL_CAPACITY];
+    private byte[] mBatteryLevels = new byte[INITIAL_CAPACITY];
+    private int[] mStates = new int[INITIAL_CAPACITY];
+    private int[] mStates2 = new int[INITIAL_CAPACITY];
+
+    private long mHistoryStart;
+    private long mHistoryDataEnd;
+    private long mStartWalltime;
+    private long mLastWalltime;
+    private long mLastRealtime;
+    private int mLastInteresting;
+    private int mAggregatedStates;
+    private int mAggregatedStates2;
+
+    private BatteryHistoryModel() {
+    }
+
+    /**
+     * @return the history of {@param stats}, decoded once per snapshot.
+     */
+    public static BatteryHistoryModel get(BatteryStats stats) {
+        synchronized (sLock) {
+            if (sModel == null || sStats.get() != stats) {
+                sModel = decode(stats);
+            }
+            sStats = new WeakReference<>(stats);
+            return sModel;
+        }
+    }
+
+    @VisibleForTesting
+    static void clearCache() {
+        synchronized (sLock) {
+            sStats = null;
+            sModel = null;
+        }
+    }
+
+    @VisibleForTesting
+    static BatteryHistoryModel decode(BatteryStats stats) {
+        final BatteryHistoryModel model = new BatteryHistoryModel();
+        if (stats.startIteratingHistoryLocked()) {
+            final HistoryItem rec = new HistoryItem();
+            while (stats.getNextHistoryLocked(rec)) {
+                model.add(rec);
+            }
+        }
+        stats.finishIteratingHistoryLocked();
+        return model;
+    }
+
+    private void add(HistoryItem rec) {
+        if (mSize == mCmds.length) {
+            final int capacity = mSize * 2;
+            mCmds = Arrays.copyOf(mCmds, capacity);
+            mTimes = Arrays.copyOf(mTimes, capacity);
+            mCurrentTimes = Arrays.copyOf(mCurrentTimes, capacity);
+            mBatteryLevels = Arrays.copyOf(mBatteryLevels, capacity);
+            mStates = Arrays.copyOf(mStates, capacity);
+            mStates2 = Arrays.copyOf(mStates2, capacity);
+        }
+        if (mSize == 0) {
+            mHistoryStart = rec.time;
+        }
+        mCmds[mSize] = rec.cmd;
+        mTimes[mSize] = rec.time;
+        mCurrentTimes[mSize] = rec.currentTime;
+        mBatteryLevels[mSize] = rec.batteryLevel;
+        mStates[mSize] = rec.states;
+        mStates2[mSize] = rec.states2;
+        mSize++;
+
+        if (rec.cmd == HistoryItem.CMD_CURRENT_TIME || rec.cmd == HistoryItem.CMD_RESET) {
+            // If there is a ridiculously large jump in time, then we won't be
+            // able to create a good chart with that data, so just ignore the
+            // times we got before and pretend like our data extends back from
+            // the time we have now.
+            // Also, if we are getting a time change and we are less than 5 minutes
+            // since the start of the history real time, then also use this new
+            // time to compute the base time, since whatever time we had before is
+            // pretty much just noise.
+            if (rec.currentTime > (mLastWalltime + (180 * 24 * 60 * 60 * 1000L))
+                    || rec.time < (mHistoryStart + (5 * 60 * 1000L))) {
+                mStartWalltime = 0;
+            }
+            mLastWalltime = rec.currentTime;
+            mLastRealtime = rec.time;
+            if (mStartWalltime == 0) {
+                mStartWalltime = mLastWalltime - (mLastRealtime - mHistoryStart);
+            }
+        }
+        if (rec.isDeltaData()) {
+            mLastInteresting = mSize;
+            mHistoryDataEnd = rec.time;
+            mAggregatedStates |= rec.states;
+            mAggregatedStates2 |= rec.states2;
+        }
+    }
+
+    /**
+     * Walks the history in wall clock time, as {@link BatteryInfo#parse} does.
+     */
+    public void parse(BatteryDataParser... parsers) {
+        final long startWalltime = getStartWalltime();
+        final long endWalltime = getEndDataWalltime();
+        for (int j = 0; j < parsers.length; j++) {
+            parsers[j].onParsingStarted(startWalltime, endWalltime);
+        }
+        if (endWalltime > startWalltime) {
+            final HistoryItem rec = new HistoryItem();
+            long curWalltime = 0;
+            long lastRealtime = mLastRealtime;
+            for (int i = 0; i < mLastInteresting; i++) {
+                final byte cmd = mCmds[i];
+                if (cmd == HistoryItem.CMD_UPDATE) {
+                    curWalltime += mTimes[i] - lastRealtime;
+                    lastRealtime = mTimes[i];
+                    long x = (curWalltime - startWalltime);
+                    if (x < 0) {
+                        x = 0;
+                    }
+                    fill(rec, i);
+                    for (int j = 0; j < parsers.length; j++) {
+                        parsers[j].onDataPoint(x, rec);
+                    }
+                } else {
+                    long lastWalltime = curWalltime;
+                    if (cmd == HistoryItem.CMD_CURRENT_TIME || cmd == HistoryItem.CMD_RESET) {
+                        if (mCurrentTimes[i] >= startWalltime) {
+                            curWalltime = mCurrentTimes[i];
+                        } else {
+                            curWalltime = startWalltime + (mTimes[i] - mHistoryStart);
+                        }
+                        lastRealtime = mTimes[i];
+                    }
+
+                    if (cmd != HistoryItem.CMD_OVERFLOW
+                            && (cmd != HistoryItem.CMD_CURRENT_TIME
+                            || Math.abs(lastWalltime - curWalltime) > (60 * 60 * 1000))) {
+                        for (int j = 0; j < parsers.length; j++) {
+                            parsers[j].onDataGap();
+                        }
+                    }
+                }
+            }
+        }
+        for (int j = 0; j < parsers.length; j++) {
+            parsers[j].onParsingDone();
+        }
+    }
+
+    private void fill(HistoryItem rec, int i) {
+        rec.cmd = mCmds[i];
+        rec.time = mTimes[i];
+        rec.currentTime = mCurrentTimes[i];
+        rec.batteryLevel = mBatteryLevels[i];
+        rec.states = mStates[i];
+        rec.states2 = mStates2[i];
+    }
+
+    /**
+     * @return the number of records up to the last data point, the ones worth walking.
+     */
+    public int size() {
+        return mLastInteresting;
+    }
+
+    public byte getCmd(int i) {
+        return mCmds[i];
+    }
+
+    public long getTime(int i) {
+        return mTimes[i];
+    }
+
+    public long getCurrentTime(int i) {
+        return mCurrentTimes[i];
+    }
+
+    public byte getBatteryLevel(int i) {
+        return mBatteryLevels[i];
+    }
+
+    public int getStates(int i) {
+        return mStates[i];
+    }
+
+    public int getStates2(int i) {
+        return mStates2[i];
+    }
+
+    /**
+     * @return the real time of the first record.
+     */
+    public long getHistoryStart() {
+        return mHistoryStart;
+    }
+
+    /**
+     * @return the real time of the last data point.
+     */
+    public long getHistoryDataEnd() {
+        return mHistoryDataEnd;
+    }
+
+    public long getStartWalltime() {
+        return mStartWalltime;
+    }
+
+    /**
+     * @return the wall clock time of the last data point.
+     */
+    public long getEndDataWalltime() {
+        return mLastWalltime + mHistoryDataEnd - mLastRealtime;
+    }
+
+    /**
+     * @return the union of the {@link HistoryItem#states} of every data point.
+     */
+    public int getAggregatedStates() {
+        return mAggregatedStates;
+    }
+
+    /**
+     * @return the union of the {@link HistoryItem#states2} of every data point.
+     */
+    public int getAggregatedStates2() {
+        return mAggregatedStates2;
+    }
+}
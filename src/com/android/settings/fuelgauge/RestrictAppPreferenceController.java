@@ -40,6 +40,9 @@ public class RestrictAppPreferenceController extends BasePreferenceController {
     @VisibleForTesting
     static final String KEY_RESTRICT_APP = "restricted_app";
 
+    /**
+     * The restricted apps, or null until the state is applied.
+     */
     @VisibleForTesting
     List<AppInfo> mAppInfos;
     private AppOpsManager mAppOpsManager;
@@ -63,10 +66,19 @@ public class RestrictAppPreferenceController extends BasePreferenceController {
     }
 
     @Override
-    public void updateState(Preference preference) {
-        super.updateState(preference);
+    public boolean hasAsyncState() {
+        return true;
+    }
 
-        mAppInfos = BatteryTipUtils.getRestrictedAppsList(mAppOpsManager, mUserManager);
+    @Override
+    public Object computeState() {
+        return new RestrictedApps(
+                BatteryTipUtils.getRestrictedAppsList(mAppOpsManager, mUserManager));
+    }
+
+    @Override
+    public void applyState(Preference preference, Object state) {
+        mAppInfos = ((RestrictedApps) state).appInfos;
 
         final int num = mAppInfos.size();
         // Don't show it if no app been restricted
@@ -79,12 +91,24 @@ public class RestrictAppPreferenceController extends BasePreferenceController {
     @Override
     public boolean handlePreferenceTreeClick(Preference preference) {
         if (getPreferenceKey().equals(preference.getKey())) {
-            // start fragment
-            RestrictedAppDetails.startRestrictedAppDetails(mPreferenceFragment,
-                    mAppInfos);
+            // The preference is hidden until the state is applied, ignore any earlier click
+            if (mAppInfos != null) {
+                RestrictedAppDetails.startRestrictedAppDetails(mPreferenceFragment, mAppInfos);
+            }
             return true;
         }
 
         return super.handlePreferenceTreeClick(preference);
     }
+
+    /**
+     * The apps restricted when the state was computed.
+     */
+    private static class RestrictedApps {
+        final List<AppInfo> appInfos;
+
+        RestrictedApps(List<AppInfo> appInfos) {
+            this.appInfos = appInfos;
+        }
+    }
 }
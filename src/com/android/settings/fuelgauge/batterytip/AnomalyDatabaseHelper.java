@@ -103,6 +103,8 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private AnomalyDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Anomalies are written by the detection job while the battery tips read them.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -36,8 +36,10 @@ import android.os.UserManager;
 import android.provider.Settings;
 import android.support.annotation.GuardedBy;
 import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
 import android.util.Log;
 import android.util.Pair;
+import android.util.SparseArray;
 
 import com.android.internal.logging.nano.MetricsProto;
 import com.android.internal.util.ArrayUtils;
@@ -103,13 +105,28 @@ public class AnomalyDetectionJobService extends JobService {
             final MetricsFeatureProvider metricsFeatureProvider = FeatureFactory
                     .getFactory(this).getMetricsFeatureProvider();
 
-            for (JobWorkItem item = dequeueWork(params); item != null; item = dequeueWork(params)) {
-                saveAnomalyToDatabase(context, userManager,
+            // Drain the queue, so that a burst of anomalies is saved in a single transaction.
+            final List<JobWorkItem> items = new ArrayList<>();
+            final List<Bundle> bundles = new ArrayList<>();
+            while (true) {
+                for (JobWorkItem item = dequeueWork(params); item != null;
+                        item = dequeueWork(params)) {
+                    items.add(item);
+                    bundles.add(item.getIntent().getExtras());
+                }
+                if (items.isEmpty()) {
+                    break;
+                }
+                saveAnomaliesToDatabase(context, userManager,
                         batteryDatabaseManager, batteryUtils, policy, powerWhitelistBackend,
                         contentResolver, powerUsageFeatureProvider, metricsFeatureProvider,
-                        item.getIntent().getExtras());
+                        bundles);
 
-                completeWork(params, item);
+                for (int i = 0, size = items.size(); i < size; i++) {
+                    completeWork(params, items.get(i));
+                }
+                items.clear();
+                bundles.clear();
             }
         });
 
@@ -124,65 +141,105 @@ public class AnomalyDetectionJobService extends JobService {
         return true; // Need to reschedule
     }
 
+    /**
+     * Saves the anomalies of {@param bundles} which are not hidden in a single transaction. The
+     * package name, version code and whether to hide the anomalies of each uid are only looked up
+     * once for the whole batch.
+     */
     @VisibleForTesting
-    void saveAnomalyToDatabase(Context context, UserManager userManager,
+    void saveAnomaliesToDatabase(Context context, UserManager userManager,
             BatteryDatabaseManager databaseManager, BatteryUtils batteryUtils,
             BatteryTipPolicy policy, PowerWhitelistBackend powerWhitelistBackend,
             ContentResolver contentResolver, PowerUsageFeatureProvider powerUsageFeatureProvider,
-            MetricsFeatureProvider metricsFeatureProvider, Bundle bundle) {
-        // The Example of intentDimsValue is: 35:{1:{1:{1:10013|}|}|}
-        final StatsDimensionsValue intentDimsValue =
-                bundle.getParcelable(StatsManager.EXTRA_STATS_DIMENSIONS_VALUE);
-        final long timeMs = bundle.getLong(AnomalyDetectionReceiver.KEY_ANOMALY_TIMESTAMP,
-                System.currentTimeMillis());
-        final ArrayList<String> cookies = bundle.getStringArrayList(
-                StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES);
-        final AnomalyInfo anomalyInfo = new AnomalyInfo(
-                !ArrayUtils.isEmpty(cookies) ? cookies.get(0) : "");
-        Log.i(TAG, "Extra stats value: " + intentDimsValue.toString());
-
-        try {
-            final int uid = extractUidFromStatsDimensionsValue(intentDimsValue);
-            final boolean autoFeatureOn = powerUsageFeatureProvider.isSmartBatterySupported()
-                    ? Settings.Global.getInt(contentResolver,
-                            Settings.Global.ADAPTIVE_BATTERY_MANAGEMENT_ENABLED, ON) == ON
-                    : Settings.Global.getInt(contentResolver,
-                            Settings.Global.APP_AUTO_RESTRICTION_ENABLED, ON) == ON;
-            final String packageName = batteryUtils.getPackageName(uid);
-            final long versionCode = batteryUtils.getAppLongVersionCode(packageName);
-
-            if (batteryUtils.shouldHideAnomaly(powerWhitelistBackend, uid, anomalyInfo)) {
-                metricsFeatureProvider.action(context,
-                        MetricsProto.MetricsEvent.ACTION_ANOMALY_IGNORED,
-                        packageName,
-                        Pair.create(MetricsProto.MetricsEvent.FIELD_CONTEXT,
-                                anomalyInfo.anomalyType),
-                        Pair.create(MetricsProto.MetricsEvent.FIELD_APP_VERSION_CODE,
-                                versionCode));
-            } else {
-                if (autoFeatureOn && anomalyInfo.autoRestriction) {
-                    // Auto restrict this app
-                    batteryUtils.setForceAppStandby(uid, packageName,
-                            AppOpsManager.MODE_IGNORED);
-                    databaseManager.insertAnomaly(uid, packageName, anomalyInfo.anomalyType,
-                            AnomalyDatabaseHelper.State.AUTO_HANDLED,
-                            timeMs);
+            MetricsFeatureProvider metricsFeatureProvider, List<Bundle> bundles) {
+        final boolean autoFeatureOn = powerUsageFeatureProvider.isSmartBatterySupported()
+                ? Settings.Global.getInt(contentResolver,
+                        Settings.Global.ADAPTIVE_BATTERY_MANAGEMENT_ENABLED, ON) == ON
+                : Settings.Global.getInt(contentResolver,
+                        Settings.Global.APP_AUTO_RESTRICTION_ENABLED, ON) == ON;
+        final SparseArray<String> packageNames = new SparseArray<>();
+        final ArrayMap<String, Long> versionCodes = new ArrayMap<>();
+        final ArrayMap<Pair<Integer, Integer>, Boolean> hiddenAnomalies = new ArrayMap<>();
+        final List<PendingAnomaly> anomalies = new ArrayList<>();
+
+        for (int i = 0, size = bundles.size(); i < size; i++) {
+            final Bundle bundle = bundles.get(i);
+            // The Example of intentDimsValue is: 35:{1:{1:{1:10013|}|}|}
+            final StatsDimensionsValue intentDimsValue =
+                    bundle.getParcelable(StatsManager.EXTRA_STATS_DIMENSIONS_VALUE);
+            final long timeMs = bundle.getLong(AnomalyDetectionReceiver.KEY_ANOMALY_TIMESTAMP,
+                    System.currentTimeMillis());
+            final ArrayList<String> cookies = bundle.getStringArrayList(
+                    StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES);
+            final AnomalyInfo anomalyInfo = new AnomalyInfo(
+                    !ArrayUtils.isEmpty(cookies) ? cookies.get(0) : "");
+            Log.i(TAG, "Extra stats value: " + intentDimsValue.toString());
+
+            try {
+                final int uid = extractUidFromStatsDimensionsValue(intentDimsValue);
+                if (packageNames.indexOfKey(uid) < 0) {
+                    packageNames.put(uid, batteryUtils.getPackageName(uid));
+                }
+                final String packageName = packageNames.get(uid);
+                Long versionCode = versionCodes.get(packageName);
+                if (versionCode == null) {
+                    versionCode = batteryUtils.getAppLongVersionCode(packageName);
+                    versionCodes.put(packageName, versionCode);
+                }
+                final Pair<Integer, Integer> anomalyKey = Pair.create(uid,
+                        anomalyInfo.anomalyType);
+                Boolean hidden = hiddenAnomalies.get(anomalyKey);
+                if (hidden == null) {
+                    hidden = batteryUtils.shouldHideAnomaly(powerWhitelistBackend, uid,
+                            anomalyInfo);
+                    hiddenAnomalies.put(anomalyKey, hidden);
+                }
+
+                if (hidden) {
+                    metricsFeatureProvider.action(context,
+                            MetricsProto.MetricsEvent.ACTION_ANOMALY_IGNORED,
+                            packageName,
+                            Pair.create(MetricsProto.MetricsEvent.FIELD_CONTEXT,
+                                    anomalyInfo.anomalyType),
+                            Pair.create(MetricsProto.MetricsEvent.FIELD_APP_VERSION_CODE,
+                                    versionCode));
                 } else {
-                    databaseManager.insertAnomaly(uid, packageName, anomalyInfo.anomalyType,
-                            AnomalyDatabaseHelper.State.NEW,
-                            timeMs);
+                    final int state;
+                    if (autoFeatureOn && anomalyInfo.autoRestriction) {
+                        // Auto restrict this app
+                        batteryUtils.setForceAppStandby(uid, packageName,
+                                AppOpsManager.MODE_IGNORED);
+                        state = AnomalyDatabaseHelper.State.AUTO_HANDLED;
+                    } else {
+                        state = AnomalyDatabaseHelper.State.NEW;
+                    }
+                    anomalies.add(new PendingAnomaly(uid, packageName, anomalyInfo.anomalyType,
+                            state, timeMs, versionCode));
                 }
-                metricsFeatureProvider.action(context,
-                        MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
-                        packageName,
-                        Pair.create(MetricsProto.MetricsEvent.FIELD_ANOMALY_TYPE,
-                                anomalyInfo.anomalyType),
-                        Pair.create(MetricsProto.MetricsEvent.FIELD_APP_VERSION_CODE,
-                                versionCode));
+
+            } catch (NullPointerException | IndexOutOfBoundsException e) {
+                Log.e(TAG, "Parse stats dimensions value error.", e);
             }
+        }
 
-        } catch (NullPointerException | IndexOutOfBoundsException e) {
-            Log.e(TAG, "Parse stats dimensions value error.", e);
+        if (anomalies.isEmpty()) {
+            return;
+        }
+        databaseManager.runInTransaction(() -> {
+            for (int i = 0, size = anomalies.size(); i < size; i++) {
+                final PendingAnomaly anomaly = anomalies.get(i);
+                databaseManager.insertAnomaly(anomaly.uid, anomaly.packageName, anomaly.type,
+                        anomaly.state, anomaly.timeMs);
+            }
+        });
+        for (int i = 0, size = anomalies.size(); i < size; i++) {
+            final PendingAnomaly anomaly = anomalies.get(i);
+            metricsFeatureProvider.action(context,
+                    MetricsProto.MetricsEvent.ACTION_ANOMALY_TRIGGERED,
+                    anomaly.packageName,
+                    Pair.create(MetricsProto.MetricsEvent.FIELD_ANOMALY_TYPE, anomaly.type),
+                    Pair.create(MetricsProto.MetricsEvent.FIELD_APP_VERSION_CODE,
+                            anomaly.versionCode));
         }
     }
 
@@ -238,4 +295,26 @@ public class AnomalyDetectionJobService extends JobService {
             parameters.completeWork(item);
         }
     }
+
+    /**
+     * An anomaly to save, once its app was checked.
+     */
+    private static class PendingAnomaly {
+        final int uid;
+        final String packageName;
+        final int type;
+        final int state;
+        final long timeMs;
+        final long versionCode;
+
+        PendingAnomaly(int uid, String packageName, int type, int state, long timeMs,
+                long versionCode) {
+            this.uid = uid;
+            this.packageName = packageName;
+            this.type = type;
+            this.state = state;
+            this.timeMs = timeMs;
+            this.versionCode = versionCode;
+        }
+    }
 }
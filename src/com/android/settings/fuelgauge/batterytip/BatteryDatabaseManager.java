@@ -16,8 +16,6 @@
 
 package com.android.settings.fuelgauge.batterytip;
 
-import static android.database.sqlite.SQLiteDatabase.CONFLICT_IGNORE;
-
 import static com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper.AnomalyColumns
         .ANOMALY_STATE;
 import static com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper.AnomalyColumns
@@ -33,6 +31,7 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 import android.util.ArrayMap;
 
@@ -44,19 +43,43 @@ import java.util.Map;
 /**
  * Database manager for battery data. Now it only contains anomaly data stored in {@link AppInfo}.
  *
- * This manager may be accessed by multi-threads. All the database related methods are synchronized
- * so each operation won't be interfered by other threads.
+ * This manager may be accessed by multi-threads. It keeps the database open, in write-ahead
+ * logging mode, so that reads run concurrently with each other and with writes. Only the writes
+ * are serialized, as they share compiled statements.
  */
 public class BatteryDatabaseManager {
+    private static final String INSERT_ANOMALY = "INSERT OR IGNORE INTO " + TABLE_ANOMALY
+            + " (" + UID + ", " + PACKAGE_NAME + ", " + ANOMALY_TYPE + ", " + ANOMALY_STATE
+            + ", " + TIME_STAMP_MS + ") VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE_ANOMALIES_BEFORE = "DELETE FROM " + TABLE_ANOMALY
+            + " WHERE " + TIME_STAMP_MS + " < ?";
+    private static final String QUERY_ANOMALIES = "SELECT " + PACKAGE_NAME + ", " + ANOMALY_TYPE
+            + ", " + UID + " FROM " + TABLE_ANOMALY + " WHERE " + TIME_STAMP_MS + " > ? AND "
+            + ANOMALY_STATE + " = ? ORDER BY " + TIME_STAMP_MS + " DESC";
+
+    /**
+     * Indices of the columns selected by {@link #QUERY_ANOMALIES}.
+     */
+    private static final int COLUMN_PACKAGE_NAME = 0;
+    private static final int COLUMN_ANOMALY_TYPE = 1;
+    private static final int COLUMN_UID = 2;
+
     private static BatteryDatabaseManager sSingleton;
 
+    private final Object mWriteLock = new Object();
     private AnomalyDatabaseHelper mDatabaseHelper;
+    /**
+     * Statements compiled against {@link #mStatementDatabase}, guarded by {@link #mWriteLock}.
+     */
+    private SQLiteDatabase mStatementDatabase;
+    private SQLiteStatement mInsertStatement;
+    private SQLiteStatement mDeleteStatement;
 
     private BatteryDatabaseManager(Context context) {
         mDatabaseHelper = AnomalyDatabaseHelper.getInstance(context);
     }
 
-    public static BatteryDatabaseManager getInstance(Context context) {
+    public static synchronized BatteryDatabaseManager getInstance(Context context) {
         if (sSingleton == null) {
             sSingleton = new BatteryDatabaseManager(context);
         }
@@ -73,61 +96,83 @@ public class BatteryDatabaseManager {
      * @param timestampMs  the time when it is happened
      * @return {@code true} if insert operation succeed
      */
-    public synchronized boolean insertAnomaly(int uid, String packageName, int type,
-            int anomalyState,
+    public boolean insertAnomaly(int uid, String packageName, int type, int anomalyState,
             long timestampMs) {
-        try (SQLiteDatabase db = mDatabaseHelper.getWritableDatabase()) {
-            ContentValues values = new ContentValues();
-            values.put(UID, uid);
-            values.put(PACKAGE_NAME, packageName);
-            values.put(ANOMALY_TYPE, type);
-            values.put(ANOMALY_STATE, anomalyState);
-            values.put(TIME_STAMP_MS, timestampMs);
-            return db.insertWithOnConflict(TABLE_ANOMALY, null, values, CONFLICT_IGNORE) != -1;
+        synchronized (mWriteLock) {
+            prepareStatements();
+            final SQLiteStatement statement = mInsertStatement;
+            statement.bindLong(1, uid);
+            if (packageName != null) {
+                statement.bindString(2, packageName);
+            } else {
+                statement.bindNull(2);
+            }
+            statement.bindLong(3, type);
+            statement.bindLong(4, anomalyState);
+            statement.bindLong(5, timestampMs);
+            try {
+                return statement.executeInsert() != -1;
+            } finally {
+                statement.clearBindings();
+            }
+        }
+    }
+
+    /**
+     * Run {@code writes} in a single transaction, so that a batch of inserts is committed once.
+     */
+    public void runInTransaction(Runnable writes) {
+        synchronized (mWriteLock) {
+            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                writes.run();
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
         }
     }
 
     /**
      * Query all the anomalies that happened after {@code timestampMsAfter} and with {@code state}.
      */
-    public synchronized List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
+    public List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
         final List<AppInfo> appInfos = new ArrayList<>();
-        try (SQLiteDatabase db = mDatabaseHelper.getReadableDatabase()) {
-            final String[] projection = {PACKAGE_NAME, ANOMALY_TYPE, UID};
-            final String orderBy = AnomalyDatabaseHelper.AnomalyColumns.TIME_STAMP_MS + " DESC";
-            final Map<Integer, AppInfo.Builder> mAppInfoBuilders = new ArrayMap<>();
-            final String selection = TIME_STAMP_MS + " > ? AND " + ANOMALY_STATE + " = ? ";
-            final String[] selectionArgs = new String[]{String.valueOf(timestampMsAfter),
-                    String.valueOf(state)};
-
-            try (Cursor cursor = db.query(TABLE_ANOMALY, projection, selection, selectionArgs,
-                    null /* groupBy */, null /* having */, orderBy)) {
-                while (cursor.moveToNext()) {
-                    final int uid = cursor.getInt(cursor.getColumnIndex(UID));
-                    if (!mAppInfoBuilders.containsKey(uid)) {
-                        final AppInfo.Builder builder = new AppInfo.Builder()
-                                .setUid(uid)
-                                .setPackageName(
-                                        cursor.getString(cursor.getColumnIndex(PACKAGE_NAME)));
-                        mAppInfoBuilders.put(uid, builder);
-                    }
-                    mAppInfoBuilders.get(uid).addAnomalyType(
-                            cursor.getInt(cursor.getColumnIndex(ANOMALY_TYPE)));
+        final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
+        final Map<Integer, AppInfo.Builder> mAppInfoBuilders = new ArrayMap<>();
+        final String[] selectionArgs = new String[]{String.valueOf(timestampMsAfter),
+                String.valueOf(state)};
+
+        try (Cursor cursor = db.rawQuery(QUERY_ANOMALIES, selectionArgs)) {
+            while (cursor.moveToNext()) {
+                final int uid = cursor.getInt(COLUMN_UID);
+                if (!mAppInfoBuilders.containsKey(uid)) {
+                    final AppInfo.Builder builder = new AppInfo.Builder()
+                            .setUid(uid)
+                            .setPackageName(cursor.getString(COLUMN_PACKAGE_NAME));
+                    mAppInfoBuilders.put(uid, builder);
                 }
+                mAppInfoBuilders.get(uid).addAnomalyType(cursor.getInt(COLUMN_ANOMALY_TYPE));
             }
+        }
 
-            for (Integer uid : mAppInfoBuilders.keySet()) {
-                appInfos.add(mAppInfoBuilders.get(uid).build());
-            }
+        for (Integer uid : mAppInfoBuilders.keySet()) {
+            appInfos.add(mAppInfoBuilders.get(uid).build());
         }
 
         return appInfos;
     }
 
-    public synchronized void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
-        try (SQLiteDatabase db = mDatabaseHelper.getWritableDatabase()) {
-            db.delete(TABLE_ANOMALY, TIME_STAMP_MS + " < ?",
-                    new String[]{String.valueOf(timestampMs)});
+    public void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
+        synchronized (mWriteLock) {
+            prepareStatements();
+            mDeleteStatement.bindLong(1, timestampMs);
+            try {
+                mDeleteStatement.executeUpdateDelete();
+            } finally {
+                mDeleteStatement.clearBindings();
+            }
         }
     }
 
@@ -137,14 +182,15 @@ public class BatteryDatabaseManager {
      * @param appInfos represents the anomalies
      * @param state    which state to update to
      */
-    public synchronized void updateAnomalies(List<AppInfo> appInfos, int state) {
+    public void updateAnomalies(List<AppInfo> appInfos, int state) {
         if (!appInfos.isEmpty()) {
             final int size = appInfos.size();
             final String[] whereArgs = new String[size];
             for (int i = 0; i < size; i++) {
                 whereArgs[i] = appInfos.get(i).packageName;
             }
-            try (SQLiteDatabase db = mDatabaseHelper.getWritableDatabase()) {
+            synchronized (mWriteLock) {
+                final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
                 final ContentValues values = new ContentValues();
                 values.put(ANOMALY_STATE, state);
                 db.update(TABLE_ANOMALY, values, PACKAGE_NAME + " IN (" + TextUtils.join(",",
@@ -152,4 +198,21 @@ public class BatteryDatabaseManager {
             }
         }
     }
+
+    /**
+     * Compiles the write statements, again if the database was reopened since.
+     */
+    private void prepareStatements() {
+        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+        if (db == mStatementDatabase) {
+            return;
+        }
+        if (mInsertStatement != null) {
+            mInsertStatement.close();
+            mDeleteStatement.close();
+        }
+        mStatementDatabase = db;
+        mInsertStatement = db.compileStatement(INSERT_ANOMALY);
+        mDeleteStatement = db.compileStatement(DELETE_ANOMALIES_BEFORE);
+    }
 }
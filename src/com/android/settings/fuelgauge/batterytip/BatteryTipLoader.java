@@ -18,11 +18,14 @@ package com.android.settings.fuelgauge.batterytip;
 
 import android.content.Context;
 import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.Log;
 
 import com.android.internal.os.BatteryStatsHelper;
 import com.android.settings.fuelgauge.BatteryInfo;
 import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.Estimate;
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.EarlyWarningDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.HighUsageDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.LowBatteryDetector;
@@ -37,19 +40,44 @@ import com.android.settingslib.utils.AsyncLoader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Loader to compute and return a battery tip list. It will always return a full length list even
- * though some tips may have state {@code BaseBatteryTip.StateType.INVISIBLE}.
+ * Loader to compute and return a battery tip list. It will return a full length list even though
+ * some tips may have state {@code BaseBatteryTip.StateType.INVISIBLE}, except for the tips whose
+ * detector took longer than {@link #DETECTOR_TIME_BUDGET_MS}.
  */
 public class BatteryTipLoader extends AsyncLoader<List<BatteryTip>> {
     private static final String TAG = "BatteryTipLoader";
 
     private static final boolean USE_FAKE_DATA = false;
 
+    private static final int MAX_PARALLEL_DETECTORS = 3;
+
+    @VisibleForTesting
+    static final long DETECTOR_TIME_BUDGET_MS = 1000;
+
+    private static ExecutorService sExecutor;
+
     private BatteryStatsHelper mBatteryStatsHelper;
     @VisibleForTesting
     BatteryUtils mBatteryUtils;
+    @VisibleForTesting
+    long mDetectorTimeBudgetMs = DETECTOR_TIME_BUDGET_MS;
+    /**
+     * Time in milliseconds each detector took in the last load, or since it was submitted if it
+     * timed out.
+     */
+    @VisibleForTesting
+    final Map<String, Long> mDetectorTimings = new ArrayMap<>();
 
     public BatteryTipLoader(Context context, BatteryStatsHelper batteryStatsHelper) {
         super(context);
@@ -62,23 +90,84 @@ public class BatteryTipLoader extends AsyncLoader<List<BatteryTip>> {
         if (USE_FAKE_DATA) {
             return getFakeData();
         }
-        final List<BatteryTip> tips = new ArrayList<>();
         final BatteryTipPolicy policy = new BatteryTipPolicy(getContext());
         final BatteryInfo batteryInfo = mBatteryUtils.getBatteryInfo(mBatteryStatsHelper, TAG);
         final Context context = getContext();
 
-        tips.add(new LowBatteryDetector(context, policy, batteryInfo).detect());
-        tips.add(new HighUsageDetector(context, policy, mBatteryStatsHelper,
-                batteryInfo.discharging).detect());
-        tips.add(new SmartBatteryDetector(policy, context.getContentResolver()).detect());
-        tips.add(new EarlyWarningDetector(policy, context).detect());
-        tips.add(new SummaryDetector(policy, batteryInfo.averageTimeToDischarge).detect());
-        tips.add(new RestrictAppDetector(context, policy).detect());
+        final List<BatteryTipDetector> detectors = new ArrayList<>();
+        detectors.add(new LowBatteryDetector(context, policy, batteryInfo));
+        detectors.add(new HighUsageDetector(context, policy, mBatteryStatsHelper,
+                batteryInfo.discharging));
+        detectors.add(new SmartBatteryDetector(policy, context.getContentResolver()));
+        detectors.add(new EarlyWarningDetector(policy, context));
+        detectors.add(new SummaryDetector(policy, batteryInfo.averageTimeToDischarge));
+        detectors.add(new RestrictAppDetector(context, policy));
 
+        final List<BatteryTip> tips = detect(detectors);
         Collections.sort(tips);
         return tips;
     }
 
+    /**
+     * Runs {@param detectors} concurrently on a bounded pool. The detectors share a budget of
+     * {@link #DETECTOR_TIME_BUDGET_MS} from the time they are submitted, and the tip of a
+     * detector which does not answer in time is left out.
+     */
+    @VisibleForTesting
+    List<BatteryTip> detect(List<BatteryTipDetector> detectors) {
+        final List<BatteryTip> tips = new ArrayList<>();
+        synchronized (mDetectorTimings) {
+            mDetectorTimings.clear();
+        }
+        final long submitTime = System.currentTimeMillis();
+        final long deadline = submitTime + mDetectorTimeBudgetMs;
+        final List<Future<BatteryTip>> futures = new ArrayList<>();
+        final List<AtomicBoolean> cancelled = new ArrayList<>();
+        for (BatteryTipDetector detector : detectors) {
+            final AtomicBoolean detectorCancelled = new AtomicBoolean();
+            cancelled.add(detectorCancelled);
+            futures.add(getExecutor().submit(() -> {
+                final long startTime = System.currentTimeMillis();
+                final BatteryTip tip = detector.detect();
+                putTiming(detector, startTime);
+                if (detectorCancelled.get()) {
+                    Log.w(TAG, detector.getClass().getSimpleName() + " held a detector thread "
+                            + (System.currentTimeMillis() - deadline) + "ms past its budget");
+                }
+                return tip;
+            }));
+        }
+
+        for (int i = 0, size = detectors.size(); i < size; i++) {
+            final BatteryTipDetector detector = detectors.get(i);
+            final Future<BatteryTip> future = futures.get(i);
+            try {
+                tips.add(future.get(Math.max(0, deadline - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS));
+            } catch (TimeoutException e) {
+                Log.w(TAG, "Timed out detecting with " + detector.getClass().getSimpleName());
+                cancelled.get(i).set(true);
+                future.cancel(true /* mayInterruptIfRunning */);
+                putTiming(detector, submitTime);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted detecting battery tips");
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return tips;
+    }
+
+    private void putTiming(BatteryTipDetector detector, long startTime) {
+        final String name = detector.getClass().getSimpleName();
+        BatteryUtils.logRuntime(TAG, "time for " + name, startTime);
+        synchronized (mDetectorTimings) {
+            mDetectorTimings.put(name, System.currentTimeMillis() - startTime);
+        }
+    }
+
     @Override
     protected void onDiscardResult(List<BatteryTip> result) {
     }
@@ -93,4 +182,14 @@ public class BatteryTipLoader extends AsyncLoader<List<BatteryTip>> {
         return tips;
     }
 
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_DETECTORS,
+                    MAX_PARALLEL_DETECTORS, 30 /* keepAliveTime */, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
 }
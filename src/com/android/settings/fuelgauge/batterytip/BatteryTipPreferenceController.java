@@ -35,6 +35,7 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -99,14 +100,28 @@ public class BatteryTipPreferenceController extends BasePreferenceController {
         if (mBatteryTips == null) {
             mBatteryTips = batteryTips;
         } else {
-            // mBatteryTips and batteryTips always have the same length and same sequence.
+            // batteryTips misses the tips whose detector timed out, which keep their last state.
+            boolean added = false;
             for (int i = 0, size = batteryTips.size(); i < size; i++) {
-                mBatteryTips.get(i).updateState(batteryTips.get(i));
+                final BatteryTip batteryTip = batteryTips.get(i);
+                final BatteryTip oldBatteryTip = findBatteryTip(batteryTip.getType());
+                if (oldBatteryTip != null) {
+                    oldBatteryTip.updateState(batteryTip);
+                } else {
+                    if (!added) {
+                        mBatteryTips = new ArrayList<>(mBatteryTips);
+                        added = true;
+                    }
+                    mBatteryTips.add(batteryTip);
+                }
+            }
+            if (added) {
+                Collections.sort(mBatteryTips);
             }
         }
 
         mPreferenceGroup.removeAll();
-        for (int i = 0, size = batteryTips.size(); i < size; i++) {
+        for (int i = 0, size = mBatteryTips.size(); i < size; i++) {
             final BatteryTip batteryTip = mBatteryTips.get(i);
             if (batteryTip.getState() != BatteryTip.StateType.INVISIBLE) {
                 final Preference preference = batteryTip.buildPreference(mPrefContext);
@@ -119,6 +134,15 @@ public class BatteryTipPreferenceController extends BasePreferenceController {
         }
     }
 
+    private BatteryTip findBatteryTip(int type) {
+        for (int i = 0, size = mBatteryTips.size(); i < size; i++) {
+            if (mBatteryTips.get(i).getType() == type) {
+                return mBatteryTips.get(i);
+            }
+        }
+        return null;
+    }
+
     @Override
     public boolean handlePreferenceTreeClick(Preference preference) {
         final BatteryTip batteryTip = mBatteryTipMap.get(preference.getKey());
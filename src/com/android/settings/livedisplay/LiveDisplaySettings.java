@@ -38,6 +38,7 @@ import com.android.settings.SettingsPreferenceFragment;
 import android.provider.SearchIndexableResource;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settings.search.Indexable;
+import com.android.settings.search.NonIndexableKeysCache;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -400,6 +401,13 @@ public class LiveDisplaySettings extends SettingsPreferenceFragment implements I
     public static final SearchIndexProvider SEARCH_INDEX_DATA_PROVIDER =
             new BaseSearchIndexProvider() {
 
+        @Override
+        public NonIndexableKeysCache.Inputs getNonIndexableKeysInputs(Context context) {
+            // The LiveDisplay modes and hardware features are fixed, so the service calls below
+            // only need to be made once.
+            return new NonIndexableKeysCache.Inputs();
+        }
+
         @Override
         public List<String> getNonIndexableKeys(Context context) {
             final LiveDisplayConfig config = LiveDisplayManager.getInstance(context).getConfig();
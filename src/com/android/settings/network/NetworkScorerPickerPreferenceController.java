@@ -46,22 +46,45 @@ public class NetworkScorerPickerPreferenceController extends BasePreferenceContr
     }
 
     @Override
-    public void updateState(Preference preference) {
+    public boolean hasAsyncState() {
+        return true;
+    }
+
+    /**
+     * @return whether the preference is enabled and its summary, as a {@link ScorerState}.
+     */
+    @Override
+    public Object computeState() {
         final List<NetworkScorerAppData> allValidScorers =
                 mNetworkScoreManager.getAllValidScorers();
         boolean enabled = !allValidScorers.isEmpty();
-        preference.setEnabled(enabled);
         if (!enabled) {
-            preference.setSummary(null);
-            return;
+            return new ScorerState(false, null);
         }
 
         NetworkScorerAppData scorer = mNetworkScoreManager.getActiveScorer();
         if (scorer == null) {
-            preference.setSummary(mContext.getString(
+            return new ScorerState(true, mContext.getString(
                     R.string.network_scorer_picker_none_preference));
         } else {
-            preference.setSummary(scorer.getRecommendationServiceLabel());
+            return new ScorerState(true, scorer.getRecommendationServiceLabel());
+        }
+    }
+
+    @Override
+    public void applyState(Preference preference, Object state) {
+        final ScorerState scorerState = (ScorerState) state;
+        preference.setEnabled(scorerState.enabled);
+        preference.setSummary(scorerState.summary);
+    }
+
+    private static class ScorerState {
+        final boolean enabled;
+        final CharSequence summary;
+
+        ScorerState(boolean enabled, CharSequence summary) {
+            this.enabled = enabled;
+            this.summary = summary;
         }
     }
 }
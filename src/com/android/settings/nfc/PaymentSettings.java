@@ -34,6 +34,7 @@ import com.android.settings.R;
 import com.android.settings.SettingsPreferenceFragment;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settings.search.Indexable;
+import com.android.settings.search.NonIndexableKeysCache;
 import com.android.settings.search.SearchIndexableRaw;
 
 import java.util.ArrayList;
@@ -125,6 +126,12 @@ public class PaymentSettings extends SettingsPreferenceFragment implements Index
                 return result;
             }
 
+            @Override
+            public NonIndexableKeysCache.Inputs getNonIndexableKeysInputs(Context context) {
+                // Only depends on the NFC system feature.
+                return new NonIndexableKeysCache.Inputs();
+            }
+
             @Override
             public List<String> getNonIndexableKeys(Context context) {
                 final List<String> nonVisibleKeys = super.getNonIndexableKeys(context);
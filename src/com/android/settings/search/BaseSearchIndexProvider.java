@@ -16,24 +16,25 @@
 
 package com.android.settings.search;
 
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+
 import android.annotation.XmlRes;
 import android.content.Context;
-import android.content.res.XmlResourceParser;
+import android.os.Bundle;
 import android.provider.SearchIndexableResource;
 import android.support.annotation.CallSuper;
 import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
-import android.util.AttributeSet;
 import android.util.Log;
-import android.util.Xml;
 
 import com.android.settings.core.BasePreferenceController;
+import com.android.settings.core.ControllerInstanceCache;
 import com.android.settings.core.PreferenceControllerListHelper;
 import com.android.settings.core.PreferenceControllerMixin;
 import com.android.settings.core.PreferenceXmlParserUtils;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
 import com.android.settingslib.core.AbstractPreferenceController;
 
-import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
@@ -100,8 +101,11 @@ public class BaseSearchIndexProvider implements Indexable.SearchIndexProvider {
         }
         List<BasePreferenceController> controllersFromXml = new ArrayList<>();
         for (SearchIndexableResource sir : res) {
+            // Only queried for indexing, so the xml controllers can be shared with the later
+            // queries made on this thread.
             controllersFromXml.addAll(PreferenceControllerListHelper
-                    .getPreferenceControllersFromXml(context, sir.xmlResId));
+                    .getPreferenceControllersFromXml(context, sir.xmlResId,
+                            ControllerInstanceCache.getInstance()));
         }
         controllersFromXml = PreferenceControllerListHelper.filterControllers(controllersFromXml,
                 controllersFromCode);
@@ -122,6 +126,17 @@ public class BaseSearchIndexProvider implements Indexable.SearchIndexProvider {
         return null;
     }
 
+    /**
+     * Returns the inputs {@link #getNonIndexableKeys} depends on, so that its result can be
+     * cached in {@link NonIndexableKeysCache} until one of them changes. Returns null if they
+     * cannot be declared, in which case the keys are recomputed every time. This is usually the
+     * case for keys coming from preference controllers, whose availability may depend on any
+     * state.
+     */
+    public NonIndexableKeysCache.Inputs getNonIndexableKeysInputs(Context context) {
+        return null;
+    }
+
     /**
      * Returns true if the page should be considered in search query. If return false, entire page
      * will be suppressed during search query.
@@ -146,11 +161,11 @@ public class BaseSearchIndexProvider implements Indexable.SearchIndexProvider {
     @VisibleForTesting(otherwise = VisibleForTesting.PROTECTED)
     public List<String> getNonIndexableKeysFromXml(Context context, @XmlRes int xmlResId) {
         final List<String> nonIndexableKeys = new ArrayList<>();
-        final XmlResourceParser parser = context.getResources().getXml(xmlResId);
-        final AttributeSet attrs = Xml.asAttributeSet(parser);
         try {
-            while (parser.next() != XmlPullParser.END_DOCUMENT) {
-                final String key = PreferenceXmlParserUtils.getDataKey(context, attrs);
+            final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(context,
+                    xmlResId, MetadataFlag.FLAG_INCLUDE_ALL_ELEMENTS | MetadataFlag.FLAG_NEED_KEY);
+            for (Bundle bundle : metadata) {
+                final String key = bundle.getString(METADATA_KEY);
                 if (!TextUtils.isEmpty(key)) {
                     nonIndexableKeys.add(key);
                 }
@@ -17,16 +17,11 @@
 
 package com.android.settings.search;
 
-
-import static com.android.settings.search.DatabaseResultLoader.COLUMN_INDEX_ID;
-import static com.android.settings.search.DatabaseResultLoader
-        .COLUMN_INDEX_INTENT_ACTION_TARGET_PACKAGE;
-import static com.android.settings.search.DatabaseResultLoader.COLUMN_INDEX_KEY;
-import static com.android.settings.search.DatabaseResultLoader.SELECT_COLUMNS;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.CLASS_NAME;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_ENTRIES;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEYWORDS;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_KEY_REF;
+import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_PACKAGE;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.DATA_SUMMARY_ON;
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns
         .DATA_SUMMARY_ON_NORMALIZED;
@@ -45,15 +40,17 @@ import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.SCREE
 import static com.android.settings.search.IndexDatabaseHelper.IndexColumns.USER_ID;
 import static com.android.settings.search.IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
-import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.os.Build;
 import android.os.SystemProperties;
+import android.provider.SearchIndexableData;
+import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesContract;
 import android.provider.SearchIndexablesContract.SiteMapColumns;
 import android.support.annotation.VisibleForTesting;
@@ -63,13 +60,17 @@ import android.util.Log;
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.search.indexing.IndexData;
 import com.android.settings.search.indexing.IndexDataConverter;
+import com.android.settings.search.indexing.IndexDataSnapshot;
 import com.android.settings.search.indexing.PreIndexData;
 import com.android.settings.search.indexing.PreIndexDataCollector;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Consumes the SearchIndexableProvider content providers.
@@ -81,19 +82,98 @@ public class DatabaseIndexingManager {
 
     private static final String LOG_TAG = "DatabaseIndexingManager";
 
+    private static final String TEMP_TABLE_NON_INDEXABLE_KEYS = "temp_non_indexable_keys";
+    private static final String TEMP_COLUMN_PACKAGE = "package";
+    private static final String TEMP_COLUMN_KEY = "key";
+
+    private static final String CREATE_TEMP_NON_INDEXABLE_KEYS_TABLE =
+            "CREATE TEMP TABLE IF NOT EXISTS " + TEMP_TABLE_NON_INDEXABLE_KEYS
+                    + "(" + TEMP_COLUMN_PACKAGE + " TEXT NOT NULL, " + TEMP_COLUMN_KEY + " TEXT)";
+
+    private static final String DROP_TEMP_NON_INDEXABLE_KEYS_TABLE =
+            "DROP TABLE IF EXISTS " + TEMP_TABLE_NON_INDEXABLE_KEYS;
+
+    private static final String INSERT_NON_INDEXABLE_KEY =
+            "INSERT INTO " + TEMP_TABLE_NON_INDEXABLE_KEYS
+                    + "(" + TEMP_COLUMN_PACKAGE + ", " + TEMP_COLUMN_KEY + ") VALUES (?, ?)";
+
+    // Matches a prefs_index row against the non-indexable keys of its package. Rows without a
+    // target package belong to Settings, whose package name is bound as the first argument.
+    private static final String IS_NON_INDEXABLE =
+            "EXISTS (SELECT 1 FROM " + TEMP_TABLE_NON_INDEXABLE_KEYS
+                    + " WHERE " + TEMP_COLUMN_PACKAGE + " = IFNULL("
+                    + TABLE_PREFS_INDEX + "." + INTENT_TARGET_PACKAGE + ", ?)"
+                    + " AND " + TEMP_COLUMN_KEY + " = " + TABLE_PREFS_INDEX + "." + DATA_KEY_REF
+                    + ")";
+
+    private static final String DISABLE_NON_INDEXABLE_RESULTS =
+            "UPDATE " + TABLE_PREFS_INDEX + " SET " + ENABLED + " = 0"
+                    + " WHERE " + ENABLED + " = 1 AND " + IS_NON_INDEXABLE;
+
+    private static final String ENABLE_INDEXABLE_RESULTS =
+            "UPDATE " + TABLE_PREFS_INDEX + " SET " + ENABLED + " = 1"
+                    + " WHERE " + ENABLED + " = 0"
+                    + " AND IFNULL(" + INTENT_TARGET_PACKAGE + ", ?) IN (SELECT "
+                    + TEMP_COLUMN_PACKAGE + " FROM " + TEMP_TABLE_NON_INDEXABLE_KEYS + ")"
+                    + " AND NOT " + IS_NON_INDEXABLE;
+
+    private static final String INSERT_PREFS_INDEX =
+            "INSERT OR REPLACE INTO " + TABLE_PREFS_INDEX + "("
+                    + DOCID + ", "
+                    + LOCALE + ", "
+                    + DATA_TITLE + ", "
+                    + DATA_TITLE_NORMALIZED + ", "
+                    + DATA_SUMMARY_ON + ", "
+                    + DATA_SUMMARY_ON_NORMALIZED + ", "
+                    + DATA_ENTRIES + ", "
+                    + DATA_KEYWORDS + ", "
+                    + CLASS_NAME + ", "
+                    + SCREEN_TITLE + ", "
+                    + INTENT_ACTION + ", "
+                    + INTENT_TARGET_PACKAGE + ", "
+                    + INTENT_TARGET_CLASS + ", "
+                    + ICON + ", "
+                    + ENABLED + ", "
+                    + DATA_KEY_REF + ", "
+                    + USER_ID + ", "
+                    + PAYLOAD_TYPE + ", "
+                    + PAYLOAD + ", "
+                    + DATA_PACKAGE
+                    + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_SITE_MAP =
+            "INSERT OR REPLACE INTO " + IndexDatabaseHelper.Tables.TABLE_SITE_MAP + "("
+                    + SiteMapColumns.PARENT_CLASS + ", "
+                    + SiteMapColumns.PARENT_TITLE + ", "
+                    + SiteMapColumns.CHILD_CLASS + ", "
+                    + SiteMapColumns.CHILD_TITLE
+                    + ") VALUES (?, ?, ?, ?)";
+
     private PreIndexDataCollector mCollector;
     private IndexDataConverter mConverter;
+    private IndexDataSnapshot mSnapshot;
 
     private Context mContext;
+    private IndexDatabaseHelper mDatabaseHelper;
 
     public DatabaseIndexingManager(Context context) {
         mContext = context;
     }
 
+    /**
+     * Indexes into {@param databaseHelper} instead of the search index of the device.
+     */
+    @VisibleForTesting
+    DatabaseIndexingManager(Context context, IndexDatabaseHelper databaseHelper) {
+        mContext = context;
+        mDatabaseHelper = databaseHelper;
+    }
+
     /**
      * Accumulate all data and non-indexable keys from each of the content-providers.
      * Only the first indexing for the default language gets static search results - subsequent
-     * calls will only gather non-indexable keys.
+     * calls will only gather non-indexable keys, and re-index the static data of providers which
+     * were installed, removed or updated since the last indexing.
      */
     public void performIndexing() {
         final long startTime = System.currentTimeMillis();
@@ -106,14 +186,19 @@ public class DatabaseIndexingManager {
         final String providerVersionedNames =
                 IndexDatabaseHelper.buildProviderVersionedNames(providers);
 
-        final boolean isFullIndex = isFullIndex(mContext, localeStr, fingerprint,
-                providerVersionedNames);
+        final boolean isFullIndex = isFullIndex(mContext, localeStr, fingerprint);
 
+        final Set<String> updatedPackages;
         if (isFullIndex) {
             rebuildDatabase();
+            updatedPackages = Collections.emptySet();
+        } else {
+            updatedPackages = IndexDatabaseHelper.getUpdatedProviderPackages(mContext,
+                    providerVersionedNames);
         }
 
-        PreIndexData indexData = getIndexDataFromProviders(providers, isFullIndex);
+        PreIndexData indexData = getIndexDataFromProviders(providers, isFullIndex,
+                updatedPackages);
 
         final long updateDatabaseStartTime = System.currentTimeMillis();
         updateDatabase(indexData, isFullIndex);
@@ -125,42 +210,48 @@ public class DatabaseIndexingManager {
         //TODO(63922686): Setting indexed should be a single method, not 3 separate setters.
         IndexDatabaseHelper.setLocaleIndexed(mContext, localeStr);
         IndexDatabaseHelper.setBuildIndexed(mContext, fingerprint);
-        IndexDatabaseHelper.setProvidersIndexed(mContext, providerVersionedNames);
+        if (indexData.failedPackages.isEmpty()) {
+            IndexDatabaseHelper.setProvidersIndexed(mContext, providerVersionedNames);
+        } else {
+            IndexDatabaseHelper.setProvidersIndexed(mContext, IndexDatabaseHelper
+                    .buildProviderVersionedNames(providers, indexData.failedPackages));
+        }
 
         if (SettingsSearchIndexablesProvider.DEBUG) {
             final long indexingTime = System.currentTimeMillis() - startTime;
             Log.d(LOG_TAG, "performIndexing took time: " + indexingTime
-                    + "ms. Full index? " + isFullIndex);
+                    + "ms. Full index? " + isFullIndex + ", updated packages: " + updatedPackages);
         }
     }
 
     @VisibleForTesting
-    PreIndexData getIndexDataFromProviders(List<ResolveInfo> providers, boolean isFullIndex) {
+    PreIndexData getIndexDataFromProviders(List<ResolveInfo> providers, boolean isFullIndex,
+            Set<String> updatedPackages) {
         if (mCollector == null) {
             mCollector = new PreIndexDataCollector(mContext);
         }
-        return mCollector.collectIndexableData(providers, isFullIndex);
+        return mCollector.collectIndexableData(providers, isFullIndex, updatedPackages);
     }
 
     /**
      * Checks if the indexed data is obsolete, when either:
      * - Device language has changed
      * - Device has taken an OTA.
-     * In both cases, the device requires a full index.
+     * - The set of indexed providers was never recorded.
+     * In all cases, the device requires a full index. Changes to individual providers are
+     * handled by re-indexing only those providers.
      *
      * @param locale      is the default for the device
      * @param fingerprint id for the current build.
      * @return true if a full index should be preformed.
      */
     @VisibleForTesting
-    boolean isFullIndex(Context context, String locale, String fingerprint,
-            String providerVersionedNames) {
+    boolean isFullIndex(Context context, String locale, String fingerprint) {
         final boolean isLocaleIndexed = IndexDatabaseHelper.isLocaleAlreadyIndexed(context, locale);
         final boolean isBuildIndexed = IndexDatabaseHelper.isBuildIndexed(context, fingerprint);
-        final boolean areProvidersIndexed = IndexDatabaseHelper
-                .areProvidersIndexed(context, providerVersionedNames);
+        final boolean hasIndexedProviders = IndexDatabaseHelper.hasIndexedProviders(context);
 
-        return !(isLocaleIndexed && isBuildIndexed && areProvidersIndexed);
+        return !(isLocaleIndexed && isBuildIndexed && hasIndexedProviders);
     }
 
     /**
@@ -170,7 +261,7 @@ public class DatabaseIndexingManager {
         // Drop the database when the locale or build has changed. This eliminates rows which are
         // dynamically inserted in the old language, or deprecated settings.
         final SQLiteDatabase db = getWritableDatabase();
-        IndexDatabaseHelper.getInstance(mContext).reconstruct(db);
+        getDatabaseHelper().reconstruct(db);
     }
 
     /**
@@ -195,13 +286,19 @@ public class DatabaseIndexingManager {
         try {
             database.beginTransaction();
 
-            // Convert all Pre-index data to Index data.
-            List<IndexData> indexData = getIndexData(preIndexData);
-            insertIndexData(database, indexData);
+            // Drop the stale rows of providers which are re-indexed in a partial index.
+            if (!needsReindexing && !preIndexData.updatedPackages.isEmpty()) {
+                deleteIndexDataForPackages(database, preIndexData.updatedPackages);
+            }
+
+            // Convert all Pre-index data to Index data, inserting each row as it is converted.
+            final boolean restoredFromSnapshot =
+                    insertIndexData(database, preIndexData, needsReindexing);
 
             // Only check for non-indexable key updates after initial index.
-            // Enabled state with non-indexable keys is checked when items are first inserted.
-            if (!needsReindexing) {
+            // Enabled state with non-indexable keys is checked when items are first inserted,
+            // except for rows restored from a snapshot taken with older non-indexable keys.
+            if (!needsReindexing || restoredFromSnapshot) {
                 updateDataInDatabase(database, nonIndexableKeys);
             }
 
@@ -211,61 +308,179 @@ public class DatabaseIndexingManager {
         }
     }
 
+    /**
+     * Converts {@param preIndexData} and inserts each of the resulting entries into the
+     * {@param database} as Search Data and as part of the Information Hierarchy.
+     * Rows are streamed from the converter into reusable compiled statements, so the converted
+     * data is never held in memory as a whole.
+     *
+     * On a full index, the static rows of the Settings xml resources are restored from an
+     * {@link IndexDataSnapshot} when one exists for the current locale and build, and snapshotted
+     * otherwise.
+     *
+     * @return true if the static rows were restored from a snapshot.
+     */
     @VisibleForTesting
-    List<IndexData> getIndexData(PreIndexData data) {
+    boolean insertIndexData(SQLiteDatabase database, PreIndexData preIndexData,
+            boolean isFullIndex) {
         if (mConverter == null) {
             mConverter = new IndexDataConverter(mContext);
         }
-        return mConverter.convertPreIndexDataToIndexData(data);
+
+        final SQLiteStatement insertPrefsIndex = database.compileStatement(INSERT_PREFS_INDEX);
+        final SQLiteStatement insertSiteMap = database.compileStatement(INSERT_SITE_MAP);
+        try {
+            final Consumer<IndexData> writer =
+                    dataRow -> insertIndexData(insertPrefsIndex, insertSiteMap, dataRow);
+            if (!isFullIndex) {
+                mConverter.convertPreIndexDataToIndexData(preIndexData, writer);
+                return false;
+            }
+
+            final PreIndexData staticData = new PreIndexData(preIndexData);
+            final PreIndexData dynamicData = new PreIndexData(preIndexData);
+            staticData.dataToUpdate.clear();
+            dynamicData.dataToUpdate.clear();
+            for (SearchIndexableData data : preIndexData.dataToUpdate) {
+                if (isStaticSettingsData(data)) {
+                    staticData.dataToUpdate.add(data);
+                } else {
+                    dynamicData.dataToUpdate.add(data);
+                }
+            }
+
+            final boolean restoredFromSnapshot = insertStaticIndexData(staticData, writer);
+            mConverter.convertPreIndexDataToIndexData(dynamicData, writer);
+            return restoredFromSnapshot;
+        } finally {
+            insertPrefsIndex.close();
+            insertSiteMap.close();
+        }
     }
 
     /**
-     * Inserts all of the entries in {@param indexData} into the {@param database}
-     * as Search Data and as part of the Information Hierarchy.
+     * Inserts the static rows of {@param staticData} through {@param writer}, reading them from
+     * the snapshot if possible and writing the snapshot otherwise.
+     *
+     * The snapshot is only written when the Settings provider was fully crawled, so a failed or
+     * timed out crawl does not hide the Settings rows from every later full index.
+     *
+     * @return true if the rows were restored from the snapshot.
+     */
+    private boolean insertStaticIndexData(PreIndexData staticData, Consumer<IndexData> writer) {
+        if (mSnapshot == null) {
+            mSnapshot = new IndexDataSnapshot(mContext);
+        }
+        final String localeStr = Locale.getDefault().toString();
+        final String snapshotVersion = getSnapshotVersion();
+        if (mSnapshot.read(localeStr, snapshotVersion, writer)) {
+            return true;
+        }
+
+        final List<IndexData> staticRows = new ArrayList<>();
+        mConverter.convertPreIndexDataToIndexData(staticData, dataRow -> {
+            staticRows.add(dataRow);
+            writer.accept(dataRow);
+        });
+        if (staticRows.isEmpty()
+                || staticData.failedPackages.contains(mContext.getPackageName())) {
+            Log.w(LOG_TAG, "Not snapshotting incomplete static index data");
+            return false;
+        }
+        mSnapshot.write(localeStr, snapshotVersion, staticRows);
+        return false;
+    }
+
+    /**
+     * @return the build fingerprint and the last update time of the Settings apk, which together
+     * identify the xml resources the static rows were converted from.
      */
     @VisibleForTesting
-    void insertIndexData(SQLiteDatabase database, List<IndexData> indexData) {
-        ContentValues values;
+    String getSnapshotVersion() {
+        long lastUpdateTime = 0;
+        try {
+            lastUpdateTime = mContext.getPackageManager()
+                    .getPackageInfo(mContext.getPackageName(), 0 /* flags */).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(LOG_TAG, "Cannot find the Settings package", e);
+        }
+        return Build.FINGERPRINT + "/" + lastUpdateTime;
+    }
 
-        for (IndexData dataRow : indexData) {
-            if (TextUtils.isEmpty(dataRow.normalizedTitle)) {
-                continue;
-            }
+    /**
+     * @return true if {@param data} is an xml resource of Settings itself, whose rows only change
+     * with the locale and the build.
+     */
+    private boolean isStaticSettingsData(SearchIndexableData data) {
+        return data instanceof SearchIndexableResource
+                && TextUtils.equals(data.packageName, mContext.getPackageName());
+    }
 
-            values = new ContentValues();
-            values.put(IndexDatabaseHelper.IndexColumns.DOCID, dataRow.getDocId());
-            values.put(LOCALE, dataRow.locale);
-            values.put(DATA_TITLE, dataRow.updatedTitle);
-            values.put(DATA_TITLE_NORMALIZED, dataRow.normalizedTitle);
-            values.put(DATA_SUMMARY_ON, dataRow.updatedSummaryOn);
-            values.put(DATA_SUMMARY_ON_NORMALIZED, dataRow.normalizedSummaryOn);
-            values.put(DATA_ENTRIES, dataRow.entries);
-            values.put(DATA_KEYWORDS, dataRow.spaceDelimitedKeywords);
-            values.put(CLASS_NAME, dataRow.className);
-            values.put(SCREEN_TITLE, dataRow.screenTitle);
-            values.put(INTENT_ACTION, dataRow.intentAction);
-            values.put(INTENT_TARGET_PACKAGE, dataRow.intentTargetPackage);
-            values.put(INTENT_TARGET_CLASS, dataRow.intentTargetClass);
-            values.put(ICON, dataRow.iconResId);
-            values.put(ENABLED, dataRow.enabled);
-            values.put(DATA_KEY_REF, dataRow.key);
-            values.put(USER_ID, dataRow.userId);
-            values.put(PAYLOAD_TYPE, dataRow.payloadType);
-            values.put(PAYLOAD, dataRow.payload);
-
-            database.replaceOrThrow(TABLE_PREFS_INDEX, null, values);
-
-            if (!TextUtils.isEmpty(dataRow.className)
-                    && !TextUtils.isEmpty(dataRow.childClassName)) {
-                final ContentValues siteMapPair = new ContentValues();
-                siteMapPair.put(SiteMapColumns.PARENT_CLASS, dataRow.className);
-                siteMapPair.put(SiteMapColumns.PARENT_TITLE, dataRow.screenTitle);
-                siteMapPair.put(SiteMapColumns.CHILD_CLASS, dataRow.childClassName);
-                siteMapPair.put(SiteMapColumns.CHILD_TITLE, dataRow.updatedTitle);
-
-                database.replaceOrThrow(IndexDatabaseHelper.Tables.TABLE_SITE_MAP,
-                        null /* nullColumnHack */, siteMapPair);
-            }
+    private void insertIndexData(SQLiteStatement insertPrefsIndex, SQLiteStatement insertSiteMap,
+            IndexData dataRow) {
+        if (TextUtils.isEmpty(dataRow.normalizedTitle)) {
+            return;
+        }
+
+        insertPrefsIndex.clearBindings();
+        insertPrefsIndex.bindLong(1, dataRow.getDocId());
+        bindString(insertPrefsIndex, 2, dataRow.locale);
+        bindString(insertPrefsIndex, 3, dataRow.updatedTitle);
+        bindString(insertPrefsIndex, 4, dataRow.normalizedTitle);
+        bindString(insertPrefsIndex, 5, dataRow.updatedSummaryOn);
+        bindString(insertPrefsIndex, 6, dataRow.normalizedSummaryOn);
+        bindString(insertPrefsIndex, 7, dataRow.entries);
+        bindString(insertPrefsIndex, 8, dataRow.spaceDelimitedKeywords);
+        bindString(insertPrefsIndex, 9, dataRow.className);
+        bindString(insertPrefsIndex, 10, dataRow.screenTitle);
+        bindString(insertPrefsIndex, 11, dataRow.intentAction);
+        bindString(insertPrefsIndex, 12, dataRow.intentTargetPackage);
+        bindString(insertPrefsIndex, 13, dataRow.intentTargetClass);
+        insertPrefsIndex.bindLong(14, dataRow.iconResId);
+        insertPrefsIndex.bindLong(15, dataRow.enabled ? 1 : 0);
+        bindString(insertPrefsIndex, 16, dataRow.key);
+        insertPrefsIndex.bindLong(17, dataRow.userId);
+        insertPrefsIndex.bindLong(18, dataRow.payloadType);
+        if (dataRow.payload != null) {
+            insertPrefsIndex.bindBlob(19, dataRow.payload);
+        }
+        bindString(insertPrefsIndex, 20, dataRow.packageName);
+        insertPrefsIndex.executeInsert();
+
+        if (!TextUtils.isEmpty(dataRow.className)
+                && !TextUtils.isEmpty(dataRow.childClassName)) {
+            insertSiteMap.clearBindings();
+            bindString(insertSiteMap, 1, dataRow.className);
+            bindString(insertSiteMap, 2, dataRow.screenTitle);
+            bindString(insertSiteMap, 3, dataRow.childClassName);
+            bindString(insertSiteMap, 4, dataRow.updatedTitle);
+            insertSiteMap.executeInsert();
+        }
+    }
+
+    /**
+     * Binds {@param value} at {@param index}, or leaves the cleared binding as null.
+     */
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        }
+    }
+
+    /**
+     * Deletes the Search Data and Information Hierarchy rows contributed by each of the
+     * {@param packageNames} from the {@param database}.
+     */
+    @VisibleForTesting
+    void deleteIndexDataForPackages(SQLiteDatabase database, Set<String> packageNames) {
+        final String whereSiteMap = SiteMapColumns.PARENT_CLASS + " IN (SELECT " + CLASS_NAME
+                + " FROM " + TABLE_PREFS_INDEX + " WHERE " + DATA_PACKAGE + " = ?)";
+        final String wherePrefsIndex = DATA_PACKAGE + " = ?";
+
+        for (String packageName : packageNames) {
+            final String[] whereArgs = {packageName};
+            database.delete(IndexDatabaseHelper.Tables.TABLE_SITE_MAP, whereSiteMap, whereArgs);
+            database.delete(TABLE_PREFS_INDEX, wherePrefsIndex, whereArgs);
         }
     }
 
@@ -274,76 +489,68 @@ public class DatabaseIndexingManager {
      * All rows which are enabled but are now flagged with non-indexable keys will become disabled.
      * All rows which are disabled but no longer a non-indexable key will become enabled.
      *
+     * The non-indexable keys are loaded into a temporary table so the ENABLED column can be
+     * reconciled with two set-based statements instead of one update per changed row.
+     *
      * @param database         The database to validate.
      * @param nonIndexableKeys A map between package name and the set of non-indexable keys for it.
      */
     @VisibleForTesting
     void updateDataInDatabase(SQLiteDatabase database,
             Map<String, Set<String>> nonIndexableKeys) {
-        final String whereEnabled = ENABLED + " = 1";
-        final String whereDisabled = ENABLED + " = 0";
-
-        final Cursor enabledResults = database.query(TABLE_PREFS_INDEX, SELECT_COLUMNS,
-                whereEnabled, null, null, null, null);
-
-        final ContentValues enabledToDisabledValue = new ContentValues();
-        enabledToDisabledValue.put(ENABLED, 0);
-
-        String packageName;
-        // TODO Refactor: Move these two loops into one method.
-        while (enabledResults.moveToNext()) {
-            // Package name is the key for remote providers.
-            // If package name is null, the provider is Settings.
-            packageName = enabledResults.getString(COLUMN_INDEX_INTENT_ACTION_TARGET_PACKAGE);
-            if (packageName == null) {
-                packageName = mContext.getPackageName();
-            }
-
-            final String key = enabledResults.getString(COLUMN_INDEX_KEY);
-            final Set<String> packageKeys = nonIndexableKeys.get(packageName);
-
-            // The indexed item is set to Enabled but is now non-indexable
-            if (packageKeys != null && packageKeys.contains(key)) {
-                final String whereClause = DOCID + " = " + enabledResults.getInt(COLUMN_INDEX_ID);
-                database.update(TABLE_PREFS_INDEX, enabledToDisabledValue, whereClause, null);
-            }
+        if (nonIndexableKeys.isEmpty()) {
+            // Keys from unrecognized packages are never enabled, so there is nothing to update.
+            return;
         }
-        enabledResults.close();
-
-        final Cursor disabledResults = database.query(TABLE_PREFS_INDEX, SELECT_COLUMNS,
-                whereDisabled, null, null, null, null);
 
-        final ContentValues disabledToEnabledValue = new ContentValues();
-        disabledToEnabledValue.put(ENABLED, 1);
+        database.execSQL(CREATE_TEMP_NON_INDEXABLE_KEYS_TABLE);
+        try {
+            final SQLiteStatement insertKey = database.compileStatement(INSERT_NON_INDEXABLE_KEY);
+            try {
+                for (Map.Entry<String, Set<String>> entry : nonIndexableKeys.entrySet()) {
+                    // Every package gets a row with a null key, so packages without any
+                    // non-indexable keys are still recognized when enabling their results.
+                    insertKey.bindString(1, entry.getKey());
+                    insertKey.bindNull(2);
+                    insertKey.executeInsert();
+
+                    for (String key : entry.getValue()) {
+                        if (key == null) {
+                            continue;
+                        }
+                        insertKey.bindString(1, entry.getKey());
+                        insertKey.bindString(2, key);
+                        insertKey.executeInsert();
+                    }
+                }
+            } finally {
+                insertKey.close();
+            }
 
-        while (disabledResults.moveToNext()) {
             // Package name is the key for remote providers.
             // If package name is null, the provider is Settings.
-            packageName = disabledResults.getString(COLUMN_INDEX_INTENT_ACTION_TARGET_PACKAGE);
-            if (packageName == null) {
-                packageName = mContext.getPackageName();
-            }
-
-            final String key = disabledResults.getString(COLUMN_INDEX_KEY);
-            final Set<String> packageKeys = nonIndexableKeys.get(packageName);
-
-            // The indexed item is set to Disabled but is no longer non-indexable.
-            // We do not enable keys when packageKeys is null because it means the keys came
-            // from an unrecognized package and therefore should not be surfaced as results.
-            if (packageKeys != null && !packageKeys.contains(key)) {
-                String whereClause = DOCID + " = " + disabledResults.getInt(COLUMN_INDEX_ID);
-                database.update(TABLE_PREFS_INDEX, disabledToEnabledValue, whereClause, null);
-            }
+            final String settingsPackage = mContext.getPackageName();
+            database.execSQL(DISABLE_NON_INDEXABLE_RESULTS, new String[] {settingsPackage});
+            // We do not enable keys from packages without an entry, because it means the keys
+            // came from an unrecognized package and therefore should not be surfaced as results.
+            database.execSQL(ENABLE_INDEXABLE_RESULTS,
+                    new String[] {settingsPackage, settingsPackage});
+        } finally {
+            database.execSQL(DROP_TEMP_NON_INDEXABLE_KEYS_TABLE);
         }
-        disabledResults.close();
     }
 
     private SQLiteDatabase getWritableDatabase() {
         try {
-            return IndexDatabaseHelper.getInstance(mContext).getWritableDatabase();
+            return getDatabaseHelper().getWritableDatabase();
         } catch (SQLiteException e) {
             Log.e(LOG_TAG, "Cannot open writable database", e);
             return null;
         }
     }
+
+    private IndexDatabaseHelper getDatabaseHelper() {
+        return mDatabaseHelper != null
+                ? mDatabaseHelper : IndexDatabaseHelper.getInstance(mContext);
+    }
 }
@@ -27,14 +27,19 @@ import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.Log;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class IndexDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String TAG = "IndexDatabaseHelper";
 
     private static final String DATABASE_NAME = "search_index.db";
-    private static final int DATABASE_VERSION = 118;
+    private static final int DATABASE_VERSION = 119;
 
     private static final String SHARED_PREFS_TAG = "indexing_manager";
 
@@ -70,6 +75,7 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
         String USER_ID = "user_id";
         String PAYLOAD_TYPE = "payload_type";
         String PAYLOAD = "payload";
+        String DATA_PACKAGE = "data_package";
     }
 
     public interface MetaColumns {
@@ -125,6 +131,8 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                     IndexColumns.PAYLOAD_TYPE +
                     ", " +
                     IndexColumns.PAYLOAD +
+                    ", " +
+                    IndexColumns.DATA_PACKAGE +
                     ");";
 
     private static final String CREATE_META_TABLE =
@@ -251,8 +259,20 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
 
     @VisibleForTesting
     static String buildProviderVersionedNames(List<ResolveInfo> providers) {
+        return buildProviderVersionedNames(providers, Collections.emptySet());
+    }
+
+    /**
+     * Same as {@link #buildProviderVersionedNames(List)}, leaving out the providers of
+     * {@param excludedPackages} so that they are treated as updated by the next index.
+     */
+    static String buildProviderVersionedNames(List<ResolveInfo> providers,
+            Set<String> excludedPackages) {
         StringBuilder sb = new StringBuilder();
         for (ResolveInfo info : providers) {
+            if (excludedPackages.contains(info.providerInfo.packageName)) {
+                continue;
+            }
             sb.append(info.providerInfo.packageName)
                     .append(':')
                     .append(info.providerInfo.applicationInfo.longVersionCode)
@@ -280,11 +300,53 @@ public class IndexDatabaseHelper extends SQLiteOpenHelper {
                 .getBoolean(locale, false);
     }
 
-    static boolean areProvidersIndexed(Context context, String providerVersionedNames) {
+    static boolean hasIndexedProviders(Context context) {
+        return context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
+                .contains(PREF_KEY_INDEXED_PROVIDERS);
+    }
+
+    /**
+     * Compares {@param providerVersionedNames} against the providers recorded by the last index.
+     *
+     * @return the packages whose provider was added, removed or changed version since then.
+     */
+    static Set<String> getUpdatedProviderPackages(Context context,
+            String providerVersionedNames) {
         final String indexedProviders =
                 context.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
                         .getString(PREF_KEY_INDEXED_PROVIDERS, null);
-        return TextUtils.equals(indexedProviders, providerVersionedNames);
+        final Map<String, String> indexedVersions = parseProviderVersionedNames(indexedProviders);
+        final Map<String, String> currentVersions =
+                parseProviderVersionedNames(providerVersionedNames);
+
+        final Set<String> updatedPackages = new HashSet<>();
+        for (Map.Entry<String, String> entry : currentVersions.entrySet()) {
+            if (!TextUtils.equals(entry.getValue(), indexedVersions.get(entry.getKey()))) {
+                updatedPackages.add(entry.getKey());
+            }
+        }
+        for (String packageName : indexedVersions.keySet()) {
+            if (!currentVersions.containsKey(packageName)) {
+                updatedPackages.add(packageName);
+            }
+        }
+        return updatedPackages;
+    }
+
+    @VisibleForTesting
+    static Map<String, String> parseProviderVersionedNames(String providerVersionedNames) {
+        final Map<String, String> versions = new HashMap<>();
+        if (TextUtils.isEmpty(providerVersionedNames)) {
+            return versions;
+        }
+        for (String provider : providerVersionedNames.split(",")) {
+            final int separator = provider.lastIndexOf(':');
+            if (separator <= 0) {
+                continue;
+            }
+            versions.put(provider.substring(0, separator), provider.substring(separator + 1));
+        }
+        return versions;
     }
 
     static boolean isBuildIndexed(Context context, String buildNo) {
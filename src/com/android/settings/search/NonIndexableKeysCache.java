@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.UserManager;
+import android.provider.Settings;
+import android.support.annotation.VisibleForTesting;
+import android.util.FeatureFlagUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Caches the non-indexable keys of the {@link BaseSearchIndexProvider}s which declare the inputs
+ * their keys depend on, see {@link BaseSearchIndexProvider#getNonIndexableKeysInputs}.
+ *
+ * Each entry remembers the values its inputs had when the keys were computed, and is only
+ * recomputed once one of those values changes. The last keys computed by every provider are also
+ * kept, so they can stand in for a provider which is too slow to answer.
+ */
+public class NonIndexableKeysCache {
+
+    private static NonIndexableKeysCache sInstance;
+
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+
+    public static synchronized NonIndexableKeysCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new NonIndexableKeysCache();
+        }
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    NonIndexableKeysCache() {
+    }
+
+    /**
+     * @return a copy of the keys cached for {@param className} if they were computed with the
+     * same {@param inputValues}, or null if they need to be recomputed.
+     */
+    public List<String> get(String className, List<String> inputValues) {
+        final Entry entry = mEntries.get(className);
+        if (entry == null || entry.inputValues == null
+                || !entry.inputValues.equals(inputValues)) {
+            return null;
+        }
+        return new ArrayList<>(entry.keys);
+    }
+
+    /**
+     * @return a copy of the keys last computed for {@param className} whatever their inputs, or
+     * null if they were never computed.
+     */
+    public List<String> getLastKnown(String className) {
+        final Entry entry = mEntries.get(className);
+        return entry == null ? null : new ArrayList<>(entry.keys);
+    }
+
+    /**
+     * Caches the {@param keys} of {@param className} computed with {@param inputValues}, which
+     * are null if the provider declares no inputs. Such keys are only returned by
+     * {@link #getLastKnown}.
+     */
+    public void put(String className, List<String> inputValues, List<String> keys) {
+        mEntries.put(className, new Entry(inputValues,
+                keys == null ? new ArrayList<>() : new ArrayList<>(keys)));
+    }
+
+    public void clear() {
+        mEntries.clear();
+    }
+
+    private static class Entry {
+        final List<String> inputValues;
+        final List<String> keys;
+
+        Entry(List<String> inputValues, List<String> keys) {
+            this.inputValues = inputValues;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * The inputs the non-indexable keys of a provider depend on. Every input must be cheap to
+     * read, as they are all read each time the keys are requested.
+     */
+    public static class Inputs {
+
+        private final List<Function<Context, String>> mReaders = new ArrayList<>();
+
+        public Inputs addGlobalSetting(String name) {
+            mReaders.add(context -> "global:" + name + "="
+                    + Settings.Global.getString(context.getContentResolver(), name));
+            return this;
+        }
+
+        public Inputs addSecureSetting(String name) {
+            mReaders.add(context -> "secure:" + name + "="
+                    + Settings.Secure.getString(context.getContentResolver(), name));
+            return this;
+        }
+
+        public Inputs addSystemSetting(String name) {
+            mReaders.add(context -> "system:" + name + "="
+                    + Settings.System.getString(context.getContentResolver(), name));
+            return this;
+        }
+
+        public Inputs addUserRestriction(String restriction) {
+            mReaders.add(context -> "restriction:" + restriction + "="
+                    + context.getSystemService(UserManager.class)
+                    .hasUserRestriction(restriction));
+            return this;
+        }
+
+        public Inputs addFeatureFlag(String flag) {
+            mReaders.add(context -> "flag:" + flag + "="
+                    + FeatureFlagUtils.isEnabled(context, flag));
+            return this;
+        }
+
+        /**
+         * Depends on whether {@param packageName} is installed, and on its version and enabled
+         * state.
+         */
+        public Inputs addPackage(String packageName) {
+            mReaders.add(context -> "package:" + packageName + "="
+                    + readPackageState(context, packageName));
+            return this;
+        }
+
+        /**
+         * @return the current values of the inputs, compared with {@link List#equals}.
+         */
+        public List<String> read(Context context) {
+            final List<String> values = new ArrayList<>(mReaders.size());
+            for (Function<Context, String> reader : mReaders) {
+                values.add(reader.apply(context));
+            }
+            return values;
+        }
+
+        private static String readPackageState(Context context, String packageName) {
+            try {
+                final PackageInfo info = context.getPackageManager()
+                        .getPackageInfo(packageName, 0 /* flags */);
+                return info.getLongVersionCode() + ":" + info.lastUpdateTime + ":"
+                        + (info.applicationInfo != null && info.applicationInfo.enabled);
+            } catch (PackageManager.NameNotFoundException e) {
+                return null;
+            }
+        }
+    }
+}
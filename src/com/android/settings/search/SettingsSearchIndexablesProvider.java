@@ -50,6 +50,7 @@ import android.database.MatrixCursor;
 import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesContract;
 import android.provider.SearchIndexablesProvider;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 import android.util.ArraySet;
 import android.util.Log;
@@ -59,9 +60,22 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
 
@@ -84,6 +98,23 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         INVALID_KEYS.add("");
     }
 
+    private static final int MAX_PARALLEL_PROVIDERS = 4;
+
+    @VisibleForTesting
+    static final long PROVIDER_TIME_BUDGET_MS = 2000;
+
+    private static final int SLOWEST_PROVIDERS_TO_DUMP = 10;
+
+    private static ExecutorService sExecutor;
+
+    /**
+     * Timings of the last non-indexable keys query, replaced as a whole once a query completes.
+     */
+    private volatile QueryTimings mLastQueryTimings = new QueryTimings();
+
+    @VisibleForTesting
+    NonIndexableKeysCache mNonIndexableKeysCache = NonIndexableKeysCache.getInstance();
+
     @Override
     public boolean onCreate() {
         return true;
@@ -184,55 +215,189 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         return cursor;
     }
 
+    /**
+     * Prints the providers which took the longest to compute their non-indexable keys during the
+     * last query, to find the offenders slowing down search.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        final QueryTimings queryTimings = mLastQueryTimings;
+        final List<Map.Entry<String, Long>> timings =
+                new ArrayList<>(queryTimings.providerTimings.entrySet());
+        Collections.sort(timings, (a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        writer.println("Slowest non-indexable key providers:");
+        final int count = Math.min(timings.size(), SLOWEST_PROVIDERS_TO_DUMP);
+        for (int i = 0; i < count; i++) {
+            final String className = timings.get(i).getKey();
+            writer.print("  ");
+            writer.print(className);
+            writer.print(": ");
+            writer.print(timings.get(i).getValue());
+            writer.println(queryTimings.timedOutProviders.contains(className)
+                    ? "ms (timed out)" : "ms");
+        }
+    }
+
+    /**
+     * Computes the non-indexable keys of every provider concurrently on a bounded pool. The
+     * providers share a budget of {@link #PROVIDER_TIME_BUDGET_MS} to answer. A provider which
+     * does not answer in time is replaced by the keys it last computed, or waited for if it never
+     * computed any, so that its hidden settings are never reported as indexable.
+     * The keys are combined in the order of the providers.
+     */
     private List<String> getNonIndexableKeysFromProvider(Context context) {
         final Collection<Class> values = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
         final List<String> nonIndexableKeys = new ArrayList<>();
 
+        final QueryTimings timings = new QueryTimings();
+        final long startTime = System.currentTimeMillis();
+        final long deadline = startTime + PROVIDER_TIME_BUDGET_MS;
+        final List<Future<List<String>>> futures = new ArrayList<>();
         for (Class<?> clazz : values) {
-            final long startTime = System.currentTimeMillis();
-            Indexable.SearchIndexProvider provider = DatabaseIndexingUtils.getSearchIndexProvider(
-                    clazz);
+            futures.add(getExecutor().submit(() -> getNonIndexableKeys(context, clazz, timings)));
+        }
 
+        int i = 0;
+        for (Class<?> clazz : values) {
+            final Future<List<String>> future = futures.get(i++);
             List<String> providerNonIndexableKeys;
             try {
-                providerNonIndexableKeys = provider.getNonIndexableKeys(context);
-            } catch (Exception e) {
-                // Catch a generic crash. In the absence of the catch, the background thread will
-                // silently fail anyway, so we aren't losing information by catching the exception.
-                // We crash when the system property exists so that we can test if crashes need to
-                // be fixed.
-                // The gain is that if there is a crash in a specific controller, we don't lose all
-                // non-indexable keys, but we can still find specific crashes in development.
-                if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
-                    throw new RuntimeException(e);
-                }
-                Log.e(TAG, "Error trying to get non-indexable keys from: " + clazz.getName() , e);
-                continue;
+                providerNonIndexableKeys =
+                        getWithinDeadline(clazz, future, startTime, deadline, timings);
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted getting non-indexable keys");
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // Only reached when crashing on errors is requested, see #getNonIndexableKeys.
+                throw new RuntimeException(e.getCause());
             }
 
-            if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
-                if (DEBUG) {
-                    final long totalTime = System.currentTimeMillis() - startTime;
-                    Log.d(TAG, "No indexable, total time " + totalTime);
-                }
-                continue;
+            if (providerNonIndexableKeys != null) {
+                nonIndexableKeys.addAll(providerNonIndexableKeys);
             }
+        }
 
-            if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
-                Log.v(TAG, provider + " tried to add an empty non-indexable key");
+        mLastQueryTimings = timings;
+        return nonIndexableKeys;
+    }
+
+    /**
+     * @return the keys computed by {@param future} if it completes before {@param deadline}, or
+     * else the keys last computed for {@param clazz}, or else the keys of {@param future} once it
+     * completes.
+     */
+    private List<String> getWithinDeadline(Class<?> clazz, Future<List<String>> future,
+            long startTime, long deadline, QueryTimings timings)
+            throws InterruptedException, ExecutionException {
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timings.timedOutProviders.add(clazz.getName());
+            timings.providerTimings.putIfAbsent(clazz.getName(),
+                    System.currentTimeMillis() - startTime);
+        }
+
+        final List<String> lastKnownKeys = mNonIndexableKeysCache.getLastKnown(clazz.getName());
+        if (lastKnownKeys == null) {
+            Log.w(TAG, "Waiting past the time budget for non-indexable keys from: "
+                    + clazz.getName());
+            return future.get();
+        }
+        Log.w(TAG, "Timed out getting non-indexable keys from: " + clazz.getName()
+                + ", using the last known keys");
+        future.cancel(true /* mayInterruptIfRunning */);
+        return lastKnownKeys.isEmpty() ? null : lastKnownKeys;
+    }
+
+    /**
+     * @return the valid non-indexable keys of the provider of {@param clazz}, or null if it has
+     * none or failed to compute them.
+     */
+    private List<String> getNonIndexableKeys(Context context, Class<?> clazz,
+            QueryTimings timings) {
+        final long startTime = System.currentTimeMillis();
+        Indexable.SearchIndexProvider provider = DatabaseIndexingUtils.getSearchIndexProvider(
+                clazz);
+
+        // Read the inputs before computing the keys, so that a change racing with the
+        // computation invalidates the entry next time.
+        final NonIndexableKeysCache.Inputs inputs = provider instanceof BaseSearchIndexProvider
+                ? ((BaseSearchIndexProvider) provider).getNonIndexableKeysInputs(context)
+                : null;
+        final List<String> inputValues = inputs != null ? inputs.read(context) : null;
+        if (inputValues != null) {
+            final List<String> cachedKeys = mNonIndexableKeysCache.get(clazz.getName(),
+                    inputValues);
+            if (cachedKeys != null) {
+                timings.providerTimings.put(clazz.getName(),
+                        System.currentTimeMillis() - startTime);
+                return cachedKeys.isEmpty() ? null : cachedKeys;
             }
+        }
 
+        List<String> providerNonIndexableKeys;
+        try {
+            providerNonIndexableKeys = provider.getNonIndexableKeys(context);
+        } catch (Exception e) {
+            // Catch a generic crash. In the absence of the catch, the background thread will
+            // silently fail anyway, so we aren't losing information by catching the exception.
+            // We crash when the system property exists so that we can test if crashes need to
+            // be fixed.
+            // The gain is that if there is a crash in a specific controller, we don't lose all
+            // non-indexable keys, but we can still find specific crashes in development.
+            if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
+                throw new RuntimeException(e);
+            }
+            Log.e(TAG, "Error trying to get non-indexable keys from: " + clazz.getName() , e);
+            return null;
+        } finally {
+            timings.providerTimings.put(clazz.getName(), System.currentTimeMillis() - startTime);
+        }
+
+        if (providerNonIndexableKeys != null
+                && providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
+            Log.v(TAG, provider + " tried to add an empty non-indexable key");
+        }
+        mNonIndexableKeysCache.put(clazz.getName(), inputValues, providerNonIndexableKeys);
+
+        if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
             if (DEBUG) {
                 final long totalTime = System.currentTimeMillis() - startTime;
-                Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
-                        + totalTime);
+                Log.d(TAG, "No indexable, total time " + totalTime);
             }
+            return null;
+        }
+
+        if (DEBUG) {
+            final long totalTime = System.currentTimeMillis() - startTime;
+            Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
+                    + totalTime);
+        }
+        return providerNonIndexableKeys;
+    }
 
-            nonIndexableKeys.addAll(providerNonIndexableKeys);
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_PROVIDERS,
+                    MAX_PARALLEL_PROVIDERS, 30 /* keepAliveTime */, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
         }
+        return sExecutor;
+    }
 
-        return nonIndexableKeys;
+    /**
+     * Time in milliseconds each provider took to compute its non-indexable keys in one query, and
+     * the providers which did not answer within the budget.
+     */
+    private static class QueryTimings {
+        final Map<String, Long> providerTimings = new ConcurrentHashMap<>();
+        final Set<String> timedOutProviders = ConcurrentHashMap.newKeySet();
     }
 
     private List<SearchIndexableResource> getSearchIndexableResourcesFromProvider(Context context) {
@@ -27,6 +27,10 @@ import com.android.settings.search.DatabaseIndexingUtils;
 import com.android.settings.search.ResultPayload;
 import com.android.settings.search.ResultPayloadUtils;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.Normalizer;
 import java.util.Locale;
 import java.util.Objects;
@@ -55,6 +59,7 @@ public class IndexData {
     public final int userId;
     public final int payloadType;
     public final byte[] payload;
+    public final String packageName;
 
     private static final String NON_BREAKING_HYPHEN = "\u2011";
     private static final String EMPTY = "";
@@ -93,6 +98,91 @@ public class IndexData {
         payloadType = builder.mPayloadType;
         payload = builder.mPayload != null ? ResultPayloadUtils.marshall(builder.mPayload)
                 : null;
+        packageName = builder.mPackageName;
+    }
+
+    private IndexData(ByteBuffer in) {
+        locale = readString(in);
+        updatedTitle = readString(in);
+        normalizedTitle = readString(in);
+        updatedSummaryOn = readString(in);
+        normalizedSummaryOn = readString(in);
+        entries = readString(in);
+        className = readString(in);
+        childClassName = readString(in);
+        screenTitle = readString(in);
+        iconResId = in.getInt();
+        spaceDelimitedKeywords = readString(in);
+        intentAction = readString(in);
+        intentTargetPackage = readString(in);
+        intentTargetClass = readString(in);
+        enabled = in.get() != 0;
+        key = readString(in);
+        userId = in.getInt();
+        payloadType = in.getInt();
+        payload = readBytes(in);
+        packageName = readString(in);
+    }
+
+    /**
+     * Writes this row to {@param out}, to be restored by {@link #readFrom(ByteBuffer)}.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        writeString(out, locale);
+        writeString(out, updatedTitle);
+        writeString(out, normalizedTitle);
+        writeString(out, updatedSummaryOn);
+        writeString(out, normalizedSummaryOn);
+        writeString(out, entries);
+        writeString(out, className);
+        writeString(out, childClassName);
+        writeString(out, screenTitle);
+        out.writeInt(iconResId);
+        writeString(out, spaceDelimitedKeywords);
+        writeString(out, intentAction);
+        writeString(out, intentTargetPackage);
+        writeString(out, intentTargetClass);
+        out.writeByte(enabled ? 1 : 0);
+        writeString(out, key);
+        out.writeInt(userId);
+        out.writeInt(payloadType);
+        writeBytes(out, payload);
+        writeString(out, packageName);
+    }
+
+    /**
+     * Restores a row written by {@link #writeTo(DataOutputStream)}.
+     */
+    static IndexData readFrom(ByteBuffer in) {
+        return new IndexData(in);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static String readString(ByteBuffer in) {
+        final byte[] value = readBytes(in);
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    private static byte[] readBytes(ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] value = new byte[length];
+        in.get(value);
+        return value;
     }
 
     /**
@@ -175,6 +265,7 @@ public class IndexData {
         @ResultPayload.PayloadType
         private int mPayloadType;
         private ResultPayload mPayload;
+        private String mPackageName;
 
         public Builder setTitle(String title) {
             mTitle = title;
@@ -255,6 +346,11 @@ public class IndexData {
             return this;
         }
 
+        public Builder setPackageName(String packageName) {
+            mPackageName = packageName;
+            return this;
+        }
+
         /**
          * Payload type is added when a Payload is added to the Builder in {setPayload}
          *
@@ -17,24 +17,33 @@
 
 package com.android.settings.search.indexing;
 
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_CHILD_FRAGMENT;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ENTRIES;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_ICON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_KEYWORDS;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_PREF_TYPE;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY_OFF;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_SUMMARY_ON;
+import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_TITLE;
+
 import android.annotation.Nullable;
 import android.content.Context;
 import android.content.res.Resources;
-import android.content.res.XmlResourceParser;
+import android.os.Bundle;
 import android.provider.SearchIndexableData;
 import android.provider.SearchIndexableResource;
 import android.support.annotation.DrawableRes;
 import android.text.TextUtils;
-import android.util.AttributeSet;
 import android.util.Log;
-import android.util.Xml;
 
 import com.android.settings.search.DatabaseIndexingUtils;
 import com.android.settings.core.PreferenceXmlParserUtils;
+import com.android.settings.core.PreferenceXmlParserUtils.MetadataFlag;
 import com.android.settings.search.ResultPayload;
 import com.android.settings.search.SearchIndexableRaw;
 
-import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
@@ -44,6 +53,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Helper class to convert {@link PreIndexData} to {@link IndexData}.
@@ -56,6 +66,17 @@ public class IndexDataConverter {
     private static final String NODE_NAME_CHECK_BOX_PREFERENCE = "CheckBoxPreference";
     private static final String NODE_NAME_LIST_PREFERENCE = "ListPreference";
 
+    private static final int RESOURCE_METADATA_FLAGS = MetadataFlag.FLAG_INCLUDE_ALL_ELEMENTS
+            | MetadataFlag.FLAG_NEED_PREF_TYPE
+            | MetadataFlag.FLAG_NEED_KEY
+            | MetadataFlag.FLAG_NEED_PREF_TITLE
+            | MetadataFlag.FLAG_NEED_PREF_SUMMARY
+            | MetadataFlag.FLAG_NEED_PREF_ICON
+            | MetadataFlag.FLAG_NEED_KEYWORDS
+            | MetadataFlag.FLAG_NEED_ENTRIES
+            | MetadataFlag.FLAG_NEED_SUMMARY_ON_OFF
+            | MetadataFlag.FLAG_NEED_CHILD_FRAGMENT;
+
     private final Context mContext;
 
     public IndexDataConverter(Context context) {
@@ -69,10 +90,23 @@ public class IndexDataConverter {
      *                     {@link SearchIndexableRaw} and non-indexable keys.
      */
     public List<IndexData> convertPreIndexDataToIndexData(PreIndexData preIndexData) {
+        final List<IndexData> indexData = new ArrayList<>();
+        convertPreIndexDataToIndexData(preIndexData, indexData::add);
+        return indexData;
+    }
+
+    /**
+     * Converts {@param preIndexData} into {@link IndexData}, handing each row to
+     * {@param consumer} as soon as it is converted instead of collecting all of them first.
+     *
+     * @param preIndexData a collection of {@link SearchIndexableResource},
+     *                     {@link SearchIndexableRaw} and non-indexable keys.
+     */
+    public void convertPreIndexDataToIndexData(PreIndexData preIndexData,
+            Consumer<IndexData> consumer) {
         final long current = System.currentTimeMillis();
         final List<SearchIndexableData> indexableData = preIndexData.dataToUpdate;
         final Map<String, Set<String>> nonIndexableKeys = preIndexData.nonIndexableKeys;
-        final List<IndexData> indexData = new ArrayList<>();
 
         for (SearchIndexableData data : indexableData) {
             if (data instanceof SearchIndexableRaw) {
@@ -82,22 +116,19 @@ public class IndexDataConverter {
                 final IndexData.Builder builder = convertRaw(rawData, rawNonIndexableKeys);
 
                 if (builder != null) {
-                    indexData.add(builder.build(mContext));
+                    consumer.accept(builder.build(mContext));
                 }
             } else if (data instanceof SearchIndexableResource) {
                 final SearchIndexableResource sir = (SearchIndexableResource) data;
                 final Set<String> resourceNonIndexableKeys =
                         getNonIndexableKeysForResource(nonIndexableKeys, sir.packageName);
-                final List<IndexData> resourceData = convertResource(sir, resourceNonIndexableKeys);
-                indexData.addAll(resourceData);
+                convertResource(sir, resourceNonIndexableKeys, consumer);
             }
         }
 
         final long endConversion = System.currentTimeMillis();
         Log.d(LOG_TAG, "Converting pre-index data to index data took: "
                 + (endConversion - current));
-
-        return indexData;
     }
 
     /**
@@ -123,45 +154,40 @@ public class IndexDataConverter {
                 .setIntentTargetClass(raw.intentTargetClass)
                 .setEnabled(enabled)
                 .setKey(raw.key)
-                .setUserId(raw.userId);
+                .setUserId(raw.userId)
+                .setPackageName(raw.packageName);
 
         return builder;
     }
 
     /**
-     * Return the conversion of the {@link SearchIndexableResource} to {@link IndexData}.
+     * Convert the {@link SearchIndexableResource} to {@link IndexData} rows for {@param consumer}.
      * Each of the elements in the xml layout attribute of {@param sir} is a candidate to be
      * converted (including the header element).
      *
      * TODO (b/33577327) simplify this method.
      */
-    private List<IndexData> convertResource(SearchIndexableResource sir,
-            Set<String> nonIndexableKeys) {
+    private void convertResource(SearchIndexableResource sir, Set<String> nonIndexableKeys,
+            Consumer<IndexData> consumer) {
         final Context context = sir.context;
-        XmlResourceParser parser = null;
 
-        List<IndexData> resourceIndexData = new ArrayList<>();
         try {
-            parser = context.getResources().getXml(sir.xmlResId);
-
-            int type;
-            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT
-                    && type != XmlPullParser.START_TAG) {
-                // Parse next until start tag is found
+            final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(context,
+                    sir.xmlResId, RESOURCE_METADATA_FLAGS);
+            if (metadata.isEmpty()) {
+                return;
             }
 
-            String nodeName = parser.getName();
+            final Bundle header = metadata.get(0);
+            String nodeName = header.getString(METADATA_PREF_TYPE);
             if (!NODE_NAME_PREFERENCE_SCREEN.equals(nodeName)) {
                 throw new RuntimeException(
-                        "XML document must start with <PreferenceScreen> tag; found"
-                                + nodeName + " at " + parser.getPositionDescription());
+                        "XML document must start with <PreferenceScreen> tag; found "
+                                + nodeName + " in " + sir.xmlResId);
             }
 
-            final int outerDepth = parser.getDepth();
-            final AttributeSet attrs = Xml.asAttributeSet(parser);
-
-            final String screenTitle = PreferenceXmlParserUtils.getDataTitle(context, attrs);
-            String key = PreferenceXmlParserUtils.getDataKey(context, attrs);
+            final String screenTitle = header.getString(METADATA_TITLE);
+            String key = header.getString(METADATA_KEY);
 
             String title;
             String headerTitle;
@@ -177,6 +203,7 @@ public class IndexDataConverter {
             final String intentAction = sir.intentAction;
             final String intentTargetPackage = sir.intentTargetPackage;
             final String intentTargetClass = sir.intentTargetClass;
+            final String packageName = sir.packageName;
 
             Map<String, ResultPayload> controllerUriMap = new HashMap<>();
 
@@ -185,9 +212,9 @@ public class IndexDataConverter {
                         .getPayloadKeyMap(fragmentName, context);
             }
 
-            headerTitle = PreferenceXmlParserUtils.getDataTitle(context, attrs);
-            headerSummary = PreferenceXmlParserUtils.getDataSummary(context, attrs);
-            headerKeywords = PreferenceXmlParserUtils.getDataKeywords(context, attrs);
+            headerTitle = header.getString(METADATA_TITLE);
+            headerSummary = header.getString(METADATA_SUMMARY);
+            headerKeywords = header.getString(METADATA_KEYWORDS);
             enabled = !nonIndexableKeys.contains(key);
 
             // TODO: Set payload type for header results
@@ -202,25 +229,21 @@ public class IndexDataConverter {
                     .setIntentTargetClass(intentTargetClass)
                     .setEnabled(enabled)
                     .setKey(key)
-                    .setUserId(-1 /* default user id */);
+                    .setUserId(-1 /* default user id */)
+                    .setPackageName(packageName);
 
             // Flag for XML headers which a child element's title.
             boolean isHeaderUnique = true;
             IndexData.Builder builder;
 
-            while ((type = parser.next()) != XmlPullParser.END_DOCUMENT
-                    && (type != XmlPullParser.END_TAG || parser.getDepth() > outerDepth)) {
-                if (type == XmlPullParser.END_TAG || type == XmlPullParser.TEXT) {
-                    continue;
-                }
-
-                nodeName = parser.getName();
+            for (Bundle bundle : metadata.subList(1, metadata.size())) {
+                nodeName = bundle.getString(METADATA_PREF_TYPE);
 
-                title = PreferenceXmlParserUtils.getDataTitle(context, attrs);
-                key = PreferenceXmlParserUtils.getDataKey(context, attrs);
+                title = bundle.getString(METADATA_TITLE);
+                key = bundle.getString(METADATA_KEY);
                 enabled = !nonIndexableKeys.contains(key);
-                keywords = PreferenceXmlParserUtils.getDataKeywords(context, attrs);
-                iconResId = PreferenceXmlParserUtils.getDataIcon(context, attrs);
+                keywords = bundle.getString(METADATA_KEYWORDS);
+                iconResId = bundle.getInt(METADATA_ICON);
 
                 if (isHeaderUnique && TextUtils.equals(headerTitle, title)) {
                     isHeaderUnique = false;
@@ -237,47 +260,48 @@ public class IndexDataConverter {
                         .setIntentTargetClass(intentTargetClass)
                         .setEnabled(enabled)
                         .setKey(key)
-                        .setUserId(-1 /* default user id */);
+                        .setUserId(-1 /* default user id */)
+                        .setPackageName(packageName);
 
                 if (!nodeName.equals(NODE_NAME_CHECK_BOX_PREFERENCE)) {
-                    summary = PreferenceXmlParserUtils.getDataSummary(context, attrs);
+                    summary = bundle.getString(METADATA_SUMMARY);
 
                     String entries = null;
 
                     if (nodeName.endsWith(NODE_NAME_LIST_PREFERENCE)) {
-                        entries = PreferenceXmlParserUtils.getDataEntries(context, attrs);
+                        entries = bundle.getString(METADATA_ENTRIES);
                     }
 
                     // TODO (b/62254931) index primitives instead of payload
                     payload = controllerUriMap.get(key);
-                    childFragment = PreferenceXmlParserUtils.getDataChildFragment(context, attrs);
+                    childFragment = bundle.getString(METADATA_CHILD_FRAGMENT);
 
                     builder.setSummaryOn(summary)
                             .setEntries(entries)
                             .setChildClassName(childFragment)
                             .setPayload(payload);
 
-                    resourceIndexData.add(builder.build(mContext));
+                    consumer.accept(builder.build(mContext));
                 } else {
                     // TODO (b/33577327) We removed summary off here. We should check if we can
                     // merge this 'else' section with the one above. Put a break point to
                     // investigate.
-                    String summaryOn = PreferenceXmlParserUtils.getDataSummaryOn(context, attrs);
-                    String summaryOff = PreferenceXmlParserUtils.getDataSummaryOff(context, attrs);
+                    String summaryOn = bundle.getString(METADATA_SUMMARY_ON);
+                    String summaryOff = bundle.getString(METADATA_SUMMARY_OFF);
 
                     if (TextUtils.isEmpty(summaryOn) && TextUtils.isEmpty(summaryOff)) {
-                        summaryOn = PreferenceXmlParserUtils.getDataSummary(context, attrs);
+                        summaryOn = bundle.getString(METADATA_SUMMARY);
                     }
 
                     builder.setSummaryOn(summaryOn);
 
-                    resourceIndexData.add(builder.build(mContext));
+                    consumer.accept(builder.build(mContext));
                 }
             }
 
             // The xml header's title does not match the title of one of the child settings.
             if (isHeaderUnique) {
-                resourceIndexData.add(headerBuilder.build(mContext));
+                consumer.accept(headerBuilder.build(mContext));
             }
         } catch (XmlPullParserException e) {
             Log.w(LOG_TAG, "XML Error parsing PreferenceScreen: ", e);
@@ -285,10 +309,7 @@ public class IndexDataConverter {
             Log.w(LOG_TAG, "IO Error parsing PreferenceScreen: ", e);
         } catch (Resources.NotFoundException e) {
             Log.w(LOG_TAG, "Resoucre not found error parsing PreferenceScreen: ", e);
-        } finally {
-            if (parser != null) parser.close();
         }
-        return resourceIndexData;
     }
 
     private Set<String> getNonIndexableKeysForResource(Map<String, Set<String>> nonIndexableKeys,
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search.indexing;
+
+import android.content.Context;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Binary snapshot of the static {@link IndexData} rows converted from the Settings xml resources.
+ *
+ * The static rows only change with the locale and the Settings apk, so once they have been
+ * converted for a locale they are written to a per-locale file, and later full indexes of the same
+ * apk read them back from a memory-mapped file instead of parsing every preference xml again.
+ */
+public class IndexDataSnapshot {
+
+    private static final String TAG = "IndexDataSnapshot";
+
+    private static final String SNAPSHOT_DIR = "search_index_snapshot";
+
+    /**
+     * Bump when the layout written by {@link IndexData#writeTo} changes.
+     */
+    @VisibleForTesting
+    static final int SNAPSHOT_VERSION = 1;
+
+    private final File mSnapshotDir;
+
+    public IndexDataSnapshot(Context context) {
+        mSnapshotDir = new File(context.getCacheDir(), SNAPSHOT_DIR);
+    }
+
+    /**
+     * Streams the rows snapshotted for {@param locale} at {@param version} into
+     * {@param consumer}. A snapshot which cannot be read is deleted.
+     *
+     * @return false if there is no usable snapshot, in which case nothing was consumed.
+     */
+    public boolean read(String locale, String version, Consumer<IndexData> consumer) {
+        final File file = getSnapshotFile(locale);
+        if (!file.exists()) {
+            return false;
+        }
+
+        final IndexData[] rows;
+        try (FileInputStream in = new FileInputStream(file);
+             FileChannel channel = in.getChannel()) {
+            final ByteBuffer buffer =
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0 /* position */, channel.size());
+            if (buffer.getInt() != SNAPSHOT_VERSION
+                    || !TextUtils.equals(readHeader(buffer), version)) {
+                Log.d(TAG, "Dropping obsolete snapshot for " + locale);
+                file.delete();
+                return false;
+            }
+            rows = new IndexData[buffer.getInt()];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = IndexData.readFrom(buffer);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt file can fail with any runtime exception, such as a
+            // BufferUnderflowException or a NegativeArraySizeException.
+            Log.w(TAG, "Cannot read snapshot for " + locale, e);
+            file.delete();
+            return false;
+        }
+
+        for (IndexData row : rows) {
+            consumer.accept(row);
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the snapshot for {@param locale} with {@param rows} converted at
+     * {@param version}.
+     */
+    public void write(String locale, String version, List<IndexData> rows) {
+        if (!mSnapshotDir.exists() && !mSnapshotDir.mkdirs()) {
+            Log.w(TAG, "Cannot create snapshot directory");
+            return;
+        }
+
+        final AtomicFile file = new AtomicFile(getSnapshotFile(locale));
+        FileOutputStream fos = null;
+        try {
+            fos = file.startWrite();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(SNAPSHOT_VERSION);
+            final byte[] header = version.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(header.length);
+            out.write(header);
+            out.writeInt(rows.size());
+            for (IndexData row : rows) {
+                row.writeTo(out);
+            }
+            out.flush();
+            file.finishWrite(fos);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write snapshot for " + locale, e);
+            file.failWrite(fos);
+        }
+    }
+
+    private File getSnapshotFile(String locale) {
+        return new File(mSnapshotDir, locale);
+    }
+
+    private static String readHeader(ByteBuffer buffer) {
+        final byte[] header = new byte[buffer.getInt()];
+        buffer.get(header);
+        return new String(header, StandardCharsets.UTF_8);
+    }
+}
@@ -21,6 +21,7 @@ import android.provider.SearchIndexableData;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,15 +34,29 @@ import java.util.Set;
 public class PreIndexData {
     public List<SearchIndexableData> dataToUpdate;
     public Map<String, Set<String>> nonIndexableKeys;
+    /**
+     * Packages whose indexable data was re-collected by a partial index. Their previously indexed
+     * rows are stale and must be replaced by {@link #dataToUpdate}.
+     */
+    public Set<String> updatedPackages;
+    /**
+     * Packages whose provider could not be crawled. They should not be recorded as indexed, so
+     * they are picked up again by the next partial index.
+     */
+    public Set<String> failedPackages;
 
     public PreIndexData() {
         dataToUpdate = new ArrayList<>();
         nonIndexableKeys = new HashMap<>();
+        updatedPackages = new HashSet<>();
+        failedPackages = new HashSet<>();
     }
 
     public PreIndexData(PreIndexData other) {
         dataToUpdate = new ArrayList<>(other.dataToUpdate);
         nonIndexableKeys = new HashMap<>(other.nonIndexableKeys);
+        updatedPackages = new HashSet<>(other.updatedPackages);
+        failedPackages = new HashSet<>(other.failedPackages);
     }
 
     public PreIndexData copy() {
@@ -51,5 +66,7 @@ public class PreIndexData {
     public void clear() {
         dataToUpdate.clear();
         nonIndexableKeys.clear();
+        updatedPackages.clear();
+        failedPackages.clear();
     }
 }
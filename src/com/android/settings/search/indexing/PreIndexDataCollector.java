@@ -26,6 +26,9 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.SystemClock;
+import android.provider.SearchIndexableData;
 import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesContract;
 import android.text.TextUtils;
@@ -39,6 +42,14 @@ import com.android.settings.search.SettingsSearchIndexablesProvider;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static android.provider.SearchIndexablesContract.COLUMN_INDEX_XML_RES_CLASS_NAME;
 import static android.provider.SearchIndexablesContract.COLUMN_INDEX_XML_RES_ICON_RESID;
@@ -75,6 +86,13 @@ public class PreIndexDataCollector {
 
     private static final List<String> EMPTY_LIST = Collections.emptyList();
 
+    private static final int MAX_PARALLEL_PROVIDERS = 4;
+
+    @VisibleForTesting
+    static final long PROVIDER_TIMEOUT_MS = 10000;
+
+    private static ExecutorService sExecutor;
+
     private Context mContext;
 
     private PreIndexData mIndexData;
@@ -84,57 +102,143 @@ public class PreIndexDataCollector {
     }
 
     public PreIndexData collectIndexableData(List<ResolveInfo> providers, boolean isFullIndex) {
+        return collectIndexableData(providers, isFullIndex, Collections.emptySet());
+    }
+
+    /**
+     * Collects non-indexable keys from every provider, and indexable data from every provider
+     * when {@param isFullIndex} is true or only from {@param updatedPackages} otherwise.
+     *
+     * Providers are crawled concurrently on a bounded pool, and the results are merged in the
+     * order of {@param providers}. Every provider must answer within {@link #PROVIDER_TIMEOUT_MS}
+     * of the crawl starting; the queries of a provider which does not are cancelled, and it is
+     * skipped and reported in {@link PreIndexData#failedPackages}.
+     */
+    public PreIndexData collectIndexableData(List<ResolveInfo> providers, boolean isFullIndex,
+            Set<String> updatedPackages) {
         mIndexData = new PreIndexData();
+        if (!isFullIndex) {
+            mIndexData.updatedPackages.addAll(updatedPackages);
+        }
 
+        final ExecutorService executor = getExecutor();
+        final List<ProviderData> pending = new ArrayList<>();
         for (final ResolveInfo info : providers) {
             if (!isWellKnownProvider(info)) {
                 continue;
             }
             final String authority = info.providerInfo.authority;
             final String packageName = info.providerInfo.packageName;
+            final boolean collectIndexables = isFullIndex || updatedPackages.contains(packageName);
+            final CancellationSignal cancellationSignal = new CancellationSignal();
 
-            if (isFullIndex) {
-                addIndexablesFromRemoteProvider(packageName, authority);
-            }
+            pending.add(new ProviderData(packageName, authority, cancellationSignal,
+                    executor.submit(() -> collectFromRemoteProvider(packageName, authority,
+                            collectIndexables, cancellationSignal))));
+        }
 
-            final long nonIndexableStartTime = System.currentTimeMillis();
-            addNonIndexablesKeysFromRemoteProvider(packageName, authority);
-            if (SettingsSearchIndexablesProvider.DEBUG) {
-                final long nonIndexableTime = System.currentTimeMillis() - nonIndexableStartTime;
-                Log.d(TAG, "performIndexing update non-indexable for package " + packageName
-                        + " took time: " + nonIndexableTime);
+        final long deadline = SystemClock.elapsedRealtime() + PROVIDER_TIMEOUT_MS;
+        boolean timedOut = false;
+        for (ProviderData providerData : pending) {
+            final ProviderResult result = getProviderResult(providerData, deadline);
+            timedOut |= providerData.timedOut;
+            if (result == null) {
+                // Keep the previously indexed rows of this package, and retry it next time.
+                mIndexData.updatedPackages.remove(providerData.packageName);
+                mIndexData.failedPackages.add(providerData.packageName);
+                continue;
+            }
+            if (result.indexables != null) {
+                mIndexData.dataToUpdate.addAll(result.indexables);
+            }
+            if (result.nonIndexableKeys != null && !result.nonIndexableKeys.isEmpty()) {
+                mIndexData.nonIndexableKeys.put(providerData.authority,
+                        new ArraySet<>(result.nonIndexableKeys));
             }
         }
+        if (timedOut) {
+            // A provider stuck in a binder call may ignore the cancellation and keep its thread.
+            // Leave those threads to finish on their own, and crawl on fresh ones from now on.
+            releaseExecutor(executor);
+        }
 
         return mIndexData;
     }
 
-    private boolean addIndexablesFromRemoteProvider(String packageName, String authority) {
+    private ProviderResult collectFromRemoteProvider(String packageName, String authority,
+            boolean collectIndexables, CancellationSignal cancellationSignal) {
+        final ProviderResult result = new ProviderResult();
+        if (collectIndexables) {
+            result.indexables = getIndexablesFromRemoteProvider(packageName, authority,
+                    cancellationSignal);
+        }
+
+        final long nonIndexableStartTime = System.currentTimeMillis();
+        result.nonIndexableKeys = getNonIndexablesKeysFromRemoteProvider(packageName, authority,
+                cancellationSignal);
+        if (SettingsSearchIndexablesProvider.DEBUG) {
+            final long nonIndexableTime = System.currentTimeMillis() - nonIndexableStartTime;
+            Log.d(TAG, "performIndexing update non-indexable for package " + packageName
+                    + " took time: " + nonIndexableTime);
+        }
+        return result;
+    }
+
+    /**
+     * @return the data collected from the provider, or null if it failed or did not answer by
+     * {@param deadline}.
+     */
+    private ProviderResult getProviderResult(ProviderData providerData, long deadline) {
+        try {
+            final long timeout = Math.max(0, deadline - SystemClock.elapsedRealtime());
+            return providerData.future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Timed out collecting index data for " + providerData.packageName);
+            providerData.timedOut = true;
+            providerData.cancel();
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Interrupted collecting index data for " + providerData.packageName);
+            providerData.cancel();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Error collecting index data for " + providerData.packageName,
+                    e.getCause());
+        }
+        return null;
+    }
+
+    private List<SearchIndexableData> getIndexablesFromRemoteProvider(String packageName,
+            String authority, CancellationSignal cancellationSignal) {
         try {
             final Context context = BASE_AUTHORITY.equals(authority) ?
                     mContext : mContext.createPackageContext(packageName, 0);
 
+            final List<SearchIndexableData> indexables = new ArrayList<>();
             final Uri uriForResources = buildUriForXmlResources(authority);
-            mIndexData.dataToUpdate.addAll(getIndexablesForXmlResourceUri(context, packageName,
-                    uriForResources, SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS));
+            indexables.addAll(getIndexablesForXmlResourceUri(context, packageName,
+                    uriForResources, SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS,
+                    cancellationSignal));
 
             final Uri uriForRawData = buildUriForRawData(authority);
-            mIndexData.dataToUpdate.addAll(getIndexablesForRawDataUri(context, packageName,
-                    uriForRawData, SearchIndexablesContract.INDEXABLES_RAW_COLUMNS));
-            return true;
+            indexables.addAll(getIndexablesForRawDataUri(context, packageName,
+                    uriForRawData, SearchIndexablesContract.INDEXABLES_RAW_COLUMNS,
+                    cancellationSignal));
+            return indexables;
         } catch (PackageManager.NameNotFoundException e) {
             Log.w(TAG, "Could not create context for " + packageName + ": "
                     + Log.getStackTraceString(e));
-            return false;
+            return null;
         }
     }
 
     @VisibleForTesting
     List<SearchIndexableResource> getIndexablesForXmlResourceUri(Context packageContext,
-            String packageName, Uri uri, String[] projection) {
+            String packageName, Uri uri, String[] projection,
+            CancellationSignal cancellationSignal) {
 
         final ContentResolver resolver = packageContext.getContentResolver();
-        final Cursor cursor = resolver.query(uri, projection, null, null, null);
+        final Cursor cursor = resolver.query(uri, projection, null, null, null,
+                cancellationSignal);
         List<SearchIndexableResource> resources = new ArrayList<>();
 
         if (cursor == null) {
@@ -175,25 +279,15 @@ public class PreIndexDataCollector {
         return resources;
     }
 
-    private void addNonIndexablesKeysFromRemoteProvider(String packageName,
-            String authority) {
-        final List<String> keys =
-                getNonIndexablesKeysFromRemoteProvider(packageName, authority);
-
-        if (keys != null && !keys.isEmpty()) {
-            mIndexData.nonIndexableKeys.put(authority, new ArraySet<>(keys));
-        }
-    }
-
     @VisibleForTesting
     List<String> getNonIndexablesKeysFromRemoteProvider(String packageName,
-            String authority) {
+            String authority, CancellationSignal cancellationSignal) {
         try {
             final Context packageContext = mContext.createPackageContext(packageName, 0);
 
             final Uri uriForNonIndexableKeys = buildUriForNonIndexableKeys(authority);
             return getNonIndexablesKeys(packageContext, uriForNonIndexableKeys,
-                    SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS);
+                    SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS, cancellationSignal);
         } catch (PackageManager.NameNotFoundException e) {
             Log.w(TAG, "Could not create context for " + packageName + ": "
                     + Log.getStackTraceString(e));
@@ -221,9 +315,10 @@ public class PreIndexDataCollector {
 
     @VisibleForTesting
     List<SearchIndexableRaw> getIndexablesForRawDataUri(Context packageContext, String packageName,
-            Uri uri, String[] projection) {
+            Uri uri, String[] projection, CancellationSignal cancellationSignal) {
         final ContentResolver resolver = packageContext.getContentResolver();
-        final Cursor cursor = resolver.query(uri, projection, null, null, null);
+        final Cursor cursor = resolver.query(uri, projection, null, null, null,
+                cancellationSignal);
         List<SearchIndexableRaw> rawData = new ArrayList<>();
 
         if (cursor == null) {
@@ -284,13 +379,13 @@ public class PreIndexDataCollector {
     }
 
     private List<String> getNonIndexablesKeys(Context packageContext, Uri uri,
-            String[] projection) {
+            String[] projection, CancellationSignal cancellationSignal) {
 
         final ContentResolver resolver = packageContext.getContentResolver();
         final List<String> result = new ArrayList<>();
         Cursor cursor;
         try {
-            cursor = resolver.query(uri, projection, null, null, null);
+            cursor = resolver.query(uri, projection, null, null, null, cancellationSignal);
         } catch (NullPointerException e) {
             Log.e(TAG, "Exception querying the keys!", e);
             return result;
@@ -365,4 +460,54 @@ public class PreIndexDataCollector {
             return false;
         }
     }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_PROVIDERS,
+                    MAX_PARALLEL_PROVIDERS, 30 /* keepAliveTime */, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Stops handing out {@param executor}. Its idle threads time out, and threads still busy with
+     * a stuck provider exit once the provider returns.
+     */
+    private static synchronized void releaseExecutor(ExecutorService executor) {
+        if (sExecutor == executor) {
+            sExecutor = null;
+        }
+    }
+
+    private static class ProviderData {
+        final String packageName;
+        final String authority;
+        final CancellationSignal cancellationSignal;
+        final Future<ProviderResult> future;
+        boolean timedOut;
+
+        ProviderData(String packageName, String authority, CancellationSignal cancellationSignal,
+                Future<ProviderResult> future) {
+            this.packageName = packageName;
+            this.authority = authority;
+            this.cancellationSignal = cancellationSignal;
+            this.future = future;
+        }
+
+        /**
+         * Cancels the provider queries in flight, which interrupting the thread cannot do.
+         */
+        void cancel() {
+            cancellationSignal.cancel();
+            future.cancel(true /* mayInterruptIfRunning */);
+        }
+    }
+
+    private static class ProviderResult {
+        List<SearchIndexableData> indexables;
+        List<String> nonIndexableKeys;
+    }
 }
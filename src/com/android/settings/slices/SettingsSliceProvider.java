@@ -22,6 +22,7 @@ import android.app.slice.SliceManager;
 import android.content.ContentResolver;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.StrictMode;
 import android.provider.Settings;
@@ -49,10 +50,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.ConcurrentHashMap;
 
 import androidx.slice.Slice;
 import androidx.slice.SliceProvider;
@@ -68,10 +66,12 @@ import androidx.slice.SliceProvider;
  * <p>When a {@link Slice} is requested, we start loading {@link SliceData} in the background and
  * return an stub {@link Slice} with the correct {@link Uri} immediately. In the background, the
  * data corresponding to the key in the {@link Uri} is read by {@link SlicesDatabaseAccessor}, and
- * the entire row is converted into a {@link SliceData}. Once complete, it is stored in
+ * the entire row is converted into a {@link SliceData}. The Slices requested while a load is
+ * pending are read together, in a single query. Once complete, the data is stored in
  * {@link #mSliceDataCache}, and then an update sent via the Slice framework to the Slice.
  * The {@link Slice} displayed by the Slice-presenter will re-query this Slice-provider and find
- * the {@link SliceData} cached to build the full {@link Slice}.
+ * the {@link SliceData} cached to build the full {@link Slice}. The data stays cached, strongly
+ * while the Slice is pinned, so that later binds do not go back to the database.
  *
  * <p>When an action is taken on that {@link Slice}, we receive the action in
  * {@link SliceBroadcastReceiver}, and use the
@@ -82,6 +82,8 @@ public class SettingsSliceProvider extends SliceProvider {
 
     private static final String TAG = "SettingsSliceProvider";
 
+    private static final boolean DEBUG_TIMING = false;
+
     /**
      * Authority for Settings slices not officially supported by the platform, but extensible for
      * OEMs.
@@ -115,12 +117,36 @@ public class SettingsSliceProvider extends SliceProvider {
     SlicesDatabaseAccessor mSlicesDatabaseAccessor;
 
     @VisibleForTesting
-    Map<Uri, SliceData> mSliceWeakDataCache;
-    @VisibleForTesting
-    Map<Uri, SliceData> mSliceDataCache;
+    SliceDataCache mSliceDataCache;
+
+    /**
+     * Uris whose {@link SliceData} is to be loaded by the next background load. A load is
+     * scheduled whenever it is not empty.
+     */
+    private final Set<Uri> mPendingUris = new ArraySet<>();
 
     private final KeyValueListParser mParser;
 
+    /**
+     * Immutable set of the keys of the blocked Slices, or null until it is read. Reset by
+     * {@link #mBlockedKeysObserver} when the setting changes.
+     */
+    private volatile Set<String> mBlockedKeys;
+    /**
+     * Incremented on each change of the blocked keys, so that a set read before a change is not
+     * kept after it.
+     */
+    private volatile int mBlockedKeysGeneration;
+    private boolean mBlockedKeysObserverRegistered;
+
+    private final ContentObserver mBlockedKeysObserver = new ContentObserver(null /* handler */) {
+        @Override
+        public void onChange(boolean selfChange) {
+            mBlockedKeysGeneration++;
+            mBlockedKeys = null;
+        }
+    };
+
     final Set<Uri> mRegisteredUris = new ArraySet<>();
 
     public SettingsSliceProvider() {
@@ -131,8 +157,7 @@ public class SettingsSliceProvider extends SliceProvider {
     @Override
     public boolean onCreateSliceProvider() {
         mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(getContext());
-        mSliceDataCache = new ConcurrentHashMap<>();
-        mSliceWeakDataCache = new WeakHashMap<>();
+        mSliceDataCache = new SliceDataCache();
         return true;
     }
 
@@ -160,8 +185,12 @@ public class SettingsSliceProvider extends SliceProvider {
             return;
         }
 
-        // Start warming the slice, we expect someone will want it soon.
-        loadSliceInBackground(sliceUri);
+        mSliceDataCache.setIndexVersion(getIndexVersion());
+        mSliceDataCache.pin(sliceUri);
+        if (mSliceDataCache.get(sliceUri) == null) {
+            // Start warming the slice, we expect someone will want it soon.
+            loadSliceInBackground(sliceUri);
+        }
     }
 
     @Override
@@ -171,17 +200,19 @@ public class SettingsSliceProvider extends SliceProvider {
             SliceBroadcastRelay.unregisterReceivers(getContext(), sliceUri);
             mRegisteredUris.remove(sliceUri);
         }
-        mSliceDataCache.remove(sliceUri);
+        mSliceDataCache.unpin(sliceUri);
     }
 
     @Override
     public Slice onBindSlice(Uri sliceUri) {
-        final StrictMode.ThreadPolicy oldPolicy = StrictMode.getThreadPolicy();
+        final long startTime = DEBUG_TIMING ? System.nanoTime() : 0;
+        long checkedTime = 0;
+        // The policy is only relaxed off the main thread, so only swapped there.
+        final StrictMode.ThreadPolicy oldPolicy =
+                ThreadUtils.isMainThread() ? null : StrictMode.getThreadPolicy();
         try {
-            if (!ThreadUtils.isMainThread()) {
-                StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
-                        .permitAll()
-                        .build());
+            if (oldPolicy != null) {
+                StrictMode.setThreadPolicy(StrictMode.ThreadPolicy.LAX);
             }
             final Set<String> blockedKeys = getBlockedKeys();
             final String key = sliceUri.getLastPathSegment();
@@ -189,6 +220,9 @@ public class SettingsSliceProvider extends SliceProvider {
                 Log.e(TAG, "Requested blocked slice with Uri: " + sliceUri);
                 return null;
             }
+            if (DEBUG_TIMING) {
+                checkedTime = System.nanoTime();
+            }
 
             // If adding a new Slice, do not directly match Slice URIs.
             // Use {@link SlicesDatabaseAccessor}.
@@ -207,19 +241,23 @@ public class SettingsSliceProvider extends SliceProvider {
                 return LocationSliceBuilder.getSlice(getContext());
             }
 
-            SliceData cachedSliceData = mSliceWeakDataCache.get(sliceUri);
+            mSliceDataCache.setIndexVersion(getIndexVersion());
+            final SliceData cachedSliceData = mSliceDataCache.get(sliceUri);
             if (cachedSliceData == null) {
                 loadSliceInBackground(sliceUri);
                 return getSliceStub(sliceUri);
             }
-
-            // Remove the SliceData from the cache after it has been used to prevent a memory-leak.
-            if (!mSliceDataCache.containsKey(sliceUri)) {
-                mSliceWeakDataCache.remove(sliceUri);
-            }
             return SliceBuilderUtils.buildSlice(getContext(), cachedSliceData);
         } finally {
-            StrictMode.setThreadPolicy(oldPolicy);
+            if (oldPolicy != null) {
+                StrictMode.setThreadPolicy(oldPolicy);
+            }
+            if (DEBUG_TIMING) {
+                final long endTime = System.nanoTime();
+                Log.d(TAG, "onBindSlice(" + sliceUri + ") took "
+                        + (endTime - startTime) / 1000 + " us, policy and blocked keys: "
+                        + (checkedTime != 0 ? (checkedTime - startTime) / 1000 : -1) + " us");
+            }
         }
     }
 
@@ -307,40 +345,89 @@ public class SettingsSliceProvider extends SliceProvider {
 
     @VisibleForTesting
     void loadSlice(Uri uri) {
+        loadSlices(Collections.singletonList(uri));
+    }
+
+    /**
+     * Reads the {@link SliceData} of {@param uris} in one query, caches it, and notifies the
+     * Slices that they can be built.
+     */
+    @VisibleForTesting
+    void loadSlices(List<Uri> uris) {
         long startBuildTime = System.currentTimeMillis();
 
-        final SliceData sliceData;
+        final List<SliceData> sliceDataList;
         try {
-            sliceData = mSlicesDatabaseAccessor.getSliceDataFromUri(uri);
+            sliceDataList = mSlicesDatabaseAccessor.getSliceDataFromUris(uris);
         } catch (IllegalStateException e) {
-            Log.e(TAG, "Could not get slice data for uri: " + uri, e);
+            Log.e(TAG, "Could not get slice data for uris: " + uris, e);
             return;
         }
+        if (sliceDataList.size() < uris.size()) {
+            Log.e(TAG, "Could not get slice data for all of: " + uris);
+        }
 
-        final BasePreferenceController controller = SliceBuilderUtils.getPreferenceController(
-                getContext(), sliceData);
+        // The provider learns of the slices pinned before it started only from the manager.
+        List<Uri> pinnedSlices = null;
+        for (SliceData sliceData : sliceDataList) {
+            final Uri uri = sliceData.getUri();
+            final BasePreferenceController controller;
+            try {
+                controller = SliceBuilderUtils.getPreferenceController(getContext(), sliceData);
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Could not get controller for uri: " + uri, e);
+                continue;
+            }
 
-        final IntentFilter filter = controller.getIntentFilter();
-        if (filter != null) {
-            registerIntentToUri(filter, uri);
-        }
+            final IntentFilter filter = controller.getIntentFilter();
+            if (filter != null) {
+                registerIntentToUri(filter, uri);
+            }
 
-        final List<Uri> pinnedSlices = getContext().getSystemService(
-                SliceManager.class).getPinnedSlices();
-        if (pinnedSlices.contains(uri)) {
+            if (!mSliceDataCache.isPinned(uri)) {
+                if (pinnedSlices == null) {
+                    pinnedSlices = getContext().getSystemService(
+                            SliceManager.class).getPinnedSlices();
+                }
+                if (pinnedSlices.contains(uri)) {
+                    mSliceDataCache.pin(uri);
+                }
+            }
             mSliceDataCache.put(uri, sliceData);
+            getContext().getContentResolver().notifyChange(uri, null /* content observer */);
         }
-        mSliceWeakDataCache.put(uri, sliceData);
-        getContext().getContentResolver().notifyChange(uri, null /* content observer */);
 
-        Log.d(TAG, "Built slice (" + uri + ") in: " +
+        Log.d(TAG, "Built " + sliceDataList.size() + " slices (" + uris + ") in: " +
                 (System.currentTimeMillis() - startBuildTime));
     }
 
+    /**
+     * @return the version of the slices index, which changes with the locale and when the index
+     * is rebuilt.
+     */
+    private String getIndexVersion() {
+        return SlicesDatabaseHelper.getInstance(getContext()).getIndexVersion();
+    }
+
+    /**
+     * Loads the {@link SliceData} of {@param uri} in the background, together with the other
+     * Slices requested before the load starts.
+     */
     @VisibleForTesting
     void loadSliceInBackground(Uri uri) {
+        synchronized (mPendingUris) {
+            final boolean loadScheduled = !mPendingUris.isEmpty();
+            if (!mPendingUris.add(uri) || loadScheduled) {
+                return;
+            }
+        }
         ThreadUtils.postOnBackgroundThread(() -> {
-            loadSlice(uri);
+            final List<Uri> uris;
+            synchronized (mPendingUris) {
+                uris = new ArrayList<>(mPendingUris);
+                mPendingUris.clear();
+            }
+            loadSlices(uris);
         });
     }
 
@@ -386,8 +473,32 @@ public class SettingsSliceProvider extends SliceProvider {
                 intentFilter);
     }
 
+    /**
+     * @return the keys of the blocked Slices. The setting is only read again after it changes.
+     */
     @VisibleForTesting
     Set<String> getBlockedKeys() {
+        Set<String> blockedKeys = mBlockedKeys;
+        if (blockedKeys != null) {
+            return blockedKeys;
+        }
+        synchronized (this) {
+            if (!mBlockedKeysObserverRegistered) {
+                getContext().getContentResolver().registerContentObserver(
+                        Settings.Global.getUriFor(Settings.Global.BLOCKED_SLICES),
+                        false /* notifyForDescendants */, mBlockedKeysObserver);
+                mBlockedKeysObserverRegistered = true;
+            }
+            final int generation = mBlockedKeysGeneration;
+            blockedKeys = readBlockedKeys();
+            if (generation == mBlockedKeysGeneration) {
+                mBlockedKeys = blockedKeys;
+            }
+        }
+        return blockedKeys;
+    }
+
+    private Set<String> readBlockedKeys() {
         final String value = Settings.Global.getString(getContext().getContentResolver(),
                 Settings.Global.BLOCKED_SLICES);
         final Set<String> set = new ArraySet<>();
@@ -396,12 +507,12 @@ public class SettingsSliceProvider extends SliceProvider {
             mParser.setString(value);
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "Bad Settings Slices Whitelist flags", e);
-            return set;
+            return Collections.unmodifiableSet(set);
         }
 
         final String[] parsedValues = parseStringArray(value);
         Collections.addAll(set, parsedValues);
-        return set;
+        return Collections.unmodifiableSet(set);
     }
 
     private String[] parseStringArray(String value) {
@@ -42,6 +42,7 @@ import com.android.settings.R;
 import com.android.settings.SubSettings;
 import com.android.settings.Utils;
 import com.android.settings.core.BasePreferenceController;
+import com.android.settings.core.PreferenceControllerListHelper;
 import com.android.settings.core.SliderPreferenceController;
 import com.android.settings.core.TogglePreferenceController;
 import com.android.settings.overlay.FeatureFactory;
@@ -300,13 +301,14 @@ public class SliceBuilderUtils {
 
     private static BasePreferenceController getPreferenceController(Context context,
             String controllerClassName, String controllerKey) {
-        try {
-            return BasePreferenceController.createInstance(context, controllerClassName);
-        } catch (IllegalStateException e) {
-            // Do nothing
+        final BasePreferenceController controller =
+                PreferenceControllerListHelper.createController(context, controllerClassName,
+                        controllerKey);
+        if (controller == null) {
+            throw new IllegalStateException(
+                    "Invalid preference controller: " + controllerClassName);
         }
-
-        return BasePreferenceController.createInstance(context, controllerClassName, controllerKey);
+        return controller;
     }
 
     private static SliceAction getToggleAction(Context context, SliceData sliceData,
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.slices;
+
+import android.net.Uri;
+import android.support.annotation.VisibleForTesting;
+import android.text.TextUtils;
+import android.util.ArraySet;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Thread-safe cache of the {@link SliceData} bound by {@link SettingsSliceProvider}, keyed by
+ * slice {@link Uri}.
+ * <p>
+ * The data of pinned slices is kept strongly until they are unpinned, so that their updates never
+ * go back to the database. The data of other slices is only kept softly, and the least recently
+ * used entries are evicted when there are more than {@link #MAX_UNPINNED_ENTRIES} of them.
+ * <p>
+ * The entries are dropped once the index they were read from changes, see
+ * {@link #setIndexVersion}, as their localized text may be stale.
+ */
+class SliceDataCache {
+
+    @VisibleForTesting
+    static final int MAX_UNPINNED_ENTRIES = 64;
+
+    private final int mMaxUnpinnedEntries;
+    /**
+     * Entries in access order, the least recently used first.
+     */
+    private final LinkedHashMap<Uri, Entry> mEntries =
+            new LinkedHashMap<>(16 /* initialCapacity */, 0.75f /* loadFactor */,
+                    true /* accessOrder */);
+    private final Set<Uri> mPinnedUris = new ArraySet<>();
+    private String mIndexVersion;
+
+    SliceDataCache() {
+        this(MAX_UNPINNED_ENTRIES);
+    }
+
+    @VisibleForTesting
+    SliceDataCache(int maxUnpinnedEntries) {
+        mMaxUnpinnedEntries = maxUnpinnedEntries;
+    }
+
+    /**
+     * @return the data cached for {@param uri}, or null if there is none.
+     */
+    synchronized SliceData get(Uri uri) {
+        final Entry entry = mEntries.get(uri);
+        if (entry == null) {
+            return null;
+        }
+        final SliceData data = entry.get();
+        if (data == null) {
+            mEntries.remove(uri);
+        }
+        return data;
+    }
+
+    synchronized void put(Uri uri, SliceData data) {
+        final boolean pinned = mPinnedUris.contains(uri);
+        mEntries.put(uri, new Entry(data, pinned));
+        if (!pinned) {
+            trim();
+        }
+    }
+
+    /**
+     * Keeps the data of {@param uri} strongly, until {@link #unpin(Uri)}.
+     */
+    synchronized void pin(Uri uri) {
+        if (!mPinnedUris.add(uri)) {
+            return;
+        }
+        final Entry entry = mEntries.get(uri);
+        if (entry != null && !entry.setPinned(true)) {
+            mEntries.remove(uri);
+        }
+    }
+
+    synchronized void unpin(Uri uri) {
+        if (!mPinnedUris.remove(uri)) {
+            return;
+        }
+        final Entry entry = mEntries.get(uri);
+        if (entry != null) {
+            entry.setPinned(false);
+            trim();
+        }
+    }
+
+    synchronized boolean isPinned(Uri uri) {
+        return mPinnedUris.contains(uri);
+    }
+
+    /**
+     * Drops every entry if {@param indexVersion} differs from the version of the index the
+     * entries were read from, as last set. The uris stay pinned.
+     */
+    synchronized void setIndexVersion(String indexVersion) {
+        if (mIndexVersion != null && !TextUtils.equals(indexVersion, mIndexVersion)) {
+            mEntries.clear();
+        }
+        mIndexVersion = indexVersion;
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Evicts the least recently used unpinned entries, and those already collected, until there
+     * are at most {@link #mMaxUnpinnedEntries} unpinned entries left.
+     */
+    private void trim() {
+        int unpinnedCount = 0;
+        for (Entry entry : mEntries.values()) {
+            if (!entry.isPinned()) {
+                unpinnedCount++;
+            }
+        }
+        final Iterator<Map.Entry<Uri, Entry>> iterator = mEntries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next().getValue();
+            if (entry.isPinned()) {
+                continue;
+            }
+            if (unpinnedCount > mMaxUnpinnedEntries || entry.get() == null) {
+                iterator.remove();
+                unpinnedCount--;
+            }
+        }
+    }
+
+    private static class Entry {
+        private final SoftReference<SliceData> mSoftData;
+        private SliceData mData;
+
+        Entry(SliceData data, boolean pinned) {
+            mSoftData = new SoftReference<>(data);
+            mData = pinned ? data : null;
+        }
+
+        SliceData get() {
+            return mData != null ? mData : mSoftData.get();
+        }
+
+        boolean isPinned() {
+            return mData != null;
+        }
+
+        /**
+         * @return false if the entry was pinned after its data was collected.
+         */
+        boolean setPinned(boolean pinned) {
+            mData = pinned ? mSoftData.get() : null;
+            return !pinned || mData != null;
+        }
+    }
+}
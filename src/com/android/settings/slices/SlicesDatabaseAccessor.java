@@ -24,12 +24,17 @@ import android.net.Uri;
 
 import android.content.Context;
 import android.os.Binder;
+import android.support.annotation.VisibleForTesting;
+import android.util.ArrayMap;
+import android.util.Log;
 import android.util.Pair;
 
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 
 import androidx.slice.Slice;
@@ -39,6 +44,8 @@ import androidx.slice.Slice;
  */
 public class SlicesDatabaseAccessor {
 
+    private static final String TAG = "SlicesDatabaseAccessor";
+
     public static final String[] SELECT_COLUMNS_ALL = {
             IndexColumns.KEY,
             IndexColumns.TITLE,
@@ -52,6 +59,13 @@ public class SlicesDatabaseAccessor {
             IndexColumns.SLICE_TYPE,
     };
 
+    /**
+     * Keys bound by a single query of {@link #getSliceDataFromUris}, below the default limit of
+     * 999 variables of SQLite.
+     */
+    @VisibleForTesting
+    static final int MAX_KEYS_PER_QUERY = 500;
+
     // Cursor value for boolean true
     private final int TRUE = 1;
 
@@ -71,8 +85,62 @@ public class SlicesDatabaseAccessor {
      */
     public SliceData getSliceDataFromUri(Uri uri) {
         Pair<Boolean, String> pathData = SliceBuilderUtils.getPathData(uri);
-        Cursor cursor = getIndexedSliceData(pathData.second /* key */);
-        return buildSliceData(cursor, uri, pathData.first /* isIntentOnly */);
+        try (Cursor cursor = getIndexedSliceData(pathData.second /* key */)) {
+            return buildSliceData(cursor, uri, pathData.first /* isIntentOnly */);
+        }
+    }
+
+    /**
+     * Query the slices database once for all the {@param uris}, and return the
+     * {@link SliceData} objects corresponding to the rows matching their keys. The uris which do
+     * not match a row, or are not valid Settings slice uris, are skipped.
+     * Used to load the {@link Slice Slices} pinned or bound together.
+     */
+    public List<SliceData> getSliceDataFromUris(Collection<Uri> uris) {
+        final List<SliceData> sliceData = new ArrayList<>();
+        final ArrayMap<String, List<Uri>> keyUris = new ArrayMap<>();
+        for (Uri uri : uris) {
+            final Pair<Boolean, String> pathData = SliceBuilderUtils.getPathData(uri);
+            if (pathData == null) {
+                Log.w(TAG, "Invalid Slices uri: " + uri);
+                continue;
+            }
+            List<Uri> sameKeyUris = keyUris.get(pathData.second);
+            if (sameKeyUris == null) {
+                sameKeyUris = new ArrayList<>();
+                keyUris.put(pathData.second, sameKeyUris);
+            }
+            sameKeyUris.add(uri);
+        }
+        if (keyUris.isEmpty()) {
+            return sliceData;
+        }
+
+        verifyIndexing();
+        final String[] keys = keyUris.keySet().toArray(new String[keyUris.size()]);
+        final SQLiteDatabase database = mHelper.getReadableDatabase();
+        // Bind at most MAX_KEYS_PER_QUERY keys at once, as SQLite limits the number of variables.
+        for (int start = 0; start < keys.length; start += MAX_KEYS_PER_QUERY) {
+            final String[] selection = Arrays.copyOfRange(keys, start,
+                    Math.min(keys.length, start + MAX_KEYS_PER_QUERY));
+            final String whereClause = buildKeysMatchWhereClause(selection.length);
+            try (final Cursor cursor = database.query(TABLE_SLICES_INDEX, SELECT_COLUMNS_ALL,
+                    whereClause, selection, null /* groupBy */, null /* having */,
+                    null /* orderBy */)) {
+                while (cursor.moveToNext()) {
+                    final List<Uri> sameKeyUris = keyUris.get(
+                            cursor.getString(cursor.getColumnIndex(IndexColumns.KEY)));
+                    if (sameKeyUris == null) {
+                        continue;
+                    }
+                    for (Uri uri : sameKeyUris) {
+                        final boolean isIntentOnly = SliceBuilderUtils.getPathData(uri).first;
+                        sliceData.add(buildSliceData(cursor, uri, isIntentOnly));
+                    }
+                }
+            }
+        }
+        return sliceData;
     }
 
     /**
@@ -81,8 +149,9 @@ public class SlicesDatabaseAccessor {
      * Used when handling the action of the {@link Slice}.
      */
     public SliceData getSliceDataFromKey(String key) {
-        Cursor cursor = getIndexedSliceData(key);
-        return buildSliceData(cursor, null /* uri */, false /* isIntentOnly */);
+        try (Cursor cursor = getIndexedSliceData(key)) {
+            return buildSliceData(cursor, null /* uri */, false /* isIntentOnly */);
+        }
     }
 
     /**
@@ -128,10 +197,12 @@ public class SlicesDatabaseAccessor {
         int numResults = resultCursor.getCount();
 
         if (numResults == 0) {
+            resultCursor.close();
             throw new IllegalStateException("Invalid Slices key from path: " + path);
         }
 
         if (numResults > 1) {
+            resultCursor.close();
             throw new IllegalStateException(
                     "Should not match more than 1 slice with path: " + path);
         }
@@ -146,6 +217,14 @@ public class SlicesDatabaseAccessor {
                 .toString();
     }
 
+    private String buildKeysMatchWhereClause(int keyCount) {
+        final StringBuilder builder = new StringBuilder(IndexColumns.KEY).append(" IN (");
+        for (int i = 0; i < keyCount; i++) {
+            builder.append(i == 0 ? "?" : ", ?");
+        }
+        return builder.append(")").toString();
+    }
+
     private SliceData buildSliceData(Cursor cursor, Uri uri, boolean isIntentOnly) {
         final String key = cursor.getString(cursor.getColumnIndex(IndexColumns.KEY));
         final String title = cursor.getString(cursor.getColumnIndex(IndexColumns.TITLE));
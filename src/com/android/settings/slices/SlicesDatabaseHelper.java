@@ -25,6 +25,7 @@ import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Defines the schema for the Slices database.
@@ -121,6 +122,11 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
 
     private final Context mContext;
 
+    /**
+     * Incremented each time the index is rebuilt, to tell data read from an older index apart.
+     */
+    private final AtomicInteger mIndexGeneration = new AtomicInteger();
+
     private static SlicesDatabaseHelper sSingleton;
 
     public static synchronized SlicesDatabaseHelper getInstance(Context context) {
@@ -160,6 +166,7 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
                 .apply();
         dropTables(db);
         createDatabases(db);
+        mIndexGeneration.incrementAndGet();
     }
 
     /**
@@ -169,6 +176,15 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
     public void setIndexedState() {
         setBuildIndexed();
         setLocaleIndexed();
+        mIndexGeneration.incrementAndGet();
+    }
+
+    /**
+     * @return the locale and the generation of the indexed data, which change whenever the data
+     * is rebuilt or must be rebuilt.
+     */
+    public String getIndexVersion() {
+        return Locale.getDefault().toString() + ":" + mIndexGeneration.get();
     }
 
     /**
@@ -25,6 +25,7 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.overlay.SupportFeatureProvider;
 import com.android.settings.search.BaseSearchIndexProvider;
 import com.android.settings.search.Indexable;
+import com.android.settings.search.NonIndexableKeysCache;
 import com.android.settings.search.SearchIndexableRaw;
 
 import java.util.ArrayList;
@@ -76,6 +77,13 @@ public class SupportDashboardActivity extends Activity implements Indexable {
                     return result;
                 }
 
+                @Override
+                public NonIndexableKeysCache.Inputs getNonIndexableKeysInputs(
+                        Context context) {
+                    // Only depends on a build time config.
+                    return new NonIndexableKeysCache.Inputs();
+                }
+
                 @Override
                 public List<String> getNonIndexableKeys(Context context) {
                     final List<String> keys = super.getNonIndexableKeys(context);
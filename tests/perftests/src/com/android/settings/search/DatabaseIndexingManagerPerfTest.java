@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import static com.android.settings.search.IndexingBenchmark.SYNTHETIC_PACKAGE;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+
+import com.android.settings.search.indexing.PreIndexData;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Benchmarks the database side of indexing with a synthetic provider of growing size.
+ *
+ * The benchmarks index into a separate database through {@link IsolatedIndexContext}, and
+ * leave the search index of the device and its snapshot untouched.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class DatabaseIndexingManagerPerfTest {
+
+    @Parameterized.Parameters(name = "{0} rows")
+    public static Collection<Object[]> rowCounts() {
+        return Arrays.asList(new Object[][] {{100}, {1000}, {10000}});
+    }
+
+    private final int mRows;
+
+    private IsolatedIndexContext mContext;
+    private IndexDatabaseHelper mHelper;
+    private DatabaseIndexingManager mManager;
+    private SQLiteDatabase mDb;
+    private PreIndexData mPreIndexData;
+
+    public DatabaseIndexingManagerPerfTest(int rows) {
+        mRows = rows;
+    }
+
+    @Before
+    public void setUp() {
+        mContext = new IsolatedIndexContext(InstrumentationRegistry.getTargetContext());
+        mHelper = new IndexDatabaseHelper(mContext);
+        mManager = new DatabaseIndexingManager(mContext, mHelper);
+        mDb = mHelper.getWritableDatabase();
+        mPreIndexData = IndexingBenchmark.createPreIndexData(mContext, mRows);
+    }
+
+    @After
+    public void tearDown() {
+        mHelper.close();
+        mContext.deleteDatabase(mHelper.getDatabaseName());
+        mContext.deleteCacheDir();
+    }
+
+    @Test
+    public void fullIndex() throws Exception {
+        IndexingBenchmark.run("fullIndex_" + mRows, mRows,
+                () -> mHelper.reconstruct(mDb),
+                () -> mManager.updateDatabase(mPreIndexData, true /* needsReindexing */));
+    }
+
+    @Test
+    public void incrementalIndex() throws Exception {
+        final PreIndexData updatedData = new PreIndexData(mPreIndexData);
+        updatedData.updatedPackages.add(SYNTHETIC_PACKAGE);
+        mManager.updateDatabase(mPreIndexData, true /* needsReindexing */);
+
+        IndexingBenchmark.run("incrementalIndex_" + mRows, mRows,
+                () -> { },
+                () -> mManager.updateDatabase(updatedData, false /* needsReindexing */));
+    }
+
+    @Test
+    public void nonIndexableKeyReconciliation() throws Exception {
+        mManager.updateDatabase(mPreIndexData, true /* needsReindexing */);
+        // Flip which rows are non-indexable, so every iteration updates a tenth of the rows.
+        final Map<String, Set<String>> original = mPreIndexData.nonIndexableKeys;
+        final Map<String, Set<String>> flipped = new HashMap<>();
+        final Set<String> flippedKeys = new HashSet<>();
+        for (int i = 5; i < mRows; i += 10) {
+            flippedKeys.add("synthetic_key_" + i);
+        }
+        flipped.put(SYNTHETIC_PACKAGE, flippedKeys);
+        final boolean[] useFlipped = {false};
+
+        IndexingBenchmark.run("nonIndexableKeyReconciliation_" + mRows, mRows,
+                () -> useFlipped[0] = !useFlipped[0],
+                () -> {
+                    mDb.beginTransaction();
+                    try {
+                        mManager.updateDataInDatabase(mDb,
+                                useFlipped[0] ? flipped : original);
+                        mDb.setTransactionSuccessful();
+                    } finally {
+                        mDb.endTransaction();
+                    }
+                });
+    }
+
+    @Test
+    public void nonIndexableKeyReconciliation_unchanged() throws Exception {
+        mManager.updateDatabase(mPreIndexData, true /* needsReindexing */);
+
+        IndexingBenchmark.run("nonIndexableKeyReconciliationUnchanged_" + mRows, mRows,
+                () -> { },
+                () -> mManager.updateDataInDatabase(mDb,
+                        Collections.unmodifiableMap(mPreIndexData.nonIndexableKeys)));
+    }
+}
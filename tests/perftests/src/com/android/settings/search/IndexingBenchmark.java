@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.util.Log;
+
+import com.android.settings.search.indexing.PreIndexData;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Runs a benchmark body a fixed number of times and reports its latency percentiles and
+ * maximum, throughput and allocations as instrumentation status.
+ */
+public class IndexingBenchmark {
+
+    private static final String TAG = "SettingsBenchmark";
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURED_ITERATIONS = 20;
+
+    /**
+     * Cumulative bytes allocated by the runtime, see {@link Debug#getRuntimeStat}.
+     */
+    private static final String STAT_BYTES_ALLOCATED = "art.gc.bytes-allocated";
+
+    /**
+     * Package of the synthetic third-party provider.
+     */
+    public static final String SYNTHETIC_PACKAGE = "com.android.settings.tests.perf.provider";
+
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    private IndexingBenchmark() {
+    }
+
+    /**
+     * Runs {@param body} after {@param setUp} for each iteration, only timing {@param body},
+     * and reports the results under {@param name}. {@param rows} is the number of rows an
+     * iteration processes.
+     */
+    public static void run(String name, int rows, Step setUp, Step body) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            setUp.run();
+            body.run();
+        }
+
+        final long[] durations = new long[MEASURED_ITERATIONS];
+        long totalDuration = 0;
+        long totalAllocated = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            setUp.run();
+            final long allocatedBefore = getBytesAllocated();
+            final long start = SystemClock.elapsedRealtimeNanos();
+            body.run();
+            durations[i] = SystemClock.elapsedRealtimeNanos() - start;
+            totalAllocated += getBytesAllocated() - allocatedBefore;
+            totalDuration += durations[i];
+        }
+
+        Arrays.sort(durations);
+        final Bundle status = new Bundle();
+        status.putLong(name + "_p50_ns", percentile(durations, 50));
+        // Tail percentiles beyond p90 are not meaningful over this few iterations.
+        status.putLong(name + "_p90_ns", percentile(durations, 90));
+        status.putLong(name + "_max_ns", durations[MEASURED_ITERATIONS - 1]);
+        status.putLong(name + "_rows_per_s", rows * 1_000_000_000L * MEASURED_ITERATIONS
+                / Math.max(totalDuration, 1));
+        status.putLong(name + "_allocated_bytes", totalAllocated / MEASURED_ITERATIONS);
+        status.putLong(name + "_allocated_bytes_per_s", totalAllocated * 1_000_000_000L
+                / Math.max(totalDuration, 1));
+        Log.i(TAG, name + ": " + status);
+        InstrumentationRegistry.getInstrumentation().sendStatus(Activity.RESULT_OK, status);
+    }
+
+    /**
+     * @return {@param rows} raw rows from the synthetic third-party provider, every tenth of
+     * which is non-indexable.
+     */
+    public static PreIndexData createPreIndexData(Context context, int rows) {
+        final PreIndexData data = new PreIndexData();
+        final Set<String> nonIndexableKeys = new HashSet<>();
+        for (int i = 0; i < rows; i++) {
+            final SearchIndexableRaw raw = new SearchIndexableRaw(context);
+            raw.title = "Synthetic setting " + i;
+            raw.summaryOn = "Summary of synthetic setting " + i;
+            raw.keywords = "synthetic, benchmark, row" + i;
+            raw.screenTitle = "Synthetic screen " + (i / 20);
+            raw.className = "com.android.settings.tests.perf.Screen" + (i / 20);
+            raw.intentAction = "com.android.settings.tests.perf.ACTION";
+            raw.intentTargetPackage = SYNTHETIC_PACKAGE;
+            raw.packageName = SYNTHETIC_PACKAGE;
+            raw.key = "synthetic_key_" + i;
+            data.dataToUpdate.add(raw);
+            if (i % 10 == 0) {
+                nonIndexableKeys.add(raw.key);
+            }
+        }
+        data.nonIndexableKeys.put(SYNTHETIC_PACKAGE, nonIndexableKeys);
+        return data;
+    }
+
+    private static long percentile(long[] sortedValues, int percentile) {
+        final int index = (int) Math.ceil(percentile / 100.0 * sortedValues.length) - 1;
+        return sortedValues[Math.max(0, Math.min(index, sortedValues.length - 1))];
+    }
+
+    private static long getBytesAllocated() {
+        final String value = Debug.getRuntimeStat(STAT_BYTES_ALLOCATED);
+        try {
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.database.DatabaseErrorHandler;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.io.File;
+
+/**
+ * Keeps the databases, shared preferences and cache files of a benchmark apart from those of
+ * the device, so indexing benchmarks never touch the real search index or its snapshot.
+ */
+public class IsolatedIndexContext extends ContextWrapper {
+
+    private static final String PREFIX = "perftest_";
+
+    public IsolatedIndexContext(Context base) {
+        super(base);
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        // IndexDatabaseHelper keeps the application context, which must stay isolated too.
+        return this;
+    }
+
+    @Override
+    public File getDatabasePath(String name) {
+        return super.getDatabasePath(PREFIX + name);
+    }
+
+    @Override
+    public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+            SQLiteDatabase.CursorFactory factory) {
+        return super.openOrCreateDatabase(PREFIX + name, mode, factory);
+    }
+
+    @Override
+    public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+            SQLiteDatabase.CursorFactory factory, DatabaseErrorHandler errorHandler) {
+        return super.openOrCreateDatabase(PREFIX + name, mode, factory, errorHandler);
+    }
+
+    @Override
+    public boolean deleteDatabase(String name) {
+        return super.deleteDatabase(PREFIX + name);
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(String name, int mode) {
+        return super.getSharedPreferences(PREFIX + name, mode);
+    }
+
+    @Override
+    public File getCacheDir() {
+        final File cacheDir = new File(super.getCacheDir(), PREFIX + "cache");
+        cacheDir.mkdirs();
+        return cacheDir;
+    }
+
+    /**
+     * Deletes the cache files written through this context.
+     */
+    public void deleteCacheDir() {
+        delete(getCacheDir());
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
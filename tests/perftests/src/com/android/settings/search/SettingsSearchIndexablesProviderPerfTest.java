@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.SearchIndexablesContract;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Benchmarks the queries Settings answers when it is crawled by the indexer.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class SettingsSearchIndexablesProviderPerfTest {
+
+    private static final String AUTHORITY = "com.android.settings";
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        mResolver = context.getContentResolver();
+    }
+
+    @Test
+    public void queryXmlResources() throws Exception {
+        runQuery("queryXmlResources", SearchIndexablesContract.INDEXABLES_XML_RES_PATH);
+    }
+
+    @Test
+    public void queryRawData() throws Exception {
+        runQuery("queryRawData", SearchIndexablesContract.INDEXABLES_RAW_PATH);
+    }
+
+    @Test
+    public void queryNonIndexableKeys() throws Exception {
+        runQuery("queryNonIndexableKeys", SearchIndexablesContract.NON_INDEXABLES_KEYS_PATH);
+    }
+
+    private void runQuery(String name, String path) throws Exception {
+        final Uri uri = new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(AUTHORITY)
+                .appendPath(path)
+                .build();
+        final int rows;
+        try (Cursor cursor = mResolver.query(uri, null, null, null, null)) {
+            rows = cursor.getCount();
+        }
+
+        IndexingBenchmark.run(name, rows,
+                () -> { },
+                () -> {
+                    try (Cursor cursor = mResolver.query(uri, null, null, null, null)) {
+                        cursor.getCount();
+                    }
+                });
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search.indexing;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ResolveInfo;
+import android.provider.SearchIndexablesContract;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+
+import com.android.settings.search.IndexingBenchmark;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Benchmarks the conversion of raw data from a synthetic provider of growing size, and of the
+ * xml resources of the providers installed on the device.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class IndexDataConverterPerfTest {
+
+    @Parameterized.Parameters(name = "{0} rows")
+    public static Collection<Object[]> rowCounts() {
+        return Arrays.asList(new Object[][] {{100}, {1000}, {10000}});
+    }
+
+    private final int mRows;
+
+    private Context mContext;
+    private IndexDataConverter mConverter;
+
+    public IndexDataConverterPerfTest(int rows) {
+        mRows = rows;
+    }
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mConverter = new IndexDataConverter(mContext);
+    }
+
+    @Test
+    public void convertRawData() throws Exception {
+        final PreIndexData preIndexData = IndexingBenchmark.createPreIndexData(mContext, mRows);
+        final int[] converted = {0};
+
+        IndexingBenchmark.run("convertRawData_" + mRows, mRows,
+                () -> converted[0] = 0,
+                () -> mConverter.convertPreIndexDataToIndexData(preIndexData,
+                        row -> converted[0]++));
+    }
+
+    @Test
+    public void convertInstalledXmlResources() throws Exception {
+        // The installed providers do not depend on the row count, so only run once.
+        if (mRows != 100) {
+            return;
+        }
+        final List<ResolveInfo> providers = mContext.getPackageManager()
+                .queryIntentContentProviders(
+                        new Intent(SearchIndexablesContract.PROVIDER_INTERFACE), 0 /* flags */);
+        final PreIndexData preIndexData = new PreIndexDataCollector(mContext)
+                .collectIndexableData(providers, true /* isFullIndex */);
+        final int rows = mConverter.convertPreIndexDataToIndexData(preIndexData).size();
+
+        IndexingBenchmark.run("convertInstalledXmlResources", rows,
+                () -> { },
+                () -> mConverter.convertPreIndexDataToIndexData(preIndexData, row -> { }));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search.indexing;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ResolveInfo;
+import android.provider.SearchIndexablesContract;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.filters.LargeTest;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.android.settings.search.IndexingBenchmark;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Benchmarks crawling the search indexable providers installed on the device.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class PreIndexDataCollectorPerfTest {
+
+    private Context mContext;
+    private List<ResolveInfo> mProviders;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mProviders = mContext.getPackageManager().queryIntentContentProviders(
+                new Intent(SearchIndexablesContract.PROVIDER_INTERFACE), 0 /* flags */);
+    }
+
+    @Test
+    public void collectFullIndex() throws Exception {
+        final PreIndexDataCollector collector = new PreIndexDataCollector(mContext);
+        final int rows = collector.collectIndexableData(mProviders, true /* isFullIndex */)
+                .dataToUpdate.size();
+
+        IndexingBenchmark.run("collectFullIndex", rows,
+                () -> { },
+                () -> collector.collectIndexableData(mProviders, true /* isFullIndex */));
+    }
+
+    @Test
+    public void collectNonIndexableKeysOnly() throws Exception {
+        final PreIndexDataCollector collector = new PreIndexDataCollector(mContext);
+
+        IndexingBenchmark.run("collectNonIndexableKeysOnly", mProviders.size(),
+                () -> { },
+                () -> collector.collectIndexableData(mProviders, false /* isFullIndex */,
+                        Collections.emptySet()));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import com.android.settings.testutils.FakeToggleController;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ControllerInstanceCacheTest {
+
+    private static final String CONTROLLER_NAME = FakeToggleController.class.getName();
+
+    private Context mContext;
+    private ControllerInstanceCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCache = new ControllerInstanceCache(ControllerInstanceCache.MAX_AGE_MS);
+    }
+
+    @Test
+    public void get_sameClassAndKey_shouldReuseInstance() {
+        final BasePreferenceController controller = mCache.get(mContext, CONTROLLER_NAME, "key");
+
+        assertThat(controller).isInstanceOf(FakeToggleController.class);
+        assertThat(controller.getPreferenceKey()).isEqualTo("key");
+        assertThat(mCache.get(mContext, CONTROLLER_NAME, "key")).isSameAs(controller);
+    }
+
+    @Test
+    public void get_differentKey_shouldCreateNewInstance() {
+        final BasePreferenceController controller = mCache.get(mContext, CONTROLLER_NAME, "key");
+
+        assertThat(mCache.get(mContext, CONTROLLER_NAME, "other_key")).isNotSameAs(controller);
+    }
+
+    @Test
+    public void get_differentContext_shouldCreateNewInstance() {
+        final BasePreferenceController controller = mCache.get(mContext, CONTROLLER_NAME, "key");
+
+        assertThat(mCache.get(new ContextWrapper(mContext), CONTROLLER_NAME, "key"))
+                .isNotSameAs(controller);
+    }
+
+    @Test
+    public void get_otherThread_shouldCreateNewInstance() throws Exception {
+        final BasePreferenceController controller = mCache.get(mContext, CONTROLLER_NAME, "key");
+        final BasePreferenceController[] otherController = new BasePreferenceController[1];
+
+        final Thread thread = new Thread(
+                () -> otherController[0] = mCache.get(mContext, CONTROLLER_NAME, "key"));
+        thread.start();
+        thread.join();
+
+        assertThat(otherController[0]).isNotNull();
+        assertThat(otherController[0]).isNotSameAs(controller);
+    }
+
+    @Test
+    public void get_expired_shouldCreateNewInstance() {
+        mCache = new ControllerInstanceCache(0 /* maxAgeMs */);
+        final BasePreferenceController controller = mCache.get(mContext, CONTROLLER_NAME, "key");
+
+        assertThat(mCache.get(mContext, CONTROLLER_NAME, "key")).isNotSameAs(controller);
+    }
+
+    @Test
+    public void get_afterClear_shouldCreateNewInstance() {
+        final BasePreferenceController controller = mCache.get(mContext, CONTROLLER_NAME, "key");
+
+        mCache.clear();
+
+        assertThat(mCache.get(mContext, CONTROLLER_NAME, "key")).isNotSameAs(controller);
+    }
+
+    @Test
+    public void get_invalidController_shouldReturnNull() {
+        assertThat(mCache.get(mContext, "not.a.Controller", "key")).isNull();
+    }
+}
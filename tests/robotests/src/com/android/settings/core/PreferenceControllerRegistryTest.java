@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.core;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class PreferenceControllerRegistryTest {
+
+    private Context mContext;
+    private PreferenceControllerRegistry mRegistry;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mRegistry = new PreferenceControllerRegistry();
+    }
+
+    @Test
+    public void create_registeredFactory_shouldCreateController() {
+        mRegistry.register(FakeController.class, context -> new FakeController(context, "key"));
+        mRegistry.registerWithKey(FakeController.class, FakeController::new);
+
+        assertThat(mRegistry.isRegistered(FakeController.class.getName())).isTrue();
+        assertThat(mRegistry.create(mContext, FakeController.class.getName()).getPreferenceKey())
+                .isEqualTo("key");
+        assertThat(mRegistry.create(mContext, FakeController.class.getName(), "other")
+                .getPreferenceKey()).isEqualTo("other");
+    }
+
+    @Test
+    public void create_noFactory_shouldReturnNull() {
+        assertThat(mRegistry.isRegistered(FakeController.class.getName())).isFalse();
+        assertThat(mRegistry.create(mContext, FakeController.class.getName())).isNull();
+        assertThat(mRegistry.create(mContext, FakeController.class.getName(), "key")).isNull();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void create_factoryThrows_shouldThrowIllegalStateException() {
+        mRegistry.registerWithKey(FakeController.class, (context, key) -> {
+            throw new NullPointerException();
+        });
+
+        mRegistry.create(mContext, FakeController.class.getName(), "key");
+    }
+
+    @Test
+    public void createInstance_notRegistered_shouldFallBackToReflection() {
+        final BasePreferenceController controller = BasePreferenceController.createInstance(
+                mContext, FakeController.class.getName(), "key");
+
+        assertThat(controller).isInstanceOf(FakeController.class);
+        assertThat(controller.getPreferenceKey()).isEqualTo("key");
+    }
+
+    public static class FakeController extends BasePreferenceController {
+
+        public FakeController(Context context, String key) {
+            super(context, key);
+        }
+
+        @Override
+        public int getAvailabilityStatus() {
+            return AVAILABLE;
+        }
+    }
+}
@@ -57,6 +57,7 @@ public class PreferenceXmlParserUtilsTest {
     @Before
     public void setUp() {
         mContext = RuntimeEnvironment.application;
+        PreferenceXmlParserUtils.clearMetadataCache();
     }
 
     @Test
@@ -261,6 +262,37 @@ public class PreferenceXmlParserUtilsTest {
         assertThat(keywords).isEqualTo(expectedKeywords);
     }
 
+    @Test
+    public void extractMetadata_calledTwice_returnsSameMetadataInSeparateBundles()
+            throws IOException, XmlPullParserException {
+        final int flags = MetadataFlag.FLAG_NEED_KEY | MetadataFlag.FLAG_NEED_PREF_TITLE;
+        final List<Bundle> first = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings, flags);
+        first.get(0).putString(PreferenceXmlParserUtils.METADATA_KEY, "modified");
+
+        final List<Bundle> second = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings, flags);
+
+        assertThat(second).hasSize(first.size());
+        assertThat(second.get(0).getString(PreferenceXmlParserUtils.METADATA_KEY))
+                .isNotEqualTo("modified");
+    }
+
+    @Test
+    public void extractMetadata_includeAllElements_containsNonPreferenceElements()
+            throws IOException, XmlPullParserException {
+        final List<Bundle> supported = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings,
+                MetadataFlag.FLAG_INCLUDE_PREF_SCREEN | MetadataFlag.FLAG_NEED_PREF_TYPE);
+        final List<Bundle> all = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.display_settings,
+                MetadataFlag.FLAG_INCLUDE_ALL_ELEMENTS | MetadataFlag.FLAG_NEED_PREF_TYPE);
+
+        assertThat(all.size()).isAtLeast(supported.size());
+        assertThat(all.get(0).getString(PreferenceXmlParserUtils.METADATA_PREF_TYPE))
+                .isEqualTo(PreferenceXmlParserUtils.PREF_SCREEN_TAG);
+    }
+
     /**
      * @param resId the ID for the XML preference
      * @return an XML resource parser that points to the start tag
@@ -50,6 +50,11 @@ public class XmlControllerAttributeTest {
             "Controllers added in XML need to extend com.android.settings.core"
                     + ".BasePreferenceController\nThese controllers do not:\n";
 
+    private static final String UNREGISTERED_CONTROLLER_ERROR =
+            "Controllers added in XML need a factory in "
+                    + "com.android.settings.core.PreferenceControllerRegistry"
+                    + "\nThese controllers are missing one:\n";
+
     private static final String BAD_CLASSNAME_ERROR =
             "The following controllers set in the XML did not have valid class names:\n";
 
@@ -109,6 +114,25 @@ public class XmlControllerAttributeTest {
         assertWithMessage(badClassNameError).that(badClassNameControllers).isEmpty();
     }
 
+    @Test
+    public void testAllIndexableXML_controllersRegistered() {
+        Set<Integer> xmlSet = getIndexableXml();
+        xmlSet.addAll(whitelistXml);
+
+        final PreferenceControllerRegistry registry = PreferenceControllerRegistry.getInstance();
+        Set<String> unregisteredControllers = new HashSet<>();
+        for (int resId : xmlSet) {
+            for (String controllerClassName : getXmlControllers(resId)) {
+                if (!registry.isRegistered(controllerClassName)) {
+                    unregisteredControllers.add(controllerClassName);
+                }
+            }
+        }
+
+        assertWithMessage(buildErrorMessage(UNREGISTERED_CONTROLLER_ERROR,
+                unregisteredControllers)).that(unregisteredControllers).isEmpty();
+    }
+
     private Set<Integer> getIndexableXml() {
         Set<Integer> xmlResSet = new HashSet<>();
 
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.support.v7.preference.Preference;
+import android.support.v7.preference.PreferenceScreen;
+
+import com.android.settings.core.BasePreferenceController;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(shadows = ShadowThreadUtils.class)
+public class ControllerStateRefresherTest {
+
+    @Mock
+    private PreferenceScreen mScreen;
+
+    private Context mContext;
+    private List<Runnable> mTasks;
+    private ControllerStateRefresher mRefresher;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mTasks = new ArrayList<>();
+        final Executor executor = mTasks::add;
+        mRefresher = new ControllerStateRefresher(executor);
+    }
+
+    @Test
+    public void refresh_shouldApplyComputedStatesInOrder() {
+        final List<String> applied = new ArrayList<>();
+        final TestController first = new TestController(mContext, "first", applied);
+        final TestController second = new TestController(mContext, "second", applied);
+        final Preference firstPreference = addPreference("first");
+        final Preference secondPreference = addPreference("second");
+
+        mRefresher.refresh(mScreen, Arrays.asList(first, second));
+        // Complete out of order, states must still be applied in controller order.
+        mTasks.get(1).run();
+        assertThat(applied).isEmpty();
+        mTasks.get(0).run();
+
+        assertThat(applied).containsExactly("first", "second").inOrder();
+        assertThat(firstPreference.getSummary()).isEqualTo("state of first");
+        assertThat(secondPreference.getSummary()).isEqualTo("state of second");
+    }
+
+    @Test
+    public void refresh_unavailableController_shouldNotApplyState() {
+        final List<String> applied = new ArrayList<>();
+        final TestController controller = new TestController(mContext, "key", applied);
+        controller.mAvailable = false;
+        addPreference("key");
+
+        mRefresher.refresh(mScreen, Arrays.asList(controller));
+        mTasks.get(0).run();
+
+        assertThat(applied).isEmpty();
+        assertThat(controller.mComputed).isFalse();
+    }
+
+    @Test
+    public void refresh_computeStateThrows_shouldApplyOtherStates() {
+        final List<String> applied = new ArrayList<>();
+        final TestController failing = new TestController(mContext, "failing", applied);
+        failing.mThrow = true;
+        final TestController controller = new TestController(mContext, "key", applied);
+        addPreference("failing");
+        addPreference("key");
+
+        mRefresher.refresh(mScreen, Arrays.asList(failing, controller));
+        mTasks.get(0).run();
+        mTasks.get(1).run();
+
+        assertThat(applied).containsExactly("key");
+    }
+
+    @Test
+    public void refresh_cancelled_shouldNotApplyState() {
+        final List<String> applied = new ArrayList<>();
+        final TestController controller = new TestController(mContext, "key", applied);
+        addPreference("key");
+
+        mRefresher.refresh(mScreen, Arrays.asList(controller));
+        mRefresher.cancel();
+        mTasks.get(0).run();
+
+        assertThat(applied).isEmpty();
+    }
+
+    @Test
+    public void refresh_superseded_shouldOnlyApplyLatestRefresh() {
+        final List<String> applied = new ArrayList<>();
+        final TestController controller = new TestController(mContext, "key", applied);
+        addPreference("key");
+
+        mRefresher.refresh(mScreen, Arrays.asList(controller));
+        mRefresher.refresh(mScreen, Arrays.asList(controller));
+        mTasks.get(0).run();
+        assertThat(applied).isEmpty();
+        mTasks.get(1).run();
+
+        assertThat(applied).containsExactly("key");
+    }
+
+    @Test
+    public void refresh_stateNotApplied_shouldHidePreferenceUntilApplied() {
+        final TestController controller =
+                new TestController(mContext, "key", new ArrayList<>());
+        final Preference preference = addPreference("key");
+
+        mRefresher.refresh(mScreen, Arrays.asList(controller));
+        assertThat(preference.isVisible()).isFalse();
+        mTasks.get(0).run();
+
+        assertThat(preference.isVisible()).isTrue();
+        assertThat(preference.getSummary()).isEqualTo("state of key");
+    }
+
+    @Test
+    public void refresh_stateApplied_shouldKeepPreferenceVisible() {
+        final TestController controller =
+                new TestController(mContext, "key", new ArrayList<>());
+        final Preference preference = addPreference("key");
+        mRefresher.refresh(mScreen, Arrays.asList(controller));
+        mTasks.get(0).run();
+
+        mRefresher.refresh(mScreen, Arrays.asList(controller));
+
+        assertThat(preference.isVisible()).isTrue();
+    }
+
+    @Test
+    public void refresh_unavailableController_shouldKeepPreferenceHidden() {
+        final TestController controller =
+                new TestController(mContext, "key", new ArrayList<>());
+        controller.mAvailable = false;
+        final Preference preference = addPreference("key");
+
+        mRefresher.refresh(mScreen, Arrays.asList(controller));
+        mTasks.get(0).run();
+
+        assertThat(preference.isVisible()).isFalse();
+    }
+
+    private Preference addPreference(String key) {
+        final Preference preference = new Preference(mContext);
+        preference.setKey(key);
+        when(mScreen.findPreference(key)).thenReturn(preference);
+        return preference;
+    }
+
+    private static class TestController extends BasePreferenceController {
+
+        private final List<String> mApplied;
+        private boolean mAvailable = true;
+        private boolean mThrow;
+        private boolean mComputed;
+
+        TestController(Context context, String key, List<String> applied) {
+            super(context, key);
+            mApplied = applied;
+        }
+
+        @Override
+        public int getAvailabilityStatus() {
+            return mAvailable ? AVAILABLE : CONDITIONALLY_UNAVAILABLE;
+        }
+
+        @Override
+        public boolean hasAsyncState() {
+            return true;
+        }
+
+        @Override
+        public Object computeState() {
+            mComputed = true;
+            if (mThrow) {
+                throw new IllegalStateException();
+            }
+            return "state of " + getPreferenceKey();
+        }
+
+        @Override
+        public void applyState(Preference preference, Object state) {
+            mApplied.add(getPreferenceKey());
+            preference.setSummary((String) state);
+        }
+    }
+}
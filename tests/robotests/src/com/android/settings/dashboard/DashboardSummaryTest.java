@@ -64,6 +64,8 @@ public class DashboardSummaryTest {
     private SummaryLoader mSummaryLoader;
     @Mock
     private SuggestionControllerMixin mSuggestionControllerMixin;
+    @Mock
+    private HomepageSnapshot mHomepageSnapshot;
 
     private Context mContext;
     private DashboardSummary mSummary;
@@ -82,6 +84,7 @@ public class DashboardSummaryTest {
         ReflectionHelpers.setField(mSummary, "mLayoutManager", mLayoutManager);
         ReflectionHelpers.setField(mSummary, "mConditionManager", mConditionManager);
         ReflectionHelpers.setField(mSummary, "mSummaryLoader", mSummaryLoader);
+        ReflectionHelpers.setField(mSummary, "mHomepageSnapshot", mHomepageSnapshot);
     }
 
     @Test
@@ -180,4 +183,24 @@ public class DashboardSummaryTest {
         mSummary.onCategoriesChanged();
         verify(mSummary).rebuildUI();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void restoreSnapshot_hasSnapshot_shouldSetCategoryOnAdapter() {
+        final DashboardCategory snapshot = new DashboardCategory();
+        when(mHomepageSnapshot.restore()).thenReturn(snapshot);
+
+        mSummary.restoreSnapshot();
+
+        verify(mAdapter).setCategory(snapshot);
+    }
+
+    @Test
+    public void restoreSnapshot_categoryLoaded_shouldNotRestore() {
+        ReflectionHelpers.setField(mSummary, "mStagingCategory", new DashboardCategory());
+
+        mSummary.restoreSnapshot();
+
+        verify(mHomepageSnapshot, never()).restore();
+        verify(mAdapter, never()).setCategory(any());
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settingslib.drawer.CategoryKey;
+import com.android.settingslib.drawer.DashboardCategory;
+import com.android.settingslib.drawer.Tile;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class HomepageSnapshotTest {
+
+    private Context mContext;
+    private HomepageSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        new File(mContext.getFilesDir(), HomepageSnapshot.FILE_NAME).delete();
+        mSnapshot = new HomepageSnapshot(mContext);
+    }
+
+    @Test
+    public void restore_noSnapshot_shouldReturnNull() {
+        assertThat(mSnapshot.restore()).isNull();
+    }
+
+    @Test
+    public void restore_afterSave_shouldReturnSavedCategory() {
+        final DashboardCategory category = new DashboardCategory();
+        category.key = CategoryKey.CATEGORY_HOMEPAGE;
+        final Tile tile = new Tile();
+        tile.title = "title";
+        tile.summary = "summary";
+        tile.intent = new Intent().setComponent(new ComponentName("pkg", "class"));
+        category.addTile(tile);
+
+        mSnapshot.save(mSnapshot.marshall(category));
+        final DashboardCategory restored = new HomepageSnapshot(mContext).restore();
+
+        assertThat(restored.key).isEqualTo(CategoryKey.CATEGORY_HOMEPAGE);
+        assertThat(restored.getTilesCount()).isEqualTo(1);
+        final Tile restoredTile = restored.getTile(0);
+        assertThat(restoredTile.title.toString()).isEqualTo("title");
+        assertThat(restoredTile.summary.toString()).isEqualTo("summary");
+        assertThat(restoredTile.intent.getComponent())
+                .isEqualTo(new ComponentName("pkg", "class"));
+    }
+
+    @Test
+    public void restore_corruptedSnapshot_shouldReturnNull() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(
+                new File(mContext.getFilesDir(), HomepageSnapshot.FILE_NAME))) {
+            out.write(new byte[] {1, 2, 3});
+        }
+
+        assertThat(mSnapshot.restore()).isNull();
+    }
+
+    @Test
+    public void marshall_nullCategory_shouldReturnNull() {
+        assertThat(mSnapshot.marshall(null)).isNull();
+    }
+}
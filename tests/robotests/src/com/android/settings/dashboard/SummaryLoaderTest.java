@@ -17,14 +17,18 @@
 package com.android.settings.dashboard;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import android.app.Activity;
+import android.content.ComponentName;
 import android.content.Intent;
 
 import com.android.settings.testutils.FakeFeatureFactory;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
 import com.android.settingslib.drawer.CategoryKey;
 import com.android.settingslib.drawer.DashboardCategory;
 import com.android.settingslib.drawer.Tile;
@@ -32,10 +36,16 @@ import com.android.settingslib.drawer.Tile;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.Robolectric;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @RunWith(SettingsRobolectricTestRunner.class)
+@Config(shadows = ShadowThreadUtils.class)
 public class SummaryLoaderTest {
 
     private static final String SUMMARY_1 = "summary1";
@@ -45,6 +55,12 @@ public class SummaryLoaderTest {
     private boolean mCallbackInvoked;
     private Tile mTile;
     private FakeFeatureFactory mFeatureFactory;
+    private Activity mActivity;
+    private List<Runnable> mWorkerTasks;
+    private List<List<Tile>> mPublishedTiles;
+
+    @Mock
+    private SummaryLoader.SummaryProvider mSummaryProvider;
 
     @Before
     public void SetUp() {
@@ -55,9 +71,11 @@ public class SummaryLoaderTest {
         mTile.summary = SUMMARY_1;
         mCallbackInvoked = false;
 
-        final Activity activity = Robolectric.buildActivity(Activity.class).get();
+        mActivity = Robolectric.buildActivity(Activity.class).get();
+        mWorkerTasks = new ArrayList<>();
+        mPublishedTiles = new ArrayList<>();
 
-        mSummaryLoader = new SummaryLoader(activity, CategoryKey.CATEGORY_HOMEPAGE);
+        mSummaryLoader = new SummaryLoader(mActivity, CategoryKey.CATEGORY_HOMEPAGE);
         mSummaryLoader.setSummaryConsumer(tile -> mCallbackInvoked = true);
     }
 
@@ -97,4 +115,76 @@ public class SummaryLoaderTest {
 
         assertThat(tile.summary).isEqualTo(testSummary);
     }
+
+    @Test
+    public void setSummary_shouldPublishChangedTile() {
+        final SummaryLoader loader = createLoaderWithProvider();
+
+        loader.setSummary(mSummaryProvider, SUMMARY_2);
+
+        assertThat(mTile.summary).isEqualTo(SUMMARY_2);
+        assertThat(mPublishedTiles).hasSize(1);
+        assertThat(mPublishedTiles.get(0)).containsExactly(mTile);
+    }
+
+    @Test
+    public void setSummary_sameSummaryTwice_shouldPublishOnce() {
+        final SummaryLoader loader = createLoaderWithProvider();
+
+        loader.setSummary(mSummaryProvider, SUMMARY_2);
+        loader.setSummary(mSummaryProvider, SUMMARY_2);
+
+        assertThat(mPublishedTiles).hasSize(1);
+    }
+
+    @Test
+    public void setSummary_afterRelease_shouldNotPublish() {
+        final SummaryLoader loader = createLoaderWithProvider();
+
+        loader.release();
+        loader.setSummary(mSummaryProvider, SUMMARY_2);
+
+        assertThat(mPublishedTiles).isEmpty();
+    }
+
+    @Test
+    public void setListening_shouldUpdateProvidersOnWorker() {
+        final SummaryLoader loader = createLoaderWithProvider();
+
+        loader.setListening(true);
+        loader.setListening(false);
+        verify(mSummaryProvider, never()).setListening(true);
+
+        // Each task is handed to the worker threads once the previous one is done.
+        for (int i = 0; i < mWorkerTasks.size(); i++) {
+            mWorkerTasks.get(i).run();
+        }
+        assertThat(mWorkerTasks).hasSize(2);
+        verify(mSummaryProvider).setListening(true);
+        verify(mSummaryProvider).setListening(false);
+    }
+
+    private SummaryLoader createLoaderWithProvider() {
+        final ComponentName component = new ComponentName("pkg", "class");
+        mTile.intent = new Intent().setComponent(component);
+        final DashboardCategory category = new DashboardCategory();
+        category.addTile(mTile);
+        when(mFeatureFactory.dashboardFeatureProvider
+                .getTilesForCategory(CategoryKey.CATEGORY_HOMEPAGE)).thenReturn(category);
+
+        final SummaryLoader loader = new SummaryLoader(mActivity, CategoryKey.CATEGORY_HOMEPAGE,
+                mWorkerTasks::add);
+        loader.mSummaryProviderMap.put(mSummaryProvider, component);
+        loader.setSummaryConsumer(new SummaryLoader.SummaryConsumer() {
+            @Override
+            public void notifySummaryChanged(Tile tile) {
+            }
+
+            @Override
+            public void notifySummariesChanged(List<Tile> tiles) {
+                mPublishedTiles.add(new ArrayList<>(tiles));
+            }
+        });
+        return loader;
+    }
 }
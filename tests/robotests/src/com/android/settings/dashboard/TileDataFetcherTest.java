@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.preference.Preference;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+import com.android.settings.testutils.shadow.ShadowThreadUtils;
+import com.android.settings.testutils.shadow.ShadowTileUtils;
+import com.android.settingslib.drawer.Tile;
+import com.android.settingslib.drawer.TileUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+@Config(shadows = {ShadowTileUtils.class, ShadowThreadUtils.class})
+public class TileDataFetcherTest {
+
+    private Context mContext;
+    private TileDataFetcher mFetcher;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mFetcher = new TileDataFetcher(mContext);
+    }
+
+    @Test
+    public void requestSummary_shouldSetFetchedSummary() {
+        final Preference preference = new Preference(mContext);
+
+        mFetcher.requestSummary(preference, createTile("class"));
+
+        assertThat(preference.getSummary()).isEqualTo(ShadowTileUtils.MOCK_SUMMARY);
+    }
+
+    @Test
+    public void requestIcon_shouldSetFetchedIcon() {
+        final Preference preference = new Preference(mContext);
+
+        mFetcher.requestIcon(preference, createTile("class"));
+
+        assertThat(preference.getIcon()).isNotNull();
+    }
+
+    @Test
+    public void getCachedSummary_afterFetch_shouldReturnSummary() {
+        final Tile tile = createTile("class");
+        assertThat(mFetcher.getCachedSummary(tile)).isNull();
+
+        mFetcher.requestSummary(new Preference(mContext), tile);
+
+        assertThat(mFetcher.getCachedSummary(tile)).isEqualTo(ShadowTileUtils.MOCK_SUMMARY);
+        assertThat(mFetcher.getCachedSummary(createTile("other class"))).isNull();
+    }
+
+    @Test
+    public void getCachedIcon_afterFetch_shouldReturnIcon() {
+        final Tile tile = createTile("class");
+
+        mFetcher.requestIcon(new Preference(mContext), tile);
+
+        assertThat(mFetcher.getCachedIcon(tile)).isNotNull();
+        assertThat(mFetcher.getCachedSummary(tile)).isNull();
+    }
+
+    @Test
+    public void fetch_sameUri_shouldShareResult() {
+        final Tile tile = createTile("class");
+        final TileDataFetcher.Request first = new TileDataFetcher.Request(
+                new Preference(mContext), tile, "content://authority/summary",
+                false /* isIcon */);
+        final TileDataFetcher.Request second = new TileDataFetcher.Request(
+                new Preference(mContext), tile, "content://authority/summary",
+                false /* isIcon */);
+
+        mFetcher.fetch(Arrays.asList(first, second));
+
+        assertThat(first.result).isEqualTo(ShadowTileUtils.MOCK_SUMMARY);
+        assertThat(second.result).isSameAs(first.result);
+    }
+
+    private static Tile createTile(String className) {
+        final Tile tile = new Tile();
+        tile.intent = new Intent();
+        tile.intent.setComponent(new ComponentName("pkg", className));
+        tile.metaData = new Bundle();
+        tile.metaData.putString(TileUtils.META_DATA_PREFERENCE_SUMMARY_URI,
+                "content://com.android.settings/tile_summary");
+        tile.metaData.putString(TileUtils.META_DATA_PREFERENCE_ICON_URI,
+                "content://com.android.settings/tile_icon");
+        return tile;
+    }
+}
@@ -20,7 +20,6 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
-import android.content.Intent;
 import android.graphics.drawable.Drawable;
 import android.media.AudioManager;
 
@@ -51,15 +50,10 @@ public class AbnormalRingerConditionBaseTest {
     }
 
     @Test
-    public void newInstance_shouldMonitorRingerStateChangeBroadcast() {
-        final Intent broadcast1 = new Intent("foo.bar.action");
-        final Intent broadcast2 = new Intent(AudioManager.INTERNAL_RINGER_MODE_CHANGED_ACTION);
-
-        mContext.sendBroadcast(broadcast1);
-        assertThat(mCondition.mRefreshCalled).isFalse();
-
-        mContext.sendBroadcast(broadcast2);
-        assertThat(mCondition.mRefreshCalled).isTrue();
+    public void getTriggerFilter_shouldMatchRingerStateChangeBroadcast() {
+        assertThat(mCondition.getTriggerFilter().hasAction("foo.bar.action")).isFalse();
+        assertThat(mCondition.getTriggerFilter().hasAction(
+                AudioManager.INTERNAL_RINGER_MODE_CHANGED_ACTION)).isTrue();
     }
 
     private static class TestCondition extends AbnormalRingerConditionBase {
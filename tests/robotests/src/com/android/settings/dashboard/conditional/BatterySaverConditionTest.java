@@ -18,17 +18,13 @@ package com.android.settings.dashboard.conditional;
 
 import static com.google.common.truth.Truth.assertThat;
 
-import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.spy;
-import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
-import android.content.IntentFilter;
 import android.os.PowerManager;
 
 import com.android.settings.R;
-import com.android.settings.fuelgauge.BatterySaverReceiver;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 
 import org.junit.Before;
@@ -69,18 +65,10 @@ public class BatterySaverConditionTest {
     }
 
     @Test
-    public void onResume_shouldRegisterReceiver() {
-        mCondition.onResume();
-
-        verify(mContext).registerReceiver(any(BatterySaverReceiver.class), any(IntentFilter.class));
-    }
-
-    @Test
-    public void onPause_shouldUnregisterReceiver() {
-        mCondition.onResume();
-        mCondition.onPause();
-
-        verify(mContext).unregisterReceiver(any(BatterySaverReceiver.class));
+    public void getTriggerFilter_shouldOnlyMatchPowerSaveModeChanges() {
+        assertThat(mCondition.getTriggerFilter().countActions()).isEqualTo(1);
+        assertThat(mCondition.getTriggerFilter().hasAction(
+                PowerManager.ACTION_POWER_SAVE_MODE_CHANGING)).isTrue();
     }
 
     @Test
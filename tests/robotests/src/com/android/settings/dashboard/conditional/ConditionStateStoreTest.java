@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.dashboard.conditional;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.os.PersistableBundle;
+import android.util.ArrayMap;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ConditionStateStoreTest {
+
+    private File mDir;
+    private ConditionStateStore mStore;
+
+    @Before
+    public void setUp() {
+        mDir = RuntimeEnvironment.application.getFilesDir();
+        new File(mDir, ConditionStateStore.FILE_NAME).delete();
+        mStore = new ConditionStateStore(mDir);
+    }
+
+    @Test
+    public void read_noFile_shouldReturnEmpty() {
+        assertThat(mStore.exists()).isFalse();
+        assertThat(mStore.read()).isEmpty();
+    }
+
+    @Test
+    public void read_afterWrite_shouldReturnWrittenStates() {
+        final PersistableBundle dnd = new PersistableBundle();
+        dnd.putBoolean("active", true);
+        dnd.putLong("last_state", 123L);
+        dnd.putInt("state", 2);
+        final PersistableBundle airplane = new PersistableBundle();
+        airplane.putBoolean("silence", true);
+        final ArrayMap<String, PersistableBundle> states = new ArrayMap<>();
+        states.put("DndCondition", dnd);
+        states.put("AirplaneModeCondition", airplane);
+
+        mStore.write(states, 1 /* generation */);
+        final ArrayMap<String, PersistableBundle> read = new ConditionStateStore(mDir).read();
+
+        assertThat(read.keySet()).containsExactly("DndCondition", "AirplaneModeCondition");
+        assertThat(read.get("DndCondition").getBoolean("active")).isTrue();
+        assertThat(read.get("DndCondition").getLong("last_state")).isEqualTo(123L);
+        assertThat(read.get("DndCondition").getInt("state")).isEqualTo(2);
+        assertThat(read.get("AirplaneModeCondition").getBoolean("silence")).isTrue();
+    }
+
+    @Test
+    public void write_olderGeneration_shouldBeIgnored() {
+        final ArrayMap<String, PersistableBundle> newer = new ArrayMap<>();
+        newer.put("DndCondition", new PersistableBundle());
+
+        mStore.write(newer, 2 /* generation */);
+        mStore.write(new ArrayMap<>(), 1 /* generation */);
+
+        assertThat(mStore.read().keySet()).containsExactly("DndCondition");
+    }
+
+    @Test
+    public void read_corruptedFile_shouldReturnEmpty() throws IOException {
+        try (FileOutputStream out =
+                     new FileOutputStream(new File(mDir, ConditionStateStore.FILE_NAME))) {
+            out.write(new byte[] {0, 0, 0, 1, 0, 0, 0, 5});
+        }
+
+        assertThat(mStore.read()).isEmpty();
+    }
+}
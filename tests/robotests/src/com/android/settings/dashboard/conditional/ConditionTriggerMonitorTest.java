@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard.conditional;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.NotificationManager;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.drawable.Drawable;
+import android.media.AudioManager;
+import android.net.Uri;
+import android.provider.Settings;
+
+import com.android.settings.testutils.FakeFeatureFactory;
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowApplication;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.Arrays;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class ConditionTriggerMonitorTest {
+
+    private static final String ACTION_SHARED = "com.android.settings.test.SHARED";
+    private static final String ACTION_OTHER = "com.android.settings.test.OTHER";
+    private static final Uri URI = Settings.Global.getUriFor(Settings.Global.AIRPLANE_MODE_ON);
+
+    @Mock
+    private ConditionManager mConditionManager;
+
+    private Context mContext;
+    private ConditionTriggerMonitor mMonitor;
+    private TestCondition mSharedCondition1;
+    private TestCondition mSharedCondition2;
+    private TestCondition mOtherCondition;
+    private TestCondition mUriCondition;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        FakeFeatureFactory.setupForTest();
+        mContext = RuntimeEnvironment.application;
+        when(mConditionManager.getContext()).thenReturn(mContext);
+        mMonitor = new ConditionTriggerMonitor(mContext);
+
+        mSharedCondition1 = new TestCondition(mConditionManager,
+                new IntentFilter(ACTION_SHARED), null);
+        mSharedCondition2 = new TestCondition(mConditionManager,
+                new IntentFilter(ACTION_SHARED), null);
+        mOtherCondition = new TestCondition(mConditionManager,
+                new IntentFilter(ACTION_OTHER), null);
+        mUriCondition = new TestCondition(mConditionManager, null, new Uri[] {URI});
+    }
+
+    @Test
+    public void startListening_shouldRegisterOnceForEachTrigger() {
+        startListening();
+
+        assertThat(ShadowApplication.getInstance()
+                .getReceiversForIntent(new Intent(ACTION_SHARED))).hasSize(1);
+        assertThat(ShadowApplication.getInstance()
+                .getReceiversForIntent(new Intent(ACTION_OTHER))).hasSize(1);
+        final ShadowContentResolver resolver = Shadow.extract(mContext.getContentResolver());
+        assertThat(resolver.getContentObservers(URI)).hasSize(1);
+    }
+
+    @Test
+    public void broadcast_shouldOnlyRefreshConditionsDependingOnIt() {
+        startListening();
+
+        mContext.sendBroadcast(new Intent(ACTION_SHARED));
+
+        assertThat(mSharedCondition1.mRefreshCount).isEqualTo(1);
+        assertThat(mSharedCondition2.mRefreshCount).isEqualTo(1);
+        assertThat(mOtherCondition.mRefreshCount).isEqualTo(0);
+        assertThat(mUriCondition.mRefreshCount).isEqualTo(0);
+    }
+
+    @Test
+    public void settingChange_shouldOnlyRefreshConditionsDependingOnIt() {
+        startListening();
+
+        mContext.getContentResolver().notifyChange(URI, null);
+
+        assertThat(mUriCondition.mRefreshCount).isEqualTo(1);
+        assertThat(mSharedCondition1.mRefreshCount).isEqualTo(0);
+        assertThat(mOtherCondition.mRefreshCount).isEqualTo(0);
+    }
+
+    @Test
+    public void stopListening_shouldUnregisterEveryTrigger() {
+        startListening();
+
+        mMonitor.stopListening();
+        mContext.sendBroadcast(new Intent(ACTION_SHARED));
+
+        assertThat(mMonitor.isListening()).isFalse();
+        assertThat(mSharedCondition1.mRefreshCount).isEqualTo(0);
+        assertThat(ShadowApplication.getInstance()
+                .getReceiversForIntent(new Intent(ACTION_SHARED))).isEmpty();
+        final ShadowContentResolver resolver = Shadow.extract(mContext.getContentResolver());
+        assertThat(resolver.getContentObservers(URI)).isEmpty();
+    }
+
+    @Test
+    public void dndChange_shouldRefreshRingerMutedCondition() {
+        final RingerMutedCondition condition =
+                spy(new RingerMutedCondition(mConditionManager));
+        mMonitor.startListening(Arrays.asList(condition));
+
+        mContext.sendBroadcast(
+                new Intent(NotificationManager.ACTION_INTERRUPTION_FILTER_CHANGED_INTERNAL));
+
+        verify(condition).refreshState();
+    }
+
+    @Test
+    public void ringerModeChange_shouldRefreshRingerMutedCondition() {
+        final RingerMutedCondition condition =
+                spy(new RingerMutedCondition(mConditionManager));
+        mMonitor.startListening(Arrays.asList(condition));
+
+        mContext.sendBroadcast(new Intent(AudioManager.INTERNAL_RINGER_MODE_CHANGED_ACTION));
+
+        verify(condition).refreshState();
+    }
+
+    @Test
+    public void hasTriggers_noTrigger_shouldReturnFalse() {
+        assertThat(new TestCondition(mConditionManager, null, null).hasTriggers()).isFalse();
+        assertThat(mSharedCondition1.hasTriggers()).isTrue();
+        assertThat(mUriCondition.hasTriggers()).isTrue();
+    }
+
+    private void startListening() {
+        mMonitor.startListening(Arrays.asList(
+                mSharedCondition1, mSharedCondition2, mOtherCondition, mUriCondition));
+        assertThat(mMonitor.isListening()).isTrue();
+    }
+
+    private static final class TestCondition extends Condition {
+
+        private final IntentFilter mTriggerFilter;
+        private final Uri[] mTriggerUris;
+        private int mRefreshCount;
+
+        TestCondition(ConditionManager manager, IntentFilter triggerFilter, Uri[] triggerUris) {
+            super(manager);
+            mTriggerFilter = triggerFilter;
+            mTriggerUris = triggerUris;
+        }
+
+        @Override
+        protected IntentFilter getTriggerFilter() {
+            return mTriggerFilter;
+        }
+
+        @Override
+        protected Uri[] getTriggerUris() {
+            return mTriggerUris;
+        }
+
+        @Override
+        public void refreshState() {
+            mRefreshCount++;
+        }
+
+        @Override
+        public int getMetricsConstant() {
+            return 0;
+        }
+
+        @Override
+        public Drawable getIcon() {
+            return null;
+        }
+
+        @Override
+        public CharSequence getTitle() {
+            return null;
+        }
+
+        @Override
+        public CharSequence getSummary() {
+            return null;
+        }
+
+        @Override
+        public CharSequence[] getActions() {
+            return new CharSequence[0];
+        }
+
+        @Override
+        public void onPrimaryClick() {
+        }
+
+        @Override
+        public void onActionClick(int index) {
+        }
+    }
+}
@@ -18,15 +18,16 @@ package com.android.settings.dashboard.conditional;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.reset;
-import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import android.app.NotificationManager;
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
+import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 
 import com.android.settings.testutils.FakeFeatureFactory;
@@ -64,10 +65,16 @@ public class DndConditionTest {
     }
 
     @Test
-    public void constructor_shouldRegisterReceiver() {
+    public void constructor_shouldNotRegisterReceiver() {
         new DndCondition(mConditionManager);
-        verify(mContext).registerReceiver(any(DndCondition.Receiver.class),
-            eq(DndCondition.DND_FILTER));
+        verify(mContext, never()).registerReceiver(any(BroadcastReceiver.class),
+            any(IntentFilter.class));
+    }
+
+    @Test
+    public void getTriggerFilter_shouldMatchInterruptionFilterChanges() {
+        assertThat(new DndCondition(mConditionManager).getTriggerFilter().hasAction(
+            NotificationManager.ACTION_INTERRUPTION_FILTER_CHANGED_INTERNAL)).isTrue();
     }
 
     @Test
@@ -78,35 +85,6 @@ public class DndConditionTest {
             eq(PackageManager.COMPONENT_ENABLED_STATE_DISABLED), eq(PackageManager.DONT_KILL_APP));
     }
 
-    @Test
-    public void onResume_shouldRegisterReceiver() {
-        DndCondition condition = new DndCondition(mConditionManager);
-        condition.onPause();
-        condition.onResume();
-
-        // one from constructor, one from onResume()
-        verify(mContext, times(2)).registerReceiver(any(DndCondition.Receiver.class),
-            eq(DndCondition.DND_FILTER));
-    }
-
-    @Test
-    public void onPause_shouldUnregisterReceiver() {
-        new DndCondition(mConditionManager).onPause();
-
-        verify(mContext).unregisterReceiver(any(DndCondition.Receiver.class));
-    }
-
-    @Test
-    public void onPause_noReceiverRegistered_shouldNotUnregisterReceiver() {
-        DndCondition condition = new DndCondition(mConditionManager);
-        condition.onPause();
-        reset(mContext);
-
-        condition.onPause();
-
-        verify(mContext, never()).unregisterReceiver(any(DndCondition.Receiver.class));
-    }
-
     @Test
     public void nullZenConfig_noCrash() {
         DndCondition condition = new DndCondition(mConditionManager);
@@ -148,4 +148,38 @@ public class BatteryDatabaseManagerTest {
                 AnomalyDatabaseHelper.State.NEW);
         assertThat(newAppInfos).containsExactly(mCombinedAppInfo);
     }
+
+    @Test
+    public void testInsertAnomaly_duplicate_returnFalse() {
+        assertThat(mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW)).isTrue();
+        assertThat(mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW)).isFalse();
+    }
+
+    @Test
+    public void testInsertAnomaly_databaseReopened_insertSuccessfully() {
+        mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+        AnomalyDatabaseHelper.getInstance(mContext).close();
+
+        mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE_OLD,
+                AnomalyDatabaseHelper.State.NEW, NOW);
+
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(ONE_DAY_BEFORE,
+                AnomalyDatabaseHelper.State.NEW)).containsExactly(mNewAppInfo, mOldAppInfo);
+    }
+
+    @Test
+    public void testRunInTransaction_insertAllAnomalies() {
+        mBatteryDatabaseManager.runInTransaction(() -> {
+            mBatteryDatabaseManager.insertAnomaly(UID_NEW, PACKAGE_NAME_NEW, TYPE_NEW,
+                    AnomalyDatabaseHelper.State.NEW, NOW);
+            mBatteryDatabaseManager.insertAnomaly(UID_OLD, PACKAGE_NAME_OLD, TYPE_OLD,
+                    AnomalyDatabaseHelper.State.NEW, NOW);
+        });
+
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(ONE_DAY_BEFORE,
+                AnomalyDatabaseHelper.State.NEW)).containsExactly(mNewAppInfo, mOldAppInfo);
+    }
 }
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.os.BatteryStats;
+import android.os.BatteryStats.HistoryItem;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class BatteryHistoryModelTest {
+
+    private static final long WALL_TIME = 1500000000000L;
+    private static final int USED_SIZE = 100;
+
+    @Mock
+    private BatteryStats mBatteryStats;
+    @Mock
+    private BatteryStats mNewBatteryStats;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        BatteryHistoryModel.clearCache();
+        mockHistory(mBatteryStats, 0 /* usedSize */, getHistory());
+        mockHistory(mNewBatteryStats, 0 /* usedSize */, getHistory());
+    }
+
+    @After
+    public void tearDown() {
+        BatteryHistoryModel.clearCache();
+    }
+
+    @Test
+    public void get_sameStats_decodesOnce() {
+        final BatteryHistoryModel model = BatteryHistoryModel.get(mBatteryStats);
+
+        assertThat(BatteryHistoryModel.get(mBatteryStats)).isSameAs(model);
+        verify(mBatteryStats, times(1)).startIteratingHistoryLocked();
+    }
+
+    @Test
+    public void get_newStats_decodesAgain() {
+        final BatteryHistoryModel model = BatteryHistoryModel.get(mBatteryStats);
+
+        assertThat(BatteryHistoryModel.get(mNewBatteryStats)).isNotSameAs(model);
+        verify(mNewBatteryStats, times(1)).startIteratingHistoryLocked();
+    }
+
+    @Test
+    public void decode_computesBounds() {
+        final BatteryHistoryModel model = BatteryHistoryModel.decode(mBatteryStats);
+
+        assertThat(model.size()).isEqualTo(4);
+        assertThat(model.getHistoryStart()).isEqualTo(0);
+        assertThat(model.getHistoryDataEnd()).isEqualTo(3000);
+        assertThat(model.getStartWalltime()).isEqualTo(WALL_TIME);
+        assertThat(model.getEndDataWalltime()).isEqualTo(WALL_TIME + 3000);
+        assertThat(model.getAggregatedStates()).isEqualTo(HistoryItem.STATE_SCREEN_ON_FLAG);
+        assertThat(model.getAggregatedStates2()).isEqualTo(HistoryItem.STATE2_CAMERA_FLAG);
+    }
+
+    @Test
+    public void parse_dispatchesPointsAndGapsInWallTime() {
+        final RecordingParser parser = new RecordingParser();
+
+        BatteryInfo.parse(mBatteryStats, parser);
+
+        assertThat(parser.mEvents).containsExactly(
+                "started " + WALL_TIME + " " + (WALL_TIME + 3000),
+                "gap",
+                "point 1000 99 " + HistoryItem.STATE_SCREEN_ON_FLAG + " 0",
+                "gap",
+                "point 3000 98 0 " + HistoryItem.STATE2_CAMERA_FLAG,
+                "done").inOrder();
+    }
+
+    @Test
+    public void parse_twice_dispatchesSameEvents() {
+        final RecordingParser parser1 = new RecordingParser();
+        final RecordingParser parser2 = new RecordingParser();
+
+        BatteryInfo.parse(mBatteryStats, parser1);
+        BatteryInfo.parse(mBatteryStats, parser2);
+
+        assertThat(parser2.mEvents).isEqualTo(parser1.mEvents);
+        verify(mBatteryStats, times(1)).startIteratingHistoryLocked();
+    }
+
+    @Test
+    public void get_lastRecordRewrittenInPlace_decodesNewStates() {
+        mockHistory(mBatteryStats, USED_SIZE, getHistory());
+        final List<HistoryItem> history = getHistory();
+        // A merged update rewrites the last data point without changing the history size.
+        history.get(3).states = HistoryItem.STATE_SCREEN_ON_FLAG;
+        mockHistory(mNewBatteryStats, USED_SIZE, history);
+        BatteryHistoryModel.get(mBatteryStats);
+
+        final BatteryHistoryModel newModel = BatteryHistoryModel.get(mNewBatteryStats);
+
+        verify(mNewBatteryStats, times(1)).startIteratingHistoryLocked();
+        assertThat(newModel.getStates(3)).isEqualTo(HistoryItem.STATE_SCREEN_ON_FLAG);
+        assertThat(parse(newModel)).contains(
+                "point 3000 98 " + HistoryItem.STATE_SCREEN_ON_FLAG + " "
+                        + HistoryItem.STATE2_CAMERA_FLAG);
+    }
+
+    @Test
+    public void get_appendedHistory_decodesNewRecords() {
+        final List<HistoryItem> history = getHistory();
+        mockHistory(mBatteryStats, USED_SIZE, history);
+        history.add(record(HistoryItem.CMD_UPDATE, 5000, WALL_TIME + 4000, 97, 0, 0));
+        mockHistory(mNewBatteryStats, USED_SIZE + 10, history);
+        final BatteryHistoryModel model = BatteryHistoryModel.get(mBatteryStats);
+
+        final BatteryHistoryModel newModel = BatteryHistoryModel.get(mNewBatteryStats);
+
+        assertThat(model.size()).isEqualTo(4);
+        assertThat(newModel.size()).isEqualTo(6);
+        assertThat(parse(newModel)).contains("point 5000 97 0 0");
+    }
+
+    private static List<String> parse(BatteryHistoryModel model) {
+        final RecordingParser parser = new RecordingParser();
+        model.parse(parser);
+        return parser.mEvents;
+    }
+
+    /**
+     * @return a history reset, a data point, a restart, another data point and a trailing time
+     * change.
+     */
+    private static List<HistoryItem> getHistory() {
+        return new ArrayList<>(Arrays.asList(
+                record(HistoryItem.CMD_RESET, 0, WALL_TIME, 0, 0, 0),
+                record(HistoryItem.CMD_UPDATE, 1000, WALL_TIME, 99,
+                        HistoryItem.STATE_SCREEN_ON_FLAG, 0),
+                record(HistoryItem.CMD_START, 2000, WALL_TIME, 99, 0, 0),
+                record(HistoryItem.CMD_UPDATE, 3000, WALL_TIME, 98,
+                        0, HistoryItem.STATE2_CAMERA_FLAG),
+                record(HistoryItem.CMD_CURRENT_TIME, 4000, WALL_TIME + 4000, 98, 0, 0)));
+    }
+
+    private static void mockHistory(BatteryStats stats, int usedSize, List<HistoryItem> history) {
+        final List<HistoryItem> records = new ArrayList<>(history);
+        doReturn(usedSize).when(stats).getHistoryUsedSize();
+        doAnswer(invocation -> {
+            final int[] next = new int[1];
+            doAnswer(getNext -> {
+                if (next[0] == records.size()) {
+                    return false;
+                }
+                final HistoryItem rec = getNext.getArgument(0);
+                final HistoryItem record = records.get(next[0]++);
+                rec.cmd = record.cmd;
+                rec.time = record.time;
+                rec.currentTime = record.currentTime;
+                rec.batteryLevel = record.batteryLevel;
+                rec.states = record.states;
+                rec.states2 = record.states2;
+                return true;
+            }).when(stats).getNextHistoryLocked(any(HistoryItem.class));
+            return true;
+        }).when(stats).startIteratingHistoryLocked();
+    }
+
+    private static HistoryItem record(byte cmd, long time, long currentTime, int level,
+            int states, int states2) {
+        final HistoryItem rec = new HistoryItem();
+        rec.cmd = cmd;
+        rec.time = time;
+        rec.currentTime = currentTime;
+        rec.batteryLevel = (byte) level;
+        rec.states = states;
+        rec.states2 = states2;
+        return rec;
+    }
+
+    private static final class RecordingParser implements BatteryInfo.BatteryDataParser {
+        private final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onParsingStarted(long startTime, long endTime) {
+            mEvents.add("started " + startTime + " " + endTime);
+        }
+
+        @Override
+        public void onDataPoint(long time, HistoryItem record) {
+            mEvents.add("point " + time + " " + record.batteryLevel + " " + record.states + " "
+                    + record.states2);
+        }
+
+        @Override
+        public void onDataGap() {
+            mEvents.add("gap");
+        }
+
+        @Override
+        public void onParsingDone() {
+            mEvents.add("done");
+        }
+    }
+}
@@ -23,6 +23,7 @@ import static com.google.common.truth.Truth.assertThat;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
@@ -166,6 +167,9 @@ public class RestrictAppPreferenceControllerTest {
     @Test
     public void testHandlePreferenceTreeClick_startFragment() {
         final ArgumentCaptor<Intent> intent = ArgumentCaptor.forClass(Intent.class);
+        mPackageOpsList.add(mRestrictedPackageOps);
+        doReturn(mPackageOpsList).when(mAppOpsManager).getPackagesForOps(any());
+        mRestrictAppPreferenceController.updateState(mPreference);
 
         mRestrictAppPreferenceController.handlePreferenceTreeClick(mPreference);
 
@@ -175,4 +179,12 @@ public class RestrictAppPreferenceControllerTest {
         assertThat(intent.getValue().getIntExtra(EXTRA_SHOW_FRAGMENT_TITLE_RESID, -1))
                 .isEqualTo(R.string.restricted_app_title);
     }
+
+    @Test
+    public void testHandlePreferenceTreeClick_stateNotApplied_ignoreClick() {
+        assertThat(mRestrictAppPreferenceController.handlePreferenceTreeClick(mPreference))
+                .isTrue();
+
+        verify(mContext, never()).startActivity(any(Intent.class));
+    }
 }
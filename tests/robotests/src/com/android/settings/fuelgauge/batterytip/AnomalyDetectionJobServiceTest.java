@@ -28,12 +28,14 @@ import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.robolectric.RuntimeEnvironment.application;
@@ -74,6 +76,8 @@ import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowJobScheduler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -119,6 +123,10 @@ public class AnomalyDetectionJobServiceTest {
         mBundle.putParcelable(StatsManager.EXTRA_STATS_DIMENSIONS_VALUE, mStatsDimensionsValue);
         mFeatureFactory = FakeFeatureFactory.setupForTest();
         when(mBatteryUtils.getAppLongVersionCode(any())).thenReturn(VERSION_CODE);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(0)).run();
+            return null;
+        }).when(mBatteryDatabaseManager).runInTransaction(any());
 
         final ServiceController<AnomalyDetectionJobService> controller =
                 Robolectric.buildService(AnomalyDetectionJobService.class);
@@ -142,22 +150,22 @@ public class AnomalyDetectionJobServiceTest {
     }
 
     @Test
-    public void saveAnomalyToDatabase_systemWhitelisted_doNotSave() {
+    public void saveAnomaliesToDatabase_systemWhitelisted_doNotSave() {
         doReturn(UID).when(mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
         doReturn(true).when(mPowerWhitelistBackend).isWhitelisted(any(String[].class));
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider,
-                mFeatureFactory.metricsFeatureProvider, mBundle);
+                mFeatureFactory.metricsFeatureProvider, Collections.singletonList(mBundle));
 
         verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
     }
 
     @Test
-    public void saveAnomalyToDatabase_systemApp_doNotSaveButLog() {
+    public void saveAnomaliesToDatabase_systemApp_doNotSaveButLog() {
         final ArrayList<String> cookies = new ArrayList<>();
         cookies.add(SUBSCRIBER_COOKIES_AUTO_RESTRICTION);
         mBundle.putStringArrayList(StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES, cookies);
@@ -167,11 +175,11 @@ public class AnomalyDetectionJobServiceTest {
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
         doReturn(true).when(mBatteryUtils).shouldHideAnomaly(any(), anyInt(), any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider,
-                mFeatureFactory.metricsFeatureProvider, mBundle);
+                mFeatureFactory.metricsFeatureProvider, Collections.singletonList(mBundle));
 
         verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
@@ -183,37 +191,37 @@ public class AnomalyDetectionJobServiceTest {
     }
 
     @Test
-    public void saveAnomalyToDatabase_systemUid_doNotSave() {
+    public void saveAnomaliesToDatabase_systemUid_doNotSave() {
         doReturn(Process.SYSTEM_UID).when(
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                Collections.singletonList(mBundle));
 
         verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
     }
 
     @Test
-    public void saveAnomalyToDatabase_uidNull_doNotSave() {
+    public void saveAnomaliesToDatabase_uidNull_doNotSave() {
         doReturn(AnomalyDetectionJobService.UID_NULL).when(
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                Collections.singletonList(mBundle));
 
         verify(mBatteryDatabaseManager, never()).insertAnomaly(anyInt(), anyString(), anyInt(),
                 anyInt(), anyLong());
     }
 
     @Test
-    public void saveAnomalyToDatabase_normalAppWithAutoRestriction_save() {
+    public void saveAnomaliesToDatabase_normalAppWithAutoRestriction_save() {
         final ArrayList<String> cookies = new ArrayList<>();
         cookies.add(SUBSCRIBER_COOKIES_AUTO_RESTRICTION);
         mBundle.putStringArrayList(StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES, cookies);
@@ -222,11 +230,11 @@ public class AnomalyDetectionJobServiceTest {
         doReturn(Process.FIRST_APPLICATION_UID).when(
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                Collections.singletonList(mBundle));
 
         verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
                 eq(AnomalyDatabaseHelper.State.AUTO_HANDLED), anyLong());
@@ -238,7 +246,7 @@ public class AnomalyDetectionJobServiceTest {
     }
 
     @Test
-    public void saveAnomalyToDatabase_normalAppWithoutAutoRestriction_save() {
+    public void saveAnomaliesToDatabase_normalAppWithoutAutoRestriction_save() {
         final ArrayList<String> cookies = new ArrayList<>();
         cookies.add(SUBSCRIBER_COOKIES_NOT_AUTO_RESTRICTION);
         mBundle.putStringArrayList(StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES, cookies);
@@ -247,11 +255,11 @@ public class AnomalyDetectionJobServiceTest {
         doReturn(Process.FIRST_APPLICATION_UID).when(
                 mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
 
-        mAnomalyDetectionJobService.saveAnomalyToDatabase(mContext,
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
                 mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
                 mPowerWhitelistBackend, mContext.getContentResolver(),
                 mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
-                mBundle);
+                Collections.singletonList(mBundle));
 
         verify(mBatteryDatabaseManager).insertAnomaly(anyInt(), anyString(), eq(6),
                 eq(AnomalyDatabaseHelper.State.NEW), anyLong());
@@ -262,6 +270,30 @@ public class AnomalyDetectionJobServiceTest {
                 Pair.create(MetricsProto.MetricsEvent.FIELD_APP_VERSION_CODE, VERSION_CODE));
     }
 
+    @Test
+    public void saveAnomaliesToDatabase_sameApp_lookUpOnceAndSaveInOneTransaction() {
+        final ArrayList<String> cookies = new ArrayList<>();
+        cookies.add(SUBSCRIBER_COOKIES_NOT_AUTO_RESTRICTION);
+        mBundle.putStringArrayList(StatsManager.EXTRA_STATS_BROADCAST_SUBSCRIBER_COOKIES, cookies);
+        final Bundle bundle = new Bundle(mBundle);
+        bundle.putLong(AnomalyDetectionReceiver.KEY_ANOMALY_TIMESTAMP, 1000);
+        doReturn(SYSTEM_PACKAGE).when(mBatteryUtils).getPackageName(anyInt());
+        doReturn(Process.FIRST_APPLICATION_UID).when(
+                mAnomalyDetectionJobService).extractUidFromStatsDimensionsValue(any());
+
+        mAnomalyDetectionJobService.saveAnomaliesToDatabase(mContext,
+                mUserManager, mBatteryDatabaseManager, mBatteryUtils, mPolicy,
+                mPowerWhitelistBackend, mContext.getContentResolver(),
+                mFeatureFactory.powerUsageFeatureProvider, mFeatureFactory.metricsFeatureProvider,
+                Arrays.asList(mBundle, bundle));
+
+        verify(mBatteryUtils).getPackageName(Process.FIRST_APPLICATION_UID);
+        verify(mBatteryUtils).shouldHideAnomaly(any(), anyInt(), any());
+        verify(mBatteryDatabaseManager).runInTransaction(any());
+        verify(mBatteryDatabaseManager, times(2)).insertAnomaly(anyInt(), anyString(), eq(6),
+                eq(AnomalyDatabaseHelper.State.NEW), anyLong());
+    }
+
     @Test
     public void extractUidFromStatsDimensionsValue_extractCorrectUid() {
         // Build an integer dimensions value.
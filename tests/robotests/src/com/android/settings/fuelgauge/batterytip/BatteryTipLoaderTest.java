@@ -28,7 +28,10 @@ import android.os.PowerManager;
 import com.android.internal.os.BatteryStatsHelper;
 import com.android.settings.fuelgauge.BatteryInfo;
 import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.Estimate;
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.SummaryTip;
 import com.android.settings.testutils.SettingsRobolectricTestRunner;
 
 import org.junit.Before;
@@ -39,7 +42,9 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 @RunWith(SettingsRobolectricTestRunner.class)
 public class BatteryTipLoaderTest {
@@ -86,4 +91,57 @@ public class BatteryTipLoaderTest {
             assertThat(batteryTips.get(i).getType()).isEqualTo(TIP_ORDER[i]);
         }
     }
+
+    @Test
+    public void testDetect_detectorTimesOut_returnsOtherTips() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BatteryTip tip = new SummaryTip(BatteryTip.StateType.NEW,
+                Estimate.AVERAGE_TIME_TO_DISCHARGE_UNKNOWN);
+        final BatteryTipDetector detector = () -> tip;
+        final BatteryTipDetector slowDetector = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return tip;
+        };
+        mBatteryTipLoader.mDetectorTimeBudgetMs = 10;
+
+        try {
+            final List<BatteryTip> batteryTips =
+                    mBatteryTipLoader.detect(Arrays.asList(slowDetector, detector));
+
+            assertThat(batteryTips).containsExactly(tip);
+            assertThat(mBatteryTipLoader.mDetectorTimings).hasSize(2);
+        } finally {
+            latch.countDown();
+        }
+    }
+
+    @Test
+    public void testDetect_detectorsTimeOut_shareOneBudget() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final BatteryTipDetector slowDetector = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        };
+        mBatteryTipLoader.mDetectorTimeBudgetMs = 200;
+
+        try {
+            final long startTime = System.currentTimeMillis();
+            final List<BatteryTip> batteryTips = mBatteryTipLoader.detect(Arrays.asList(
+                    slowDetector, slowDetector, slowDetector, slowDetector, slowDetector,
+                    slowDetector));
+
+            assertThat(batteryTips).isEmpty();
+            assertThat(System.currentTimeMillis() - startTime).isLessThan(600L);
+        } finally {
+            latch.countDown();
+        }
+    }
 }
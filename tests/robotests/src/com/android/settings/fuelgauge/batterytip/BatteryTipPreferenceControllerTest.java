@@ -126,6 +126,16 @@ public class BatteryTipPreferenceControllerTest {
         assertThat(mPreferenceGroup.getPreferenceCount()).isEqualTo(0);
     }
 
+    @Test
+    public void testUpdateBatteryTips_tipMissing_keepsLastState() {
+        mBatteryTipPreferenceController.updateBatteryTips(mOldBatteryTips);
+
+        // Summary tip is missing because its detector timed out
+        mBatteryTipPreferenceController.updateBatteryTips(new ArrayList<>());
+
+        assertOnlyContainsSummaryTip(mPreferenceGroup);
+    }
+
     @Test
     public void testUpdateBatteryTips_logBatteryTip() {
         mBatteryTipPreferenceController.updateBatteryTips(mOldBatteryTips);
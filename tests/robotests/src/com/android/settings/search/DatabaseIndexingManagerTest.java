@@ -22,6 +22,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anySet;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
@@ -30,6 +31,7 @@ import static org.mockito.Mockito.verify;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.database.Cursor;
@@ -53,6 +55,7 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -105,7 +108,7 @@ public class DatabaseIndexingManagerTest {
     private PackageManager mPackageManager;
 
     @Before
-    public void setUp() {
+    public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
         mContext = spy(RuntimeEnvironment.application);
         mManager = spy(new DatabaseIndexingManager(mContext));
@@ -114,6 +117,7 @@ public class DatabaseIndexingManagerTest {
         doReturn(mPackageManager).when(mContext).getPackageManager();
         doReturn(FAKE_PROVIDER_LIST).when(mPackageManager)
                 .queryIntentContentProviders(any(Intent.class), anyInt());
+        doReturn(new PackageInfo()).when(mPackageManager).getPackageInfo(anyString(), anyInt());
         FakeFeatureFactory.setupForTest();
     }
 
@@ -148,7 +152,8 @@ public class DatabaseIndexingManagerTest {
                 "data_key_reference",
                 "user_id",
                 "payload_type",
-                "payload"
+                "payload",
+                "data_package"
         );
         // Prevent database schema regressions
         assertThat(columnNames).containsAllIn(expColumnNames);
@@ -160,9 +165,9 @@ public class DatabaseIndexingManagerTest {
     public void testPerformIndexing_fullIndex_getsDataFromProviders() {
         SearchIndexableRaw rawData = getFakeRaw();
         PreIndexData data = getPreIndexData(rawData);
-        doReturn(data).when(mManager).getIndexDataFromProviders(anyList(), anyBoolean());
+        doReturn(data).when(mManager).getIndexDataFromProviders(anyList(), anyBoolean(), anySet());
         doReturn(true).when(mManager)
-            .isFullIndex(any(Context.class), anyString(), anyString(), anyString());
+            .isFullIndex(any(Context.class), anyString(), anyString());
 
         mManager.performIndexing();
 
@@ -175,7 +180,7 @@ public class DatabaseIndexingManagerTest {
         DatabaseIndexingManager manager =
                 spy(new DatabaseIndexingManager(mContext));
         doReturn(false).when(mManager)
-            .isFullIndex(any(Context.class), anyString(), anyString(), anyString());
+            .isFullIndex(any(Context.class), anyString(), anyString());
 
         // Insert data point which will be dropped
         insertSpecialCase("Ceci n'est pas un pipe", true, "oui oui mon ami");
@@ -192,9 +197,9 @@ public class DatabaseIndexingManagerTest {
     public void testPerformIndexing_isfullIndex() {
         SearchIndexableRaw rawData = getFakeRaw();
         PreIndexData data = getPreIndexData(rawData);
-        doReturn(data).when(mManager).getIndexDataFromProviders(anyList(), anyBoolean());
+        doReturn(data).when(mManager).getIndexDataFromProviders(anyList(), anyBoolean(), anySet());
         doReturn(true).when(mManager)
-            .isFullIndex(any(Context.class), anyString(), anyString(), anyString());
+            .isFullIndex(any(Context.class), anyString(), anyString());
 
         mManager.performIndexing();
 
@@ -274,6 +279,26 @@ public class DatabaseIndexingManagerTest {
         assertThat(unmarshalledPayload).isInstanceOf(ResultPayload.class);
     }
 
+    @Test
+    public void testUpdateDatabase_fullIndexWithoutSettingsRows_snapshotNotWritten() {
+        PreIndexData indexData = new PreIndexData();
+        indexData.failedPackages.add(mContext.getPackageName());
+
+        mManager.updateDatabase(indexData, true /* isFullIndex */);
+
+        assertThat(new File(mContext.getCacheDir(), "search_index_snapshot/" + localeStr)
+                .exists()).isFalse();
+    }
+
+    @Test
+    public void testGetSnapshotVersion_includesApkUpdateTime() throws Exception {
+        PackageInfo info = new PackageInfo();
+        info.lastUpdateTime = 1234L;
+        doReturn(info).when(mPackageManager).getPackageInfo(mContext.getPackageName(), 0);
+
+        assertThat(mManager.getSnapshotVersion()).isEqualTo(Build.FINGERPRINT + "/1234");
+    }
+
     @Test
     public void testUpdateDataInDatabase_enabledResultsAreNonIndexable_becomeDisabled() {
         // Both results are enabled, and then TITLE_ONE gets disabled.
@@ -312,6 +337,23 @@ public class DatabaseIndexingManagerTest {
         assertThat(cursor.getString(2)).isEqualTo(TITLE_TWO);
     }
 
+    @Test
+    public void testUpdateDataInDatabase_settingsResultsWithoutPackage_matchedAsSettings() {
+        insertSpecialCase(TITLE_ONE, true /* enabled */, KEY_ONE, null /* packageName */,
+                null /* targetPackage */);
+        insertSpecialCase(TITLE_TWO, false /* enabled */, KEY_TWO, null /* packageName */,
+                null /* targetPackage */);
+        Map<String, Set<String>> niks = new ArrayMap<>();
+        niks.put(mContext.getPackageName(), new HashSet<>(Arrays.asList(KEY_ONE)));
+
+        mManager.updateDataInDatabase(mDb, niks);
+
+        Cursor cursor = mDb.rawQuery("SELECT * FROM prefs_index WHERE enabled = 1", null);
+        assertThat(cursor.getCount()).isEqualTo(1);
+        cursor.moveToPosition(0);
+        assertThat(cursor.getString(2)).isEqualTo(TITLE_TWO);
+    }
+
     @Test
     public void testEmptyNonIndexableKeys_emptyDataKeyResources_addedToDatabase() {
         insertSpecialCase(TITLE_ONE, true /* enabled */, null /* dataReferenceKey */);
@@ -324,6 +366,37 @@ public class DatabaseIndexingManagerTest {
         assertThat(cursor.getString(2)).isEqualTo(TITLE_ONE);
     }
 
+    @Test
+    public void testUpdateDatabase_partialIndex_replacesRowsOfUpdatedPackages() {
+        insertSpecialCase(TITLE_ONE, true /* enabled */, KEY_ONE, packageName);
+        insertSpecialCase(TITLE_TWO, true /* enabled */, KEY_TWO, "other package");
+        PreIndexData indexData = new PreIndexData();
+        indexData.dataToUpdate.add(getFakeRaw());
+        indexData.updatedPackages.add(packageName);
+
+        mManager.updateDatabase(indexData, false /* needsReindexing */);
+
+        Cursor cursor = mDb.rawQuery("SELECT data_title FROM prefs_index ORDER BY data_title",
+                null);
+        assertThat(cursor.getCount()).isEqualTo(2);
+        cursor.moveToPosition(0);
+        assertThat(cursor.getString(0)).isEqualTo(TITLE_TWO);
+        cursor.moveToPosition(1);
+        assertThat(cursor.getString(0)).isEqualTo(updatedTitle);
+    }
+
+    @Test
+    public void testIsFullIndex_providerUpdated_onlyUpdatedPackagesReindexed() {
+        IndexDatabaseHelper.setLocaleIndexed(mContext, localeStr);
+        IndexDatabaseHelper.setBuildIndexed(mContext, Build.FINGERPRINT);
+        IndexDatabaseHelper.setProvidersIndexed(mContext, "package name:1,");
+
+        assertThat(mManager.isFullIndex(mContext, localeStr, Build.FINGERPRINT)).isFalse();
+        assertThat(IndexDatabaseHelper.getUpdatedProviderPackages(mContext,
+                "package name:2,other package:1,"))
+                .containsExactly(packageName, "other package");
+    }
+
     // Util functions
 
     private SearchIndexableRaw getFakeRaw() {
@@ -353,6 +426,16 @@ public class DatabaseIndexingManagerTest {
     }
 
     private void insertSpecialCase(String specialCase, boolean enabled, String key) {
+        insertSpecialCase(specialCase, enabled, key, null /* packageName */);
+    }
+
+    private void insertSpecialCase(String specialCase, boolean enabled, String key,
+            String packageName) {
+        insertSpecialCase(specialCase, enabled, key, packageName, targetPackage);
+    }
+
+    private void insertSpecialCase(String specialCase, boolean enabled, String key,
+            String packageName, String targetPackage) {
         ContentValues values = new ContentValues();
         values.put(IndexDatabaseHelper.IndexColumns.DOCID, specialCase.hashCode());
         values.put(IndexDatabaseHelper.IndexColumns.LOCALE, localeStr);
@@ -376,6 +459,7 @@ public class DatabaseIndexingManagerTest {
         values.put(IndexDatabaseHelper.IndexColumns.USER_ID, 0);
         values.put(IndexDatabaseHelper.IndexColumns.PAYLOAD_TYPE, 0);
         values.put(IndexDatabaseHelper.IndexColumns.PAYLOAD, (String) null);
+        values.put(IndexDatabaseHelper.IndexColumns.DATA_PACKAGE, packageName);
 
         mDb.replaceOrThrow(IndexDatabaseHelper.Tables.TABLE_PREFS_INDEX, null, values);
     }
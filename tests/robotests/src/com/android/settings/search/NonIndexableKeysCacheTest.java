@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.provider.Settings;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class NonIndexableKeysCacheTest {
+
+    private static final String CLASS_NAME = "class";
+    private static final String SETTING = "test_setting";
+
+    private Context mContext;
+    private NonIndexableKeysCache mCache;
+    private NonIndexableKeysCache.Inputs mInputs;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCache = new NonIndexableKeysCache();
+        mInputs = new NonIndexableKeysCache.Inputs()
+                .addGlobalSetting(SETTING)
+                .addPackage("com.android.settings.not_installed");
+    }
+
+    @Test
+    public void get_notCached_returnsNull() {
+        assertThat(mCache.get(CLASS_NAME, mInputs.read(mContext))).isNull();
+    }
+
+    @Test
+    public void get_sameInputs_returnsCachedKeys() {
+        Settings.Global.putString(mContext.getContentResolver(), SETTING, "1");
+        mCache.put(CLASS_NAME, mInputs.read(mContext), Arrays.asList("key1", "key2"));
+
+        assertThat(mCache.get(CLASS_NAME, mInputs.read(mContext)))
+                .containsExactly("key1", "key2");
+    }
+
+    @Test
+    public void get_inputChanged_returnsNull() {
+        Settings.Global.putString(mContext.getContentResolver(), SETTING, "1");
+        mCache.put(CLASS_NAME, mInputs.read(mContext), Arrays.asList("key1"));
+
+        Settings.Global.putString(mContext.getContentResolver(), SETTING, "0");
+
+        assertThat(mCache.get(CLASS_NAME, mInputs.read(mContext))).isNull();
+    }
+
+    @Test
+    public void get_returnsCopy() {
+        final List<String> inputValues = mInputs.read(mContext);
+        mCache.put(CLASS_NAME, inputValues, Arrays.asList("key1"));
+
+        mCache.get(CLASS_NAME, inputValues).add("key2");
+
+        assertThat(mCache.get(CLASS_NAME, inputValues)).containsExactly("key1");
+    }
+
+    @Test
+    public void put_nullKeys_cachesEmptyKeys() {
+        final List<String> inputValues = mInputs.read(mContext);
+        mCache.put(CLASS_NAME, inputValues, null);
+
+        assertThat(mCache.get(CLASS_NAME, inputValues)).isEmpty();
+    }
+
+    @Test
+    public void get_noInputs_returnsNull() {
+        mCache.put(CLASS_NAME, null /* inputValues */, Arrays.asList("key1"));
+
+        assertThat(mCache.get(CLASS_NAME, mInputs.read(mContext))).isNull();
+    }
+
+    @Test
+    public void getLastKnown_noInputs_returnsLastKeys() {
+        mCache.put(CLASS_NAME, null /* inputValues */, Arrays.asList("key1"));
+
+        assertThat(mCache.getLastKnown(CLASS_NAME)).containsExactly("key1");
+    }
+
+    @Test
+    public void getLastKnown_notComputed_returnsNull() {
+        assertThat(mCache.getLastKnown(CLASS_NAME)).isNull();
+    }
+}
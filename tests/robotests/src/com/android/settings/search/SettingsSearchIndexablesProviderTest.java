@@ -22,6 +22,9 @@ import org.junit.runner.RunWith;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.annotation.Config;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
 @RunWith(SettingsRobolectricTestRunner.class)
 public class SettingsSearchIndexablesProviderTest {
 
@@ -109,4 +112,18 @@ public class SettingsSearchIndexablesProviderTest {
         cursor.moveToNext();
         assertThat(cursor.getString(0)).isEqualTo("pref_key_3");
     }
+
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void testDump_afterNonIndexablesQuery_listsProviderTiming() {
+        Uri rawUri = Uri.parse("content://" + BASE_AUTHORITY + "/" +
+                SearchIndexablesContract.NON_INDEXABLES_KEYS_PATH);
+        mProvider.query(rawUri, SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS, null, null,
+                null);
+
+        final StringWriter stringWriter = new StringWriter();
+        mProvider.dump(null /* fd */, new PrintWriter(stringWriter), null /* args */);
+
+        assertThat(stringWriter.toString()).contains(FakeSettingsFragment.class.getName());
+    }
 }
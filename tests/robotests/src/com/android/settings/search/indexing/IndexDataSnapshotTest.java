@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.android.settings.search.indexing;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class IndexDataSnapshotTest {
+
+    private static final String LOCALE = "en_US";
+    private static final String FINGERPRINT = "fingerprint";
+
+    private Context mContext;
+    private IndexDataSnapshot mSnapshot;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mSnapshot = new IndexDataSnapshot(mContext);
+    }
+
+    @Test
+    public void read_noSnapshot_returnsFalse() {
+        final List<IndexData> rows = new ArrayList<>();
+
+        assertThat(mSnapshot.read("fr_FR", FINGERPRINT, rows::add)).isFalse();
+        assertThat(rows).isEmpty();
+    }
+
+    @Test
+    public void read_afterWrite_restoresRows() {
+        final IndexData row = new IndexData.Builder()
+                .setTitle("title")
+                .setSummaryOn("summary")
+                .setClassName("class name")
+                .setScreenTitle("screen title")
+                .setKey("key")
+                .setEnabled(true)
+                .setPackageName("package")
+                .build(mContext);
+        mSnapshot.write(LOCALE, FINGERPRINT, Arrays.asList(row));
+
+        final List<IndexData> rows = new ArrayList<>();
+        assertThat(mSnapshot.read(LOCALE, FINGERPRINT, rows::add)).isTrue();
+
+        assertThat(rows).hasSize(1);
+        final IndexData restored = rows.get(0);
+        assertThat(restored.updatedTitle).isEqualTo(row.updatedTitle);
+        assertThat(restored.normalizedTitle).isEqualTo(row.normalizedTitle);
+        assertThat(restored.updatedSummaryOn).isEqualTo(row.updatedSummaryOn);
+        assertThat(restored.className).isEqualTo(row.className);
+        assertThat(restored.childClassName).isNull();
+        assertThat(restored.key).isEqualTo(row.key);
+        assertThat(restored.enabled).isTrue();
+        assertThat(restored.payloadType).isEqualTo(row.payloadType);
+        assertThat(restored.payload).isEqualTo(row.payload);
+        assertThat(restored.packageName).isEqualTo(row.packageName);
+        assertThat(restored.getDocId()).isEqualTo(row.getDocId());
+    }
+
+    @Test
+    public void read_otherBuild_returnsFalse() {
+        final IndexData row = new IndexData.Builder()
+                .setTitle("title")
+                .setKey("key")
+                .build(mContext);
+        mSnapshot.write(LOCALE, FINGERPRINT, Arrays.asList(row));
+
+        final List<IndexData> rows = new ArrayList<>();
+        assertThat(mSnapshot.read(LOCALE, "other fingerprint", rows::add)).isFalse();
+        assertThat(rows).isEmpty();
+    }
+
+    @Test
+    public void read_corruptSnapshot_deletesSnapshot() throws Exception {
+        final File file = new File(mContext.getCacheDir(), "search_index_snapshot/" + LOCALE);
+        file.getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(IndexDataSnapshot.SNAPSHOT_VERSION);
+            out.writeInt(-1 /* header length */);
+        }
+
+        final List<IndexData> rows = new ArrayList<>();
+        assertThat(mSnapshot.read(LOCALE, FINGERPRINT, rows::add)).isFalse();
+        assertThat(rows).isEmpty();
+        assertThat(file.exists()).isFalse();
+    }
+}
@@ -21,7 +21,9 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 
 import android.content.ContentResolver;
 import android.content.Context;
@@ -29,6 +31,7 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.ProviderInfo;
 import android.content.pm.ResolveInfo;
 import android.net.Uri;
+import android.os.CancellationSignal;
 import android.provider.SearchIndexableResource;
 
 import com.android.settings.search.SearchIndexableRaw;
@@ -42,6 +45,7 @@ import org.mockito.MockitoAnnotations;
 import org.robolectric.RuntimeEnvironment;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @RunWith(SettingsRobolectricTestRunner.class)
@@ -73,7 +77,8 @@ public class PreIndexDataCollectorTest {
 
         List<SearchIndexableResource> resources = getFakeResource();
         doReturn(resources).when(mDataCollector).getIndexablesForXmlResourceUri(
-                any(Context.class), anyString(), any(Uri.class), any(String[].class));
+                any(Context.class), anyString(), any(Uri.class), any(String[].class),
+                any(CancellationSignal.class));
 
         PreIndexData data =
             mDataCollector.collectIndexableData(providerInfo, true /* isFullIndex */);
@@ -88,7 +93,7 @@ public class PreIndexDataCollectorTest {
 
         List<SearchIndexableRaw> rawData = getFakeRaw();
         doReturn(rawData).when(mDataCollector).getIndexablesForRawDataUri(any(Context.class),
-                anyString(), any(Uri.class), any(String[].class));
+                anyString(), any(Uri.class), any(String[].class), any(CancellationSignal.class));
 
 
         PreIndexData data =
@@ -105,7 +110,8 @@ public class PreIndexDataCollectorTest {
         List<String> niks = getFakeNonIndexables();
 
         doReturn(niks).when(mDataCollector)
-            .getNonIndexablesKeysFromRemoteProvider(anyString(), anyString());
+            .getNonIndexablesKeysFromRemoteProvider(anyString(), anyString(),
+                    any(CancellationSignal.class));
 
         PreIndexData data = mDataCollector.collectIndexableData(providerInfo,
                 true /* isFullIndex */);
@@ -113,6 +119,49 @@ public class PreIndexDataCollectorTest {
         assertThat(data.nonIndexableKeys.get(AUTHORITY_ONE)).containsAllIn(niks);
     }
 
+    @Test
+    public void testCollectIndexableData_partialIndex_onlyCollectsUpdatedPackages() {
+        final List<ResolveInfo> providerInfo = getDummyResolveInfo();
+        doReturn(true).when(mDataCollector).isWellKnownProvider(any(ResolveInfo.class));
+
+        List<SearchIndexableRaw> rawData = getFakeRaw();
+        doReturn(rawData).when(mDataCollector).getIndexablesForRawDataUri(any(Context.class),
+                anyString(), any(Uri.class), any(String[].class), any(CancellationSignal.class));
+
+        PreIndexData data = mDataCollector.collectIndexableData(providerInfo,
+                false /* isFullIndex */, Collections.singleton("other.package"));
+
+        assertThat(data.dataToUpdate).isEmpty();
+        assertThat(data.updatedPackages).containsExactly("other.package");
+    }
+
+    @Test
+    public void testCollectIndexableData_providerFails_reportedAsFailedPackage() {
+        final List<ResolveInfo> providerInfo = getDummyResolveInfo();
+        doReturn(true).when(mDataCollector).isWellKnownProvider(any(ResolveInfo.class));
+        doThrow(new IllegalStateException()).when(mDataCollector)
+                .getNonIndexablesKeysFromRemoteProvider(anyString(), anyString(),
+                    any(CancellationSignal.class));
+
+        PreIndexData data = mDataCollector.collectIndexableData(providerInfo,
+                false /* isFullIndex */, Collections.singleton(PACKAGE_ONE));
+
+        assertThat(data.failedPackages).containsExactly(PACKAGE_ONE);
+        assertThat(data.updatedPackages).isEmpty();
+    }
+
+    @Test
+    public void testGetIndexablesForXmlResourceUri_queriesWithCancellationSignal() {
+        final Uri uri = mDataCollector.buildUriForXmlResources(AUTHORITY_ONE);
+        final String[] projection = new String[0];
+        final CancellationSignal cancellationSignal = new CancellationSignal();
+
+        mDataCollector.getIndexablesForXmlResourceUri(mContext, PACKAGE_ONE, uri, projection,
+                cancellationSignal);
+
+        verify(mResolver).query(uri, projection, null, null, null, cancellationSignal);
+    }
+
     private List<ResolveInfo> getDummyResolveInfo() {
         List<ResolveInfo> infoList = new ArrayList<>();
         ResolveInfo info = new ResolveInfo();
@@ -19,9 +19,11 @@ package com.android.settings.slices;
 
 import static android.content.ContentResolver.SCHEME_CONTENT;
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -33,6 +35,7 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.StrictMode;
+import android.provider.Settings;
 import android.provider.SettingsSlicesContract;
 import android.util.ArraySet;
 
@@ -58,7 +61,6 @@ import org.robolectric.annotation.Resetter;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -103,8 +105,7 @@ public class SettingsSliceProviderTest {
         mContext = spy(RuntimeEnvironment.application);
         mProvider = spy(new SettingsSliceProvider());
         ShadowStrictMode.reset();
-        mProvider.mSliceWeakDataCache = new HashMap<>();
-        mProvider.mSliceDataCache = new HashMap<>();
+        mProvider.mSliceDataCache = new SliceDataCache();
         mProvider.mSlicesDatabaseAccessor = new SlicesDatabaseAccessor(mContext);
         when(mProvider.getContext()).thenReturn(mContext);
 
@@ -137,12 +138,26 @@ public class SettingsSliceProviderTest {
         final Uri uri = SliceBuilderUtils.getUri(INTENT_PATH, false);
 
         mProvider.loadSlice(uri);
-        SliceData data = mProvider.mSliceWeakDataCache.get(uri);
+        SliceData data = mProvider.mSliceDataCache.get(uri);
 
         assertThat(data.getKey()).isEqualTo(KEY);
         assertThat(data.getTitle()).isEqualTo(TITLE);
     }
 
+    @Test
+    public void loadSlices_multipleUris_cachesEachSlice() {
+        insertSpecialCase(KEY);
+        insertSpecialCase("key2");
+        final Uri uri1 = SliceBuilderUtils.getUri(INTENT_PATH, false);
+        final Uri uri2 = SliceBuilderUtils.getUri(
+                SettingsSlicesContract.PATH_SETTING_INTENT + "/key2", false);
+
+        mProvider.loadSlices(Arrays.asList(uri1, uri2));
+
+        assertThat(mProvider.mSliceDataCache.get(uri1).getKey()).isEqualTo(KEY);
+        assertThat(mProvider.mSliceDataCache.get(uri2).getKey()).isEqualTo("key2");
+    }
+
     @Test
     public void loadSlice_registersIntentFilter() {
         insertSpecialCase(KEY);
@@ -154,14 +169,13 @@ public class SettingsSliceProviderTest {
     }
 
     @Test
-    public void testLoadSlice_doesNotCacheWithoutPin() {
+    public void testLoadSlice_doesNotPinWithoutPin() {
         insertSpecialCase(KEY);
         final Uri uri = SliceBuilderUtils.getUri(INTENT_PATH, false);
 
         mProvider.loadSlice(uri);
-        SliceData data = mProvider.mSliceDataCache.get(uri);
 
-        assertThat(data).isNull();
+        assertThat(mProvider.mSliceDataCache.isPinned(uri)).isFalse();
     }
 
     @Test
@@ -173,20 +187,43 @@ public class SettingsSliceProviderTest {
         mProvider.loadSlice(uri);
         SliceData data = mProvider.mSliceDataCache.get(uri);
 
+        assertThat(mProvider.mSliceDataCache.isPinned(uri)).isTrue();
         assertThat(data.getKey()).isEqualTo(KEY);
         assertThat(data.getTitle()).isEqualTo(TITLE);
     }
 
     @Test
-    public void testLoadSlice_cachedEntryRemovedOnBuild() {
+    public void onSlicePinned_loadsAndPinsSlice() {
+        insertSpecialCase(KEY);
+        final Uri uri = SliceBuilderUtils.getUri(INTENT_PATH, false);
+
+        mProvider.onSlicePinned(uri);
+
+        assertThat(mProvider.mSliceDataCache.isPinned(uri)).isTrue();
+        assertThat(mProvider.mSliceDataCache.get(uri).getKey()).isEqualTo(KEY);
+    }
+
+    @Test
+    public void onSlicePinned_cachedEntry_doesNotReload() {
+        SliceData data = getDummyData();
+        mProvider.mSliceDataCache.put(data.getUri(), data);
+
+        mProvider.onSlicePinned(data.getUri());
+
+        verify(mProvider, never()).loadSliceInBackground(any(Uri.class));
+    }
+
+    @Test
+    public void testLoadSlice_cachedEntryKeptOnBuild() {
         SliceData data = getDummyData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
         insertSpecialCase(data.getKey());
 
-        SliceData cachedData = mProvider.mSliceWeakDataCache.get(data.getUri());
+        SliceData cachedData = mProvider.mSliceDataCache.get(data.getUri());
 
-        assertThat(cachedData).isNull();
+        assertThat(cachedData).isSameAs(data);
+        verify(mProvider, never()).loadSliceInBackground(any(Uri.class));
     }
 
     @Test
@@ -194,7 +231,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(true);
         final StrictMode.ThreadPolicy oldThreadPolicy = StrictMode.getThreadPolicy();
         SliceData data = getDummyData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         final StrictMode.ThreadPolicy newThreadPolicy = StrictMode.getThreadPolicy();
@@ -208,7 +245,7 @@ public class SettingsSliceProviderTest {
         ShadowThreadUtils.setIsMainThread(false);
 
         SliceData data = getDummyData();
-        mProvider.mSliceWeakDataCache.put(data.getUri(), data);
+        mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onBindSlice(data.getUri());
 
         assertThat(ShadowStrictMode.isThreadPolicyOverridden()).isTrue();
@@ -233,15 +270,40 @@ public class SettingsSliceProviderTest {
     }
 
     @Test
-    public void testLoadSlice_cachedEntryRemovedOnUnpin() {
+    public void getBlockedKeys_settingUnchanged_returnsSameSet() {
+        final Set<String> blockedKeys = mProvider.getBlockedKeys();
+
+        assertThat(mProvider.getBlockedKeys()).isSameAs(blockedKeys);
+    }
+
+    @Test
+    public void getBlockedKeys_settingChanged_readsSettingAgain() {
+        final Set<String> blockedKeys = mProvider.getBlockedKeys();
+        Settings.Global.putString(mContext.getContentResolver(),
+                Settings.Global.BLOCKED_SLICES, "blocked=1");
+        mContext.getContentResolver().notifyChange(
+                Settings.Global.getUriFor(Settings.Global.BLOCKED_SLICES), null);
+
+        final Set<String> newBlockedKeys = mProvider.getBlockedKeys();
+
+        assertThat(newBlockedKeys).isNotSameAs(blockedKeys);
+        assertThat(newBlockedKeys).containsExactly("blocked=1");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getBlockedKeys_returnsImmutableSet() {
+        mProvider.getBlockedKeys().add("key");
+    }
+
+    @Test
+    public void testLoadSlice_cachedEntryUnpinnedOnUnpin() {
         SliceData data = getDummyData();
+        mProvider.mSliceDataCache.pin(data.getUri());
         mProvider.mSliceDataCache.put(data.getUri(), data);
         mProvider.onSliceUnpinned(data.getUri());
         insertSpecialCase(data.getKey());
 
-        SliceData cachedData = mProvider.mSliceWeakDataCache.get(data.getUri());
-
-        assertThat(cachedData).isNull();
+        assertThat(mProvider.mSliceDataCache.isPinned(data.getUri())).isFalse();
     }
 
     @Test
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+
+import com.android.settings.testutils.SettingsRobolectricTestRunner;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(SettingsRobolectricTestRunner.class)
+public class SliceDataCacheTest {
+
+    private static final int MAX_UNPINNED_ENTRIES = 2;
+
+    private SliceDataCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new SliceDataCache(MAX_UNPINNED_ENTRIES);
+    }
+
+    @Test
+    public void get_notCached_returnsNull() {
+        assertThat(mCache.get(getUri("key"))).isNull();
+    }
+
+    @Test
+    public void get_cached_returnsDataEveryTime() {
+        final SliceData data = getData("key");
+        mCache.put(data.getUri(), data);
+
+        assertThat(mCache.get(data.getUri())).isSameAs(data);
+        assertThat(mCache.get(data.getUri())).isSameAs(data);
+    }
+
+    @Test
+    public void put_overMaxEntries_evictsLeastRecentlyUsed() {
+        final SliceData data1 = getData("key1");
+        final SliceData data2 = getData("key2");
+        final SliceData data3 = getData("key3");
+        mCache.put(data1.getUri(), data1);
+        mCache.put(data2.getUri(), data2);
+        mCache.get(data1.getUri());
+
+        mCache.put(data3.getUri(), data3);
+
+        assertThat(mCache.size()).isEqualTo(MAX_UNPINNED_ENTRIES);
+        assertThat(mCache.get(data1.getUri())).isSameAs(data1);
+        assertThat(mCache.get(data2.getUri())).isNull();
+        assertThat(mCache.get(data3.getUri())).isSameAs(data3);
+    }
+
+    @Test
+    public void put_overMaxEntries_keepsPinnedEntries() {
+        final SliceData pinned = getData("pinned");
+        mCache.pin(pinned.getUri());
+        mCache.put(pinned.getUri(), pinned);
+
+        for (int i = 0; i < MAX_UNPINNED_ENTRIES + 1; i++) {
+            final SliceData data = getData("key" + i);
+            mCache.put(data.getUri(), data);
+        }
+
+        assertThat(mCache.size()).isEqualTo(MAX_UNPINNED_ENTRIES + 1);
+        assertThat(mCache.get(pinned.getUri())).isSameAs(pinned);
+    }
+
+    @Test
+    public void pin_beforePut_pinsEntry() {
+        final Uri uri = getUri("key");
+
+        mCache.pin(uri);
+
+        assertThat(mCache.isPinned(uri)).isTrue();
+    }
+
+    @Test
+    public void unpin_keepsEntryUntilEvicted() {
+        final SliceData pinned = getData("pinned");
+        mCache.pin(pinned.getUri());
+        mCache.put(pinned.getUri(), pinned);
+
+        mCache.unpin(pinned.getUri());
+
+        assertThat(mCache.isPinned(pinned.getUri())).isFalse();
+        assertThat(mCache.get(pinned.getUri())).isSameAs(pinned);
+
+        for (int i = 0; i < MAX_UNPINNED_ENTRIES; i++) {
+            final SliceData data = getData("key" + i);
+            mCache.put(data.getUri(), data);
+        }
+
+        assertThat(mCache.get(pinned.getUri())).isNull();
+    }
+
+    @Test
+    public void setIndexVersion_sameVersion_keepsEntries() {
+        mCache.setIndexVersion("en_US:1");
+        final SliceData data = getData("key");
+        mCache.put(data.getUri(), data);
+
+        mCache.setIndexVersion("en_US:1");
+
+        assertThat(mCache.get(data.getUri())).isSameAs(data);
+    }
+
+    @Test
+    public void setIndexVersion_newVersion_removesEveryEntryButKeepsPins() {
+        mCache.setIndexVersion("en_US:1");
+        final SliceData data = getData("key");
+        mCache.pin(data.getUri());
+        mCache.put(data.getUri(), data);
+
+        mCache.setIndexVersion("fr_FR:1");
+
+        assertThat(mCache.get(data.getUri())).isNull();
+        assertThat(mCache.isPinned(data.getUri())).isTrue();
+    }
+
+    private static Uri getUri(String key) {
+        return SliceBuilderUtils.getUri("action/" + key, false /* isPlatformSlice */);
+    }
+
+    private static SliceData getData(String key) {
+        return new SliceData.Builder()
+                .setKey(key)
+                .setTitle("title")
+                .setFragmentName("fragment")
+                .setUri(getUri(key))
+                .setPreferenceControllerClassName("controller")
+                .build();
+    }
+}
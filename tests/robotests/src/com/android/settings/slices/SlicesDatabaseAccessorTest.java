@@ -43,6 +43,7 @@ import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowAccessibilityManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -133,6 +134,52 @@ public class SlicesDatabaseAccessorTest {
         mAccessor.getSliceDataFromUri(uri);
     }
 
+    @Test
+    public void getSliceDataFromUris_returnsDataOfEachValidUri() {
+        insertSpecialCase("key1");
+        insertSpecialCase("key2");
+        final Uri intentUri = SliceBuilderUtils.getUri("intent/key1", false);
+        final Uri actionUri = SliceBuilderUtils.getUri("action/key1", false);
+        final Uri otherUri = SliceBuilderUtils.getUri("action/key2", true);
+        final Uri invalidUri = SliceBuilderUtils.getUri("action/durr", false);
+
+        final List<SliceData> dataList = mAccessor.getSliceDataFromUris(
+                Arrays.asList(intentUri, actionUri, otherUri, invalidUri));
+
+        assertThat(dataList).hasSize(3);
+        final List<Uri> uris = new ArrayList<>();
+        for (SliceData data : dataList) {
+            uris.add(data.getUri());
+            assertThat(data.getTitle()).isEqualTo(FAKE_TITLE);
+            assertThat(data.getKey()).isEqualTo(data.getUri().getLastPathSegment());
+        }
+        assertThat(uris).containsExactly(intentUri, actionUri, otherUri);
+    }
+
+    @Test
+    public void getSliceDataFromUris_moreKeysThanOneQuery_returnsDataOfEachUri() {
+        insertSpecialCase("key1");
+        insertSpecialCase("key2");
+        final List<Uri> uris = new ArrayList<>();
+        for (int i = 0; i < SlicesDatabaseAccessor.MAX_KEYS_PER_QUERY; i++) {
+            uris.add(SliceBuilderUtils.getUri("action/unknown" + i, false));
+        }
+        uris.add(SliceBuilderUtils.getUri("action/key1", false));
+        uris.add(SliceBuilderUtils.getUri("action/key2", false));
+
+        final List<SliceData> dataList = mAccessor.getSliceDataFromUris(uris);
+
+        assertThat(dataList).hasSize(2);
+    }
+
+    @Test
+    public void getSliceDataFromUris_noValidUri_returnsEmptyList() {
+        final List<SliceData> dataList = mAccessor.getSliceDataFromUris(
+                Arrays.asList(SliceBuilderUtils.getUri("intent/durr", false)));
+
+        assertThat(dataList).isEmpty();
+    }
+
     @Test
     public void getDescendantUris_platformSlice_doesNotReturnOEMSlice() {
         final String key = "oem_key";